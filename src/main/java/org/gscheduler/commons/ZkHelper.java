@@ -23,6 +23,8 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -125,9 +127,16 @@ public class ZkHelper {
         }
 
         public String getData(String path) {
+            return new String(getDataBytes(path));
+        }
+
+        /**
+         * 读取节点的原始数据,二进制数据使用,节点不存在或异常返回空数组
+         */
+        public byte[] getDataBytes(String path) {
             if (!checkNodeExisted(path)) {
                 logger.warn("the node does not exist.");
-                return "";
+                return new byte[0];
             }
             byte[] bytes = new byte[0];
             try {
@@ -135,7 +144,7 @@ public class ZkHelper {
             } catch (Exception e) {
                 logger.error("get zk node data exception.", e);
             }
-            return new String(bytes);
+            return bytes;
         }
 
         public boolean setData(String path, byte[] data) {
@@ -195,6 +204,18 @@ public class ZkHelper {
             }
         }
 
+        /**
+         * 获取子节点名称,节点不存在或异常返回空
+         */
+        public List<String> getChildren(String path) {
+            try {
+                return client.getChildren().forPath(path);
+            } catch (Exception e) {
+                logger.error("get zk children exception.path:{}", path, e);
+                return Collections.emptyList();
+            }
+        }
+
         public boolean checkNodeExisted(String path) {
             if (StringUtils.isBlank(path)) {
                 logger.info("path is empty.");
@@ -317,11 +338,20 @@ public class ZkHelper {
         }
 
         public boolean setPathChildListener(String path, PathChildrenCacheListener listener) {
+            return setPathChildListener(path, listener, false);
+        }
+
+        /**
+         * 监听子节点的增删改
+         *
+         * @param cacheData 是否缓存子节点数据,为true时事件中的ChildData带有节点数据和Stat,处理事件无需再读zk
+         */
+        public boolean setPathChildListener(String path, PathChildrenCacheListener listener, boolean cacheData) {
             if (!checkNodeExisted(path)) {
                 logger.info("path does not exist.path:{}", path);
                 return false;
             }
-            PathChildrenCache childrenCache = new PathChildrenCache(this.getZkCuratorClient(), path, false);
+            PathChildrenCache childrenCache = new PathChildrenCache(this.getZkCuratorClient(), path, cacheData);
             pathChildrenCacheMap.put(path, childrenCache);
             try {
                 childrenCache.start();
@@ -0,0 +1,40 @@
+package org.gscheduler.dao;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.gscheduler.entity.ExecuteStatus;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * ExecuteStatus与数据库TINYINT之间的转换,按code而非枚举名存储
+ */
+public class ExecuteStatusTypeHandler extends BaseTypeHandler<ExecuteStatus> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, ExecuteStatus parameter, JdbcType jdbcType)
+            throws SQLException {
+        ps.setShort(i, parameter.getCode());
+    }
+
+    @Override
+    public ExecuteStatus getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        short code = rs.getShort(columnName);
+        return rs.wasNull() ? null : ExecuteStatus.fromCode(code);
+    }
+
+    @Override
+    public ExecuteStatus getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        short code = rs.getShort(columnIndex);
+        return rs.wasNull() ? null : ExecuteStatus.fromCode(code);
+    }
+
+    @Override
+    public ExecuteStatus getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        short code = cs.getShort(columnIndex);
+        return cs.wasNull() ? null : ExecuteStatus.fromCode(code);
+    }
+}
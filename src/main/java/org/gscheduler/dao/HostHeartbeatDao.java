@@ -0,0 +1,33 @@
+package org.gscheduler.dao;
+
+import org.apache.ibatis.annotations.Param;
+import org.gscheduler.entity.HostHeartbeat;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface HostHeartbeatDao {
+
+    /**
+     * 搜索所有主机的心跳
+     */
+    List<HostHeartbeat> selectAllHostHeartbeat();
+
+    /**
+     * 根据主机名查询心跳
+     */
+    HostHeartbeat selectHostHeartbeat(@Param("host") String host);
+
+    /**
+     * 更新主机心跳
+     *
+     * @return 影响行数, 0表示该主机还没有心跳记录
+     */
+    Integer updateHeartbeat(@Param("host") String host, @Param("heartbeat") long heartbeat);
+
+    /**
+     * 插入主机心跳
+     */
+    Integer insertHostHeartbeat(@Param("host") String host, @Param("heartbeat") long heartbeat);
+}
@@ -0,0 +1,58 @@
+package org.gscheduler.dao;
+
+import org.apache.ibatis.annotations.Param;
+import org.gscheduler.entity.JobExecution;
+import org.gscheduler.entity.JobExecutionHourly;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface JobExecutionDao {
+
+    /**
+     * 插入一条执行记录,批量写入时在BATCH类型的SqlSession中调用
+     */
+    Integer insertJobExecution(JobExecution jobExecution);
+
+    /**
+     * 任务最近的执行记录,按开始时间倒序
+     */
+    List<JobExecution> selectRecentJobExecution(@Param("jobId") long jobId, @Param("limit") int limit);
+
+    /**
+     * 主机最早的执行记录开始时间,没有记录返回null
+     */
+    Long selectMinStartTime(@Param("host") String host);
+
+    /**
+     * 按任务汇总主机在[startTime,endTime)内的执行记录,hourTime取startTime
+     */
+    List<JobExecutionHourly> selectHourlyAggregate(@Param("host") String host, @Param("startTime") long startTime,
+                                                   @Param("endTime") long endTime);
+
+    /**
+     * 删除主机在[startTime,endTime)内的执行记录
+     */
+    Integer deleteJobExecution(@Param("host") String host, @Param("startTime") long startTime,
+                               @Param("endTime") long endTime);
+
+    /**
+     * 累加到已有的小时汇总
+     *
+     * @return 影响行数, 0表示该小时还没有汇总记录
+     */
+    Integer updateJobExecutionHourly(JobExecutionHourly hourly);
+
+    Integer insertJobExecutionHourly(JobExecutionHourly hourly);
+
+    /**
+     * 任务hourTime之后的小时汇总
+     */
+    List<JobExecutionHourly> selectJobExecutionHourly(@Param("jobId") long jobId, @Param("hourTime") long hourTime);
+
+    /**
+     * 删除hourTime之前的小时汇总
+     */
+    Integer deleteJobExecutionHourly(@Param("hourTime") long hourTime);
+}
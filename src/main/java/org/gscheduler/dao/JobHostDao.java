@@ -0,0 +1,23 @@
+package org.gscheduler.dao;
+
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * job_host表,job_info.host_list拆分后的任务与主机对应关系,供按主机查询任务
+ */
+@Repository
+public interface JobHostDao {
+
+    /**
+     * 批量插入任务的候选主机
+     */
+    Integer insertJobHosts(@Param("jobId") long jobId, @Param("hosts") List<String> hosts);
+
+    /**
+     * 删除任务的所有候选主机
+     */
+    Integer deleteJobHostsByJobId(@Param("jobId") long jobId);
+}
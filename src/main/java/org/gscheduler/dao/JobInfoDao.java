@@ -1,9 +1,14 @@
 package org.gscheduler.dao;
 
 import org.apache.ibatis.annotations.Param;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecuteState;
 import org.gscheduler.entity.JobInfo;
+import org.gscheduler.entity.JobInfoTombstone;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 
@@ -15,6 +20,16 @@ public interface JobInfoDao {
      */
     List<JobInfo> selectAllJobInfo();
 
+    /**
+     * update_time不早于updateTime的任务,即该时间之后配置被修改过的任务
+     */
+    List<JobInfo> selectJobInfoUpdatedSince(@Param("updateTime") Date updateTime);
+
+    /**
+     * 按最近一次执行时长倒序,最慢的任务在前
+     */
+    List<JobInfo> selectJobInfoOrderByDuration(@Param("limit") int limit);
+
     /**
      * failover时获取可处理的任务
      * 通常executeHost宕机后,本机尝试去获取包含本机的host list
@@ -37,6 +52,11 @@ public interface JobInfoDao {
      */
     List<JobInfo> selectJobInfoByHostname(String hostname);
 
+    /**
+     * host_list不为空,但job_host中没有记录的任务
+     */
+    List<JobInfo> selectJobInfoWithoutHost();
+
     /**
      * 搜索包含本机的任务
      */
@@ -47,6 +67,11 @@ public interface JobInfoDao {
      */
     JobInfo selectJobInfoById(long id);
 
+    /**
+     * 根据id批量查找任务,ids不能为空
+     */
+    List<JobInfo> selectJobInfoByIds(@Param("ids") Collection<Long> ids);
+
     /**
      * 查询任务的cron表达式
      *
@@ -58,34 +83,34 @@ public interface JobInfoDao {
     JobInfo selectJobInfoByJobName(String jobName);
 
     /**
-     * 根据id更新JobInfo 不更新executeTime,lastExecuteTime,nextExecuteTime
+     * 根据id更新JobInfo 不更新执行状态,执行时长,lastExecuteTime,nextExecuteTime
      */
     Integer updateJobInfoById(JobInfo jobInfo);
 
-    Integer updateJobVersion(@Param("id") long id);
+    Integer updateFailExecuteHost(@Param("id") long id, @Param("failExecuteHost") String failExecuteHost);
 
     /**
-     * 更新version字段
+     * 迁移执行主机,同时清空fail_execute_host,version加一使进行中的failover认领失败
      */
-    Integer updateVersion(@Param("id") long id, @Param("version") long version);
-
-    Integer updateFailExecuteHost(@Param("id") long id, @Param("failExecuteHost") String failExecuteHost);
+    Integer updateExecuteHost(@Param("id") long id, @Param("executeHost") String executeHost);
 
     /**
-     * 更新执行时间
+     * version未变且没有failover机器时更新fail_execute_host,同时version加一
+     *
+     * @return 更新行数,0表示已被其他机器修改
      */
-    Integer updateExecuteTime(@Param("id") long id, @Param("executeTime") String executeTime);
+    Integer compareAndSetFailExecuteHost(@Param("id") long id, @Param("version") long version,
+                                         @Param("failExecuteHost") String failExecuteHost);
 
     /**
-     * 更新上一次和下一次执行时间
+     * 更新执行状态,执行时长,开始结束时间,上一次和下一次执行时间,字段为null不更新.配合BATCH类型的SqlSession批量执行
      */
-    Integer updateLastAndNextExecuteTime(@Param("id") long id, @Param("lastExecuteTime") String lastExecuteTime,
-                                         @Param("nextExecuteTime") String nextExecuteTime);
+    Integer updateExecuteState(JobExecuteState executeState);
 
     /**
      * 更新执行状态
      */
-    Integer updateExecuteStatus(@Param("id") long id, @Param("executeStatus") short executeStatus);
+    Integer updateExecuteStatus(@Param("id") long id, @Param("executeStatus") ExecuteStatus executeStatus);
 
     /**
      * 更新初始化状态
@@ -93,7 +118,7 @@ public interface JobInfoDao {
     Integer updateInitiateMode(@Param("id") long id, @Param("initiateMode") short initiateMode);
 
     /**
-     * 插入JobInfo对象到task_schedule表 不插入executeTime,lastExecuteTime,nextExecuteTime
+     * 插入JobInfo对象到task_schedule表 不插入执行状态,执行时长,lastExecuteTime,nextExecuteTime
      */
     Integer insertJobInfo(JobInfo jobInfo);
 
@@ -102,4 +127,19 @@ public interface JobInfoDao {
      */
     Integer deleteJobInfoById(long id);
 
+    /**
+     * 记录已删除的任务,其他主机按delete_time增量同步
+     */
+    Integer insertJobInfoTombstone(@Param("id") long id, @Param("jobName") String jobName);
+
+    /**
+     * delete_time不早于deleteTime的删除记录
+     */
+    List<JobInfoTombstone> selectJobInfoTombstoneSince(@Param("deleteTime") Date deleteTime);
+
+    /**
+     * 清理deleteTime之前的删除记录
+     */
+    Integer deleteJobInfoTombstoneBefore(@Param("deleteTime") Date deleteTime);
+
 }
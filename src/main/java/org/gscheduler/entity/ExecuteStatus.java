@@ -0,0 +1,39 @@
+package org.gscheduler.entity;
+
+/**
+ * 任务执行状态,对应job_info.execute_status和job_execution.outcome的数值
+ */
+public enum ExecuteStatus {
+    UN_EXECUTE((short) -1, "未执行"),
+    FAILED((short) 0, "执行失败"),
+    RUNNING((short) 1, "运行中"),
+    SUCCESS((short) 2, "成功");
+
+    private final short code;
+    private final String description;
+
+    ExecuteStatus(short code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @throws IllegalArgumentException 未知的状态值
+     */
+    public static ExecuteStatus fromCode(int code) {
+        for (ExecuteStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("unknown execute status:" + code);
+    }
+}
@@ -0,0 +1,20 @@
+package org.gscheduler.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 对应表host_heartbeat的实体类,每台主机一行
+ */
+@Data
+@NoArgsConstructor
+public class HostHeartbeat {
+    // 主机名
+    private String host;
+    // 最近一次心跳时间,毫秒
+    private long heartbeat;
+    // 最后更新时间
+    private Date updateTime;
+}
@@ -0,0 +1,55 @@
+package org.gscheduler.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 任务每次执行产生的状态变更,对应job_info中的执行相关字段,字段为null表示不更新
+ */
+@Data
+@NoArgsConstructor
+public class JobExecuteState {
+    private long id;
+    // 执行状态
+    private ExecuteStatus executeStatus;
+    // 最近一次执行时长,单位ms
+    private Long lastDurationMs;
+    // 最近一次执行开始时间,epoch ms
+    private Long executeStartTime;
+    // 最近一次执行结束时间,epoch ms
+    private Long executeEndTime;
+    // 上一次执行时间
+    private Date lastExecuteTime;
+    // 下一次执行时间
+    private Date nextExecuteTime;
+
+    public JobExecuteState(long id) {
+        this.id = id;
+    }
+
+    /**
+     * 用更新的状态覆盖当前状态,newer中为null的字段保留当前值
+     */
+    public void merge(JobExecuteState newer) {
+        if (newer.getExecuteStatus() != null) {
+            this.executeStatus = newer.getExecuteStatus();
+        }
+        if (newer.getLastDurationMs() != null) {
+            this.lastDurationMs = newer.getLastDurationMs();
+        }
+        if (newer.getExecuteStartTime() != null) {
+            this.executeStartTime = newer.getExecuteStartTime();
+        }
+        if (newer.getExecuteEndTime() != null) {
+            this.executeEndTime = newer.getExecuteEndTime();
+        }
+        if (newer.getLastExecuteTime() != null) {
+            this.lastExecuteTime = newer.getLastExecuteTime();
+        }
+        if (newer.getNextExecuteTime() != null) {
+            this.nextExecuteTime = newer.getNextExecuteTime();
+        }
+    }
+}
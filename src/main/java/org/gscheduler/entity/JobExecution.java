@@ -0,0 +1,27 @@
+package org.gscheduler.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 对应表job_execution的实体类,任务的一次执行记录
+ */
+@Data
+@NoArgsConstructor
+public class JobExecution {
+    private long id;
+    // 任务id
+    private long jobId;
+    // 执行主机
+    private String host;
+    // 开始时间,毫秒
+    private long startTime;
+    // 结束时间,毫秒
+    private long endTime;
+    // 执行时长,毫秒
+    private long durationMs;
+    // 执行结果,FAILED或SUCCESS
+    private ExecuteStatus outcome;
+    // 失败时的异常摘要
+    private String errorSummary;
+}
@@ -0,0 +1,28 @@
+package org.gscheduler.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 对应表job_execution_hourly的实体类,超过保留期的执行记录按任务,主机,小时汇总
+ */
+@Data
+@NoArgsConstructor
+public class JobExecutionHourly {
+    // 任务id
+    private long jobId;
+    // 小时开始时间,毫秒
+    private long hourTime;
+    // 执行主机
+    private String host;
+    // 执行次数
+    private int runCount;
+    // 成功次数
+    private int successCount;
+    // 失败次数
+    private int failureCount;
+    // 执行时长之和,毫秒
+    private long totalDurationMs;
+    // 最大执行时长,毫秒
+    private long maxDurationMs;
+}
@@ -34,12 +34,18 @@ public class JobInfo {
     private String executeHost;
     //failover执行机器
     private String failExecuteHost;
+    // 执行机器down掉后等待多久failover,单位ms,0或null使用zookeeper.failover.tolerate.time
+    private Integer failoverTolerateTime;
     // 用作保证任务运行
     private long version;
-    // 任务执行情况,-1:未执行,0:执行失败,1:运行中,2:成功
-    private short executeStatus;
-    // 最近任务执行时长,单位秒
-    private String executeTime;
+    // 任务执行情况
+    private ExecuteStatus executeStatus;
+    // 最近一次执行时长,单位ms
+    private long lastDurationMs;
+    // 最近一次执行开始时间,epoch ms
+    private long executeStartTime;
+    // 最近一次执行结束时间,epoch ms
+    private long executeEndTime;
     // 上一次执行时间
     private Date lastExecuteTime;
     // 下一次执行时间
@@ -0,0 +1,20 @@
+package org.gscheduler.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 对应表job_info_tombstone的实体类,记录已删除的任务,用于增量同步
+ */
+@Data
+@NoArgsConstructor
+public class JobInfoTombstone {
+    // 已删除的任务id
+    private long jobId;
+    // 任务名称
+    private String jobName;
+    // 删除时间
+    private Date deleteTime;
+}
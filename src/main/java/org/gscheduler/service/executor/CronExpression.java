@@ -0,0 +1,316 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Splitter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * 预编译的cron表达式,语义与Spring CronSequenceGenerator一致:
+ * 秒 分 时 日 月 周,支持* ? , - /,月份JAN-DEC,星期SUN-SAT,星期0和7都表示周日,日和周需要同时满足.
+ * 构造时将每个字段编译为位图,next直接基于epoch ms计算,不创建Calendar/Date对象.
+ * 实例不可变,线程安全.
+ */
+public final class CronExpression {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    // 日和周同时限定时(如2月29日且为周一),最多28年出现一次
+    private static final int MAX_SEARCH_YEARS = 28;
+    private static final String MONTH_NAMES = "JAN,FEB,MAR,APR,MAY,JUN,JUL,AUG,SEP,OCT,NOV,DEC";
+    private static final String DAY_OF_WEEK_NAMES = "SUN,MON,TUE,WED,THU,FRI,SAT";
+
+    private final String expression;
+    private final TimeZone timeZone;
+    // 第n位为1表示该值匹配
+    private final long seconds;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+
+    public CronExpression(String expression) {
+        this(expression, TimeZone.getDefault());
+    }
+
+    /**
+     * @throws IllegalArgumentException 表达式非法
+     */
+    public CronExpression(String expression, TimeZone timeZone) {
+        if (StringUtils.isBlank(expression)) {
+            throw new IllegalArgumentException("cron expression is empty.");
+        }
+        List<String> fields = Splitter.on(' ').omitEmptyStrings().trimResults().splitToList(expression);
+        if (fields.size() != 6) {
+            throw new IllegalArgumentException(String.format(
+                    "cron expression must consist of 6 fields (found %d in \"%s\")", fields.size(), expression));
+        }
+        this.expression = expression;
+        this.timeZone = timeZone;
+        this.seconds = parseField(fields.get(0), 0, 59);
+        this.minutes = parseField(fields.get(1), 0, 59);
+        this.hours = parseField(fields.get(2), 0, 23);
+        this.daysOfMonth = parseField(fields.get(3), 1, 31);
+        this.months = parseField(replaceOrdinals(fields.get(4), MONTH_NAMES, 1), 1, 12);
+        long dayOfWeek = parseField(replaceOrdinals(fields.get(5), DAY_OF_WEEK_NAMES, 0), 0, 7);
+        // 7也表示周日
+        if ((dayOfWeek & (1L << 7)) != 0) {
+            dayOfWeek = (dayOfWeek | 1L) & ~(1L << 7);
+        }
+        this.daysOfWeek = dayOfWeek;
+    }
+
+    /**
+     * 计算after之后(不含after所在的秒)的第一个触发时间
+     *
+     * @param after epoch ms
+     * @return 下一次触发时间, epoch ms
+     * @throws IllegalArgumentException 表达式无法匹配任何时间,如2月30日
+     */
+    public long next(long after) {
+        long start = floorDiv(after, MILLIS_PER_SECOND) * MILLIS_PER_SECOND + MILLIS_PER_SECOND;
+        long localMillis = start + timeZone.getOffset(start);
+        long days = floorDiv(localMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+        int second = millisOfDay / 1000 % 60;
+        int minute = millisOfDay / 60000 % 60;
+        int hour = millisOfDay / 3600000;
+
+        // days since epoch -> 年月日,见 http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        int maxYear = year + MAX_SEARCH_YEARS;
+        while (true) {
+            if (year > maxYear) {
+                throw new IllegalArgumentException("cron expression never matches:" + expression);
+            }
+            // 月
+            int nextMonth = nextSetBit(months, month);
+            if (nextMonth < 0) {
+                year++;
+                month = nextSetBit(months, 1);
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (nextMonth != month) {
+                month = nextMonth;
+                day = 1;
+                hour = minute = second = 0;
+            }
+            // 日,日和周同时满足
+            int monthDays = daysInMonth(year, month);
+            int dayOfWeek = floorMod(daysFromCivil(year, month, day) + 4, 7);
+            int nextDay = -1;
+            for (int d = day; d <= monthDays; d++) {
+                if ((daysOfMonth & (1L << d)) != 0 && (daysOfWeek & (1L << dayOfWeek)) != 0) {
+                    nextDay = d;
+                    break;
+                }
+                dayOfWeek = dayOfWeek == 6 ? 0 : dayOfWeek + 1;
+            }
+            if (nextDay < 0) {
+                month++;
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (nextDay != day) {
+                day = nextDay;
+                hour = minute = second = 0;
+            }
+            // 时
+            int nextHour = nextSetBit(hours, hour);
+            if (nextHour < 0) {
+                day++;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (nextHour != hour) {
+                hour = nextHour;
+                minute = second = 0;
+            }
+            // 分
+            int nextMinute = nextSetBit(minutes, minute);
+            if (nextMinute < 0) {
+                hour++;
+                minute = second = 0;
+                continue;
+            }
+            if (nextMinute != minute) {
+                minute = nextMinute;
+                second = 0;
+            }
+            // 秒
+            int nextSecond = nextSetBit(seconds, second);
+            if (nextSecond < 0) {
+                minute++;
+                second = 0;
+                continue;
+            }
+            second = nextSecond;
+            break;
+        }
+
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * 3600000L + minute * 60000L + second * MILLIS_PER_SECOND;
+        return localToUtc(local);
+    }
+
+    /**
+     * 批量计算after之后的多个触发时间,填满result
+     *
+     * @return result
+     */
+    public long[] next(long after, long[] result) {
+        long time = after;
+        for (int i = 0; i < result.length; i++) {
+            time = next(time);
+            result[i] = time;
+        }
+        return result;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    // 本地时间转换为epoch ms,与Calendar的宽松模式一致:夏令时结束时重复的本地时间取后一个(标准时间),
+    // 夏令时开始时跳过的本地时间(不存在)按切换前的偏移计算,即顺延
+    private long localToUtc(long local) {
+        int offsetBefore = timeZone.getOffset(local - MILLIS_PER_DAY);
+        int offsetAfter = timeZone.getOffset(local + MILLIS_PER_DAY);
+        if (offsetBefore == offsetAfter) {
+            return local - offsetBefore;
+        }
+        long before = local - offsetBefore;
+        long after = local - offsetAfter;
+        boolean beforeValid = timeZone.getOffset(before) == offsetBefore;
+        boolean afterValid = timeZone.getOffset(after) == offsetAfter;
+        if (beforeValid && afterValid) {
+            return Math.max(before, after);
+        }
+        if (afterValid) {
+            return after;
+        }
+        return before;
+    }
+
+    // 第from位及之后第一个为1的位,没有返回-1
+    private static int nextSetBit(long bits, int from) {
+        if (from >= 64) {
+            return -1;
+        }
+        long masked = bits & (-1L << from);
+        return masked == 0 ? -1 : Long.numberOfTrailingZeros(masked);
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static int floorMod(long x, int y) {
+        return (int) (x - floorDiv(x, y) * y);
+    }
+
+    // 将名称替换为数字,如MON->1
+    private static String replaceOrdinals(String value, String names, int first) {
+        String[] list = StringUtils.split(names, ',');
+        String result = value.toUpperCase();
+        for (int i = 0; i < list.length; i++) {
+            result = StringUtils.replace(result, list[i], Integer.toString(i + first));
+        }
+        return result;
+    }
+
+    // 解析一个字段,支持* ? , - /
+    private static long parseField(String field, int min, int max) {
+        long bits = 0;
+        for (String part : StringUtils.split(field, ',')) {
+            int step = 1;
+            String range = part;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                String[] split = StringUtils.splitPreserveAllTokens(part, '/');
+                if (split.length != 2) {
+                    throw new IllegalArgumentException("incrementer has more than two fields:" + part);
+                }
+                range = split[0];
+                step = parseNumber(split[1]);
+                if (step <= 0) {
+                    throw new IllegalArgumentException("incrementer must be positive:" + part);
+                }
+            }
+            int low;
+            int high;
+            if ("*".equals(range) || "?".equals(range)) {
+                low = min;
+                high = max;
+            } else if (range.indexOf('-') >= 0) {
+                String[] split = StringUtils.splitPreserveAllTokens(range, '-');
+                if (split.length != 2) {
+                    throw new IllegalArgumentException("range has more than two fields:" + part);
+                }
+                low = parseNumber(split[0]);
+                high = parseNumber(split[1]);
+            } else {
+                low = parseNumber(range);
+                // a/n表示从a开始到最大值
+                high = slash >= 0 ? max : low;
+            }
+            if (low < min || high > max || low > high) {
+                throw new IllegalArgumentException(String.format("range %s exceeds [%d,%d]", part, min, max));
+            }
+            for (int i = low; i <= high; i += step) {
+                bits |= 1L << i;
+            }
+        }
+        if (bits == 0) {
+            throw new IllegalArgumentException("empty cron field:" + field);
+        }
+        return bits;
+    }
+
+    private static int parseNumber(String value) {
+        if (!NumberUtils.isDigits(value)) {
+            throw new IllegalArgumentException("illegal cron field value:" + value);
+        }
+        return NumberUtils.toInt(value, -1);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
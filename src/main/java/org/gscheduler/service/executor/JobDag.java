@@ -0,0 +1,119 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.gscheduler.entity.JobInfo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 由job_info.parent_name构成的任务依赖图,节点为任务名,边为父任务->子任务.
+ * parent_name可以是逗号分隔的多个任务名,子任务需等待所有父任务执行完成(汇合).
+ */
+public class JobDag {
+    // 任务名 -> 父任务名
+    private final Map<String, Set<String>> parents = Maps.newHashMap();
+    // 任务名 -> 子任务名
+    private final Map<String, Set<String>> children = Maps.newHashMap();
+
+    private JobDag() {
+    }
+
+    /**
+     * 根据所有任务构建依赖图
+     */
+    public static JobDag build(Collection<JobInfo> jobInfos) {
+        JobDag dag = new JobDag();
+        for (JobInfo jobInfo : jobInfos) {
+            dag.setParents(jobInfo.getJobName(), jobInfo.getParentName());
+        }
+        return dag;
+    }
+
+    /**
+     * 拆分逗号分隔的parent_name
+     */
+    public static Set<String> splitParentName(String parentName) {
+        if (StringUtils.isBlank(parentName)) {
+            return Collections.emptySet();
+        }
+        return Sets.newLinkedHashSet(Splitter.on(',').omitEmptyStrings().trimResults().split(parentName));
+    }
+
+    /**
+     * 替换任务的父任务,用于修改依赖前校验
+     */
+    public void setParents(String jobName, String parentName) {
+        node(jobName);
+        Set<String> oldParents = parents.get(jobName);
+        for (String parent : oldParents) {
+            children.get(parent).remove(jobName);
+        }
+        oldParents.clear();
+        for (String parent : splitParentName(parentName)) {
+            node(parent);
+            oldParents.add(parent);
+            children.get(parent).add(jobName);
+        }
+    }
+
+    private void node(String jobName) {
+        if (!parents.containsKey(jobName)) {
+            parents.put(jobName, Sets.<String>newLinkedHashSet());
+            children.put(jobName, Sets.<String>newLinkedHashSet());
+        }
+    }
+
+    public Set<String> getParents(String jobName) {
+        Set<String> set = parents.get(jobName);
+        return null == set ? Collections.<String>emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    public Set<String> getChildren(String jobName) {
+        Set<String> set = children.get(jobName);
+        return null == set ? Collections.<String>emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * 拓扑排序(Kahn),存在环时返回的节点数少于图中节点数
+     */
+    public List<String> topologicalOrder() {
+        Map<String, Integer> inDegree = Maps.newHashMap();
+        LinkedList<String> queue = Lists.newLinkedList();
+        for (Map.Entry<String, Set<String>> entry : parents.entrySet()) {
+            inDegree.put(entry.getKey(), entry.getValue().size());
+            if (entry.getValue().isEmpty()) {
+                queue.add(entry.getKey());
+            }
+        }
+        List<String> order = Lists.newArrayListWithCapacity(parents.size());
+        while (!queue.isEmpty()) {
+            String jobName = queue.poll();
+            order.add(jobName);
+            for (String child : children.get(jobName)) {
+                int degree = inDegree.get(child) - 1;
+                inDegree.put(child, degree);
+                if (degree == 0) {
+                    queue.add(child);
+                }
+            }
+        }
+        return order;
+    }
+
+    public boolean hasCycle() {
+        return topologicalOrder().size() < parents.size();
+    }
+
+    public int size() {
+        return parents.size();
+    }
+}
@@ -0,0 +1,195 @@
+package org.gscheduler.service.executor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 任务分发器,所有JobScheduler共用一个时间轮和一个有界的执行线程池,
+ * 取代每个任务一个ScheduledExecutorService线程的模型.
+ * 执行模式(job.executor.mode):
+ * platform-固定大小的平台线程池;virtual-每次执行一个虚拟线程(需要JDK21+运行,否则退回platform).
+ */
+@Component
+public class JobDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(JobDispatcher.class);
+    // 每层槽位数2^9=512
+    private static final int WHEEL_BITS = 9;
+    // 4层,100ms一个tick时可覆盖的范围远大于任何cron周期
+    private static final int WHEEL_LEVELS = 4;
+    /**
+     * 执行模式:平台线程池
+     */
+    public static final String MODE_PLATFORM = "platform";
+    /**
+     * 执行模式:虚拟线程
+     */
+    public static final String MODE_VIRTUAL = "virtual";
+
+    @Value("${job.dispatcher.tick}")
+    String dispatcherTick;
+
+    @Value("${job.dispatcher.worker.size}")
+    String dispatcherWorkerSize;
+
+    @Value("${job.executor.mode}")
+    String executorMode;
+
+    // 时间轮tick时长,单位ms
+    private long tickMillis = 100;
+    // 执行任务的线程数
+    private int workerSize = 50;
+    // 实际生效的执行模式
+    private String mode = MODE_PLATFORM;
+
+    private ExecutorService workerPool;
+    private JobTimingWheel timingWheel;
+    // 关闭中,不再接受新的触发
+    private volatile boolean draining = false;
+
+    @PostConstruct
+    public void init() {
+        long tick = NumberUtils.toLong(dispatcherTick, 0);
+        if (tick > 0 && tick != tickMillis) {
+            tickMillis = tick;
+        }
+        int size = NumberUtils.toInt(dispatcherWorkerSize, 0);
+        if (size > 0 && size != workerSize) {
+            workerSize = size;
+        }
+        workerPool = newWorkerPool(executorMode, workerSize);
+        mode = isVirtualPool(workerPool) ? MODE_VIRTUAL : MODE_PLATFORM;
+        logger.info("job dispatcher init,tick:{}ms,mode:{},workerSize:{}", tickMillis, mode, workerSize);
+
+        timingWheel = new JobTimingWheel(tickMillis, WHEEL_BITS, WHEEL_LEVELS, workerPool, "job-dispatcher-tick");
+        timingWheel.start();
+    }
+
+    /**
+     * 在deadline(epoch ms)时刻在执行线程池中执行task
+     *
+     * @return 关闭中不再接受新的触发, 返回null
+     */
+    JobTimingWheel.Timeout schedule(Runnable task, long deadline) {
+        if (draining) {
+            return null;
+        }
+        return timingWheel.newTimeout(task, deadline);
+    }
+
+    /**
+     * 立即在执行线程池中执行task,关闭中不再执行
+     */
+    void execute(Runnable task) {
+        if (draining) {
+            logger.info("job dispatcher is draining,discard task.");
+            return;
+        }
+        workerPool.execute(task);
+    }
+
+    /**
+     * 进程关闭前调用,不再接受新的触发,已在执行的任务继续执行
+     */
+    public void drain() {
+        draining = true;
+    }
+
+    public int getPendingTimeouts() {
+        return timingWheel.pendingTimeouts();
+    }
+
+    public int getWorkerSize() {
+        return workerSize;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * 创建执行任务的线程池,virtual模式在不支持虚拟线程的JDK上退回platform
+     *
+     * @param executorMode platform或virtual
+     * @param size         platform模式的线程数
+     * @return ExecutorService
+     */
+    static ExecutorService newWorkerPool(String executorMode, int size) {
+        if (StringUtils.equalsIgnoreCase(MODE_VIRTUAL, StringUtils.trim(executorMode))) {
+            ExecutorService virtualPool = newVirtualThreadPool("job-virtual-");
+            if (virtualPool != null) {
+                return virtualPool;
+            }
+            logger.warn("virtual thread is not supported by jdk:{},fall back to platform mode.",
+                    System.getProperty("java.version"));
+        }
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory("job-worker"));
+    }
+
+    static boolean isVirtualPool(ExecutorService pool) {
+        return !(pool instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * 通过反射调用Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix,0).factory()),
+     * 工程按1.7编译,只有运行在JDK21+时才可用
+     *
+     * @return 不支持时返回null
+     */
+    private static ExecutorService newVirtualThreadPool(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            logger.error("create virtual thread executor exception.", e);
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logger.info("job dispatcher shutdown.");
+        timingWheel.stop();
+        workerPool.shutdown();
+    }
+
+    /**
+     * 执行线程池的线程工厂,每个线程单独编号
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+        private final String prefix;
+
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
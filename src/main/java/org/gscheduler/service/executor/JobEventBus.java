@@ -0,0 +1,36 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.SubscriberExceptionContext;
+import com.google.common.eventbus.SubscriberExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * 进程内事件总线,不使用zookeeper时用于本机任务间的通知,如依赖任务的触发
+ */
+@Component
+public class JobEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(JobEventBus.class);
+
+    private final EventBus eventBus = new EventBus(new SubscriberExceptionHandler() {
+        @Override
+        public void handleException(Throwable exception, SubscriberExceptionContext context) {
+            logger.error("handle job event exception,event:{},subscriber:{}", context.getEvent(),
+                    context.getSubscriberMethod(), exception);
+        }
+    });
+
+    public void register(Object subscriber) {
+        eventBus.register(subscriber);
+    }
+
+    public void unregister(Object subscriber) {
+        eventBus.unregister(subscriber);
+    }
+
+    public void post(Object event) {
+        eventBus.post(event);
+    }
+}
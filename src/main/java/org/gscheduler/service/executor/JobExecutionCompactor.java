@@ -0,0 +1,113 @@
+package org.gscheduler.service.executor;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gscheduler.service.task.JobExecutionService;
+import org.gscheduler.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行历史压缩.定时将本机超过保留期的job_execution明细按小时汇总到job_execution_hourly并删除明细,
+ * 再删除超过保留期的小时汇总,保证执行量大时明细表大小只与保留期有关.
+ */
+@Component
+public class JobExecutionCompactor {
+    private static final Logger logger = LoggerFactory.getLogger(JobExecutionCompactor.class);
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // 每次最多压缩的小时数,避免积压时单次占用过久
+    private static final int MAX_COMPACT_HOURS = 48;
+
+    @Value("${job.execution.retention.hours}")
+    String executionRetentionHours;
+
+    @Value("${job.execution.hourly.retention.days}")
+    String hourlyRetentionDays;
+
+    @Value("${job.execution.compact.interval}")
+    String compactInterval;
+
+    @Resource
+    JobExecutionService jobExecutionService;
+
+    // 明细保留时长,单位小时
+    private long retentionHours = 72;
+    // 小时汇总保留时长,单位天
+    private long hourlyRetention = 90;
+    // 压缩间隔,单位min
+    private long interval = 10;
+
+    private ScheduledExecutorService compactService;
+
+    public void init() {
+        long hours = NumberUtils.toLong(executionRetentionHours, 0);
+        if (hours > 0) {
+            retentionHours = hours;
+        }
+        long days = NumberUtils.toLong(hourlyRetentionDays, 0);
+        if (days > 0) {
+            hourlyRetention = days;
+        }
+        long minutes = NumberUtils.toLong(compactInterval, 0);
+        if (minutes > 0) {
+            interval = minutes;
+        }
+        logger.info("job execution compactor init,retention:{}h,hourly retention:{}d,interval:{}min",
+                retentionHours, hourlyRetention, interval);
+
+        compactService = Executors.newSingleThreadScheduledExecutor(
+                new JobManager.NamedThreadFactory("job-execution-compact"));
+        compactService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    logger.error("压缩任务执行记录失败", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 从最早的明细开始逐小时压缩,直到保留期内
+     *
+     * @return 删除的明细数
+     */
+    public int compact() {
+        long now = System.currentTimeMillis();
+        String host = Utils.getHostName();
+        long cutoff = floorHour(now - TimeUnit.HOURS.toMillis(retentionHours));
+        int deleted = 0;
+        for (int i = 0; i < MAX_COMPACT_HOURS; i++) {
+            Long minStartTime = jobExecutionService.getMinStartTime(host);
+            if (null == minStartTime || minStartTime >= cutoff) {
+                break;
+            }
+            deleted += jobExecutionService.compactJobExecution(host, floorHour(minStartTime));
+        }
+        int removed = jobExecutionService.removeJobExecutionHourly(now - TimeUnit.DAYS.toMillis(hourlyRetention));
+        if (deleted > 0 || removed > 0) {
+            logger.info("compact job execution finished,deleted:{},hourly removed:{}", deleted, removed);
+        }
+        return deleted;
+    }
+
+    private static long floorHour(long time) {
+        return time - time % HOUR_MILLIS;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (compactService != null) {
+            compactService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.gscheduler.service.executor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecution;
+import org.gscheduler.service.task.JobExecutionService;
+import org.gscheduler.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务执行记录的异步批量写入.执行线程只把记录放入有界队列,不等待数据库;
+ * 单独的线程定时取出队列中的记录按批写入job_execution.队列满时丢弃新记录并计数,执行历史不影响任务执行.
+ * 写库失败的批次下次优先重试,连续失败超过MAX_FLUSH_RETRIES次后同样丢弃并计数,不会一直阻塞后面的记录.
+ */
+@Component
+public class JobExecutionWriter {
+    private static final Logger logger = LoggerFactory.getLogger(JobExecutionWriter.class);
+    private static final int ERROR_SUMMARY_LENGTH = 255;
+    // 写库失败的批次最多重试次数
+    private static final int MAX_FLUSH_RETRIES = 3;
+
+    @Value("${job.execution.flush.interval}")
+    String executionFlushInterval;
+
+    @Value("${job.execution.batch.size}")
+    String executionBatchSize;
+
+    @Value("${job.execution.queue.size}")
+    String executionQueueSize;
+
+    @Resource
+    JobExecutionService jobExecutionService;
+
+    // 批量写库间隔,单位ms
+    private long flushInterval = 1000;
+    // 每批写入的最大记录数
+    private int batchSize = 500;
+    // 队列容量
+    private int queueSize = 20000;
+
+    private BlockingQueue<JobExecution> pendingExecutions;
+    // 队列满时丢弃的记录数
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    // 写库失败等待重试的批次和已失败次数,只在flush中访问
+    private final List<JobExecution> retryBatch = new ArrayList<>();
+    private int retryCount = 0;
+    private ScheduledExecutorService flushService;
+    private String hostName;
+
+    @PostConstruct
+    public void init() {
+        long interval = NumberUtils.toLong(executionFlushInterval, 0);
+        if (interval > 0) {
+            flushInterval = interval;
+        }
+        int size = NumberUtils.toInt(executionBatchSize, 0);
+        if (size > 0) {
+            batchSize = size;
+        }
+        int capacity = NumberUtils.toInt(executionQueueSize, 0);
+        if (capacity > 0) {
+            queueSize = capacity;
+        }
+        logger.info("job execution writer init,flushInterval:{}ms,batchSize:{},queueSize:{}", flushInterval,
+                batchSize, queueSize);
+
+        hostName = Utils.getHostName();
+        pendingExecutions = new ArrayBlockingQueue<>(queueSize);
+        flushService = Executors.newSingleThreadScheduledExecutor(new JobManager.NamedThreadFactory("job-execution"));
+        flushService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次执行,不阻塞
+     *
+     * @param error 执行失败的异常,成功为null
+     */
+    public void submit(long jobId, long startTime, long endTime, Throwable error) {
+        JobExecution jobExecution = new JobExecution();
+        jobExecution.setJobId(jobId);
+        jobExecution.setHost(hostName);
+        jobExecution.setStartTime(startTime);
+        jobExecution.setEndTime(endTime);
+        jobExecution.setDurationMs(Math.max(0, endTime - startTime));
+        jobExecution.setOutcome(null == error ? ExecuteStatus.SUCCESS : ExecuteStatus.FAILED);
+        jobExecution.setErrorSummary(null == error ? ""
+                : StringUtils.abbreviate(ExceptionUtils.getMessage(error), ERROR_SUMMARY_LENGTH));
+        if (!pendingExecutions.offer(jobExecution)) {
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped % 1000 == 1) {
+                logger.warn("执行记录队列已满,丢弃执行记录,已丢弃:{},queueSize:{}", dropped, queueSize);
+            }
+        }
+    }
+
+    /**
+     * 先重试上次失败的批次,然后将队列中的记录分批写库,失败的批次留到下次重试
+     */
+    public synchronized void flush() {
+        if (!retryBatch.isEmpty() && !retry()) {
+            return;
+        }
+        List<JobExecution> batch = new ArrayList<>(batchSize);
+        while (pendingExecutions.drainTo(batch, batchSize) > 0) {
+            try {
+                jobExecutionService.batchSaveJobExecution(batch);
+                logger.debug("flush job execution,size:{}", batch.size());
+            } catch (RuntimeException e) {
+                logger.error("批量写入任务执行记录失败,size:{},下次重试", batch.size(), e);
+                retryBatch.addAll(batch);
+                retryCount = 1;
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 重试上次失败的批次,超过重试次数时丢弃
+     *
+     * @return 批次已写入或已丢弃
+     */
+    private boolean retry() {
+        try {
+            jobExecutionService.batchSaveJobExecution(retryBatch);
+            logger.debug("retry job execution,size:{}", retryBatch.size());
+        } catch (RuntimeException e) {
+            if (retryCount++ < MAX_FLUSH_RETRIES) {
+                logger.error("重试写入任务执行记录失败,size:{},已失败:{}次", retryBatch.size(), retryCount, e);
+                return false;
+            }
+            droppedCount.addAndGet(retryBatch.size());
+            logger.error("写入任务执行记录失败{}次,丢弃该批次,size:{}", retryCount, retryBatch.size(), e);
+        }
+        retryBatch.clear();
+        retryCount = 0;
+        return true;
+    }
+
+    public int getPendingSize() {
+        return pendingExecutions.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushService != null) {
+            flushService.shutdown();
+        }
+        flush();
+        logger.info("job execution writer shutdown,pending size:{},dropped:{}", getPendingSize(), getDroppedCount());
+    }
+}
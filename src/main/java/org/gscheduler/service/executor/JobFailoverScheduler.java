@@ -0,0 +1,165 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * down掉节点的failover定时.定时线程只负责等待,到期后把认领和启动任务提交到工作线程池,
+ * 一台机器的大量任务接管不会推迟其他down掉节点的等待,也不会阻塞节点恢复时的取消.
+ * 一个节点的所有failover执行完成或被取消后移除等待记录.
+ */
+class JobFailoverScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(JobFailoverScheduler.class);
+
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    // 等待或执行中的failover,key:down掉的节点路径
+    private final Map<String, Pending> pendingMap = Maps.newConcurrentMap();
+
+    /**
+     * 按等待时间执行failover
+     */
+    interface FailoverTask {
+        /**
+         * @param tolerate 本次处理的任务的等待时间,ms
+         */
+        void run(int tolerate);
+    }
+
+    JobFailoverScheduler(int workerThreads) {
+        timer = Executors.newSingleThreadScheduledExecutor(new JobManager.NamedThreadFactory("job-failover"));
+        workers = Executors.newFixedThreadPool(workerThreads, new JobManager.NamedThreadFactory("job-failover-worker"));
+    }
+
+    /**
+     * 每个等待时间一个定时,到期后在工作线程中执行task.节点已有等待中的failover时先取消
+     *
+     * @param tolerates 节点上任务的等待时间,ms
+     */
+    void schedule(String path, Collection<Integer> tolerates, final FailoverTask task) {
+        cancel(path);
+        Pending pending = new Pending(tolerates.size());
+        pendingMap.put(path, pending);
+        for (final int tolerate : tolerates) {
+            submit(path, pending, tolerate, new Runnable() {
+                @Override
+                public void run() {
+                    task.run(tolerate);
+                }
+            });
+        }
+    }
+
+    /**
+     * 在节点的failover执行过程中追加一次延迟执行,如第二轮认领.只能在该节点的failover任务中调用
+     *
+     * @return 节点的failover已取消或已结束时返回false
+     */
+    boolean scheduleFollowUp(String path, long delayMillis, Runnable task) {
+        Pending pending = pendingMap.get(path);
+        if (null == pending || pending.cancelled) {
+            return false;
+        }
+        pending.count.incrementAndGet();
+        submit(path, pending, delayMillis, task);
+        return true;
+    }
+
+    private void submit(final String path, final Pending pending, long delayMillis, final Runnable task) {
+        final Runnable work = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!pending.cancelled) {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("execute failover error,path:{}", path, e);
+                } finally {
+                    release(path, pending);
+                }
+            }
+        };
+        try {
+            pending.futures.add(timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (pending.cancelled) {
+                        return;
+                    }
+                    try {
+                        pending.futures.add(workers.submit(work));
+                    } catch (RejectedExecutionException e) {
+                        logger.info("failover closed,ignore failover,path:{}", path);
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            logger.info("failover closed,ignore failover,path:{}", path);
+        }
+    }
+
+    private void release(String path, Pending pending) {
+        if (pending.count.decrementAndGet() <= 0 && pendingMap.remove(path, pending)) {
+            logger.info("failover finished,path:{}", path);
+        }
+    }
+
+    /**
+     * 取消节点的failover,等待中的不再执行,执行中的由调用方按节点状态停止认领
+     *
+     * @return 是否有等待中的failover被取消
+     */
+    boolean cancel(String path) {
+        Pending pending = pendingMap.remove(path);
+        if (null == pending) {
+            return false;
+        }
+        pending.cancelled = true;
+        boolean cancelled = false;
+        for (Future<?> future : pending.futures) {
+            cancelled |= future.cancel(false);
+        }
+        return cancelled;
+    }
+
+    boolean isPending(String path) {
+        return pendingMap.containsKey(path);
+    }
+
+    int getPendingSize() {
+        return pendingMap.size();
+    }
+
+    void close() {
+        for (String path : pendingMap.keySet()) {
+            cancel(path);
+        }
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private static class Pending {
+        // 未结束的定时和执行数
+        private final AtomicInteger count;
+        private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled = false;
+
+        Pending(int count) {
+            this.count = new AtomicInteger(count);
+        }
+    }
+}
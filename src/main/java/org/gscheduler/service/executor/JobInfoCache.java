@@ -0,0 +1,400 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.entity.JobInfoTombstone;
+import org.gscheduler.service.task.JobInfoService;
+import org.gscheduler.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JobInfo的本地读穿透缓存,供JobWatcher和JobManager使用.按id缓存,并维护执行主机,候选主机和任务名的索引.
+ * 缓存失效:1.JobListener收到service_update节点事件,或本机修改任务时按id失效;
+ * 2.每个watcher周期按update_time和job_info_tombstone增量刷新,刷新结果交给JobWatcher应用到本机调度器;
+ * 3.定期全量加载,兜底遗漏的变更.
+ * 只保证任务配置是最新的,执行状态(execute_status,last_duration_ms等)不刷新,需要时直接查库.
+ */
+@Component
+public class JobInfoCache {
+    private static final Logger logger = LoggerFactory.getLogger(JobInfoCache.class);
+    // 增量刷新时多取的时间,覆盖事务提交晚于update_time以及数据库时间精度为秒的情况
+    private static final long DELTA_OVERLAP = TimeUnit.SECONDS.toMillis(10);
+    // 失效记录保留时长,只需覆盖一次加载的耗时
+    private static final long INVALIDATION_RETENTION = TimeUnit.MINUTES.toNanos(1);
+    // 删除记录最短保留时长,至少为两个全量加载间隔,保证所有主机都能读到
+    private static final long TOMBSTONE_RETENTION = TimeUnit.DAYS.toMillis(1);
+
+    @Value("${job.cache.full.refresh.interval}")
+    String cacheFullRefreshInterval;
+
+    @Resource
+    JobInfoService jobInfoService;
+
+    // 全量加载间隔,单位ns
+    private long fullRefreshInterval = TimeUnit.MINUTES.toNanos(30);
+
+    // key:任务id,读不加锁,写需要持有this锁
+    private final Map<Long, JobInfo> jobInfoMap = new ConcurrentHashMap<>();
+    // 以下索引访问需要持有this锁
+    private final SetMultimap<String, Long> executeHostIndex = HashMultimap.create();
+    private final SetMultimap<String, Long> candidateHostIndex = HashMultimap.create();
+    private final Map<String, Long> jobNameIndex = new HashMap<>();
+    // key:任务id,value:失效时的System.nanoTime.加载开始后被失效的任务不放入缓存,避免数据库的旧值覆盖失效
+    private final Map<Long, Long> invalidations = new ConcurrentHashMap<>();
+    // key:已处理的删除记录的任务id,value:delete_time.增量读取有重叠,避免重复通知,只在刷新时访问
+    private final Map<Long, Long> appliedTombstones = new HashMap<>();
+    // 刷新互斥,不阻塞读
+    private final Object refreshMonitor = new Object();
+
+    // 已加载任务的最大update_time,增量刷新的起点
+    private volatile long watermark;
+    // 已读到的删除记录的最大delete_time
+    private long tombstoneWatermark;
+    private long lastFullRefreshTime;
+    private boolean loaded = false;
+
+    @PostConstruct
+    public void init() {
+        long interval = NumberUtils.toLong(cacheFullRefreshInterval, 0);
+        if (interval > 0) {
+            fullRefreshInterval = TimeUnit.MINUTES.toNanos(interval);
+        }
+        logger.info("job info cache init,fullRefreshInterval:{}min", TimeUnit.NANOSECONDS.toMinutes(fullRefreshInterval));
+    }
+
+    /**
+     * 按id获取任务,未缓存时查库
+     *
+     * @return 任务的拷贝, 不存在返回null
+     */
+    public JobInfo get(long id) {
+        JobInfo jobInfo = jobInfoMap.get(id);
+        if (null == jobInfo) {
+            long loadTime = System.nanoTime();
+            jobInfo = jobInfoService.getJobInfoById(id);
+            if (null == jobInfo) {
+                return null;
+            }
+            put(jobInfo, loadTime);
+        }
+        return copy(jobInfo);
+    }
+
+    /**
+     * 按id批量获取任务,未缓存的任务合并为一次查库
+     *
+     * @return key:任务id,value:任务的拷贝,不存在的任务不返回
+     */
+    public Map<Long, JobInfo> getAll(Collection<Long> ids) {
+        Map<Long, JobInfo> result = new HashMap<>(ids.size() * 2);
+        List<Long> missing = Lists.newArrayList();
+        for (Long id : ids) {
+            JobInfo jobInfo = jobInfoMap.get(id);
+            if (null == jobInfo) {
+                missing.add(id);
+            } else {
+                result.put(id, copy(jobInfo));
+            }
+        }
+        if (!missing.isEmpty()) {
+            long loadTime = System.nanoTime();
+            for (JobInfo jobInfo : jobInfoService.getJobInfoByIds(missing)) {
+                put(jobInfo, loadTime);
+                result.put(jobInfo.getId(), copy(jobInfo));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按任务名获取任务,未缓存时查库
+     *
+     * @return 任务的拷贝, 不存在返回null
+     */
+    public JobInfo getByJobName(String jobName) {
+        Long id;
+        synchronized (this) {
+            id = jobNameIndex.get(jobName);
+        }
+        if (null != id) {
+            JobInfo jobInfo = jobInfoMap.get(id);
+            if (null != jobInfo) {
+                return copy(jobInfo);
+            }
+        }
+        long loadTime = System.nanoTime();
+        JobInfo jobInfo = jobInfoService.getJobInfoByJobName(jobName);
+        if (null == jobInfo) {
+            return null;
+        }
+        put(jobInfo, loadTime);
+        return copy(jobInfo);
+    }
+
+    /**
+     * 按executeHost索引查询由host执行的任务
+     *
+     * @return 任务的拷贝
+     */
+    public List<JobInfo> getByExecuteHost(String host) {
+        synchronized (this) {
+            return copyAll(executeHostIndex.get(host));
+        }
+    }
+
+    /**
+     * 按hostList索引查询候选主机包含host,但executeHost不是host的任务
+     *
+     * @return 任务的拷贝
+     */
+    public List<JobInfo> getByCandidateHost(String host) {
+        synchronized (this) {
+            List<JobInfo> result = Lists.newArrayList();
+            for (Long id : candidateHostIndex.get(host)) {
+                JobInfo jobInfo = jobInfoMap.get(id);
+                if (null != jobInfo && !StringUtils.equals(jobInfo.getExecuteHost(), host)) {
+                    result.add(copy(jobInfo));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 任务被修改或删除,移出缓存,下次访问时查库
+     */
+    public void invalidate(long id) {
+        invalidations.put(id, System.nanoTime());
+        synchronized (this) {
+            removeIndex(jobInfoMap.remove(id));
+        }
+    }
+
+    /**
+     * 按update_time和删除记录增量刷新,未加载或到达全量加载间隔时全量加载
+     *
+     * @return 本次刷新发现的变更, 重复读到的未变化任务不包含在内
+     */
+    public Delta refresh() {
+        synchronized (refreshMonitor) {
+            if (!loaded || System.nanoTime() - lastFullRefreshTime >= fullRefreshInterval) {
+                return reload();
+            }
+            long loadTime = System.nanoTime();
+            List<JobInfo> updated = jobInfoService.getJobInfoUpdatedSince(new Date(watermark - DELTA_OVERLAP));
+            List<JobInfoTombstone> tombstones = jobInfoService.getJobInfoTombstoneSince(
+                    new Date(tombstoneWatermark - DELTA_OVERLAP));
+            Delta delta = new Delta(false);
+            for (JobInfo jobInfo : updated) {
+                if (put(jobInfo, loadTime)) {
+                    delta.updated.add(copy(jobInfo));
+                }
+            }
+            delta.removed.addAll(applyTombstones(tombstones));
+            pruneInvalidations(loadTime);
+            logger.debug("job info cache delta refresh,read:{},updated:{},removed:{},size:{}", updated.size(),
+                    delta.updated.size(), delta.removed.size(), jobInfoMap.size());
+            return delta;
+        }
+    }
+
+    /**
+     * 全量加载,移除数据库中已删除的任务,并清理过期的删除记录
+     *
+     * @return updated为数据库中的所有任务, removed为缓存中有但数据库中已删除的任务
+     */
+    public Delta reload() {
+        synchronized (refreshMonitor) {
+            long loadTime = System.nanoTime();
+            List<JobInfo> allJobInfo = jobInfoService.getAllJobInfo();
+            List<JobInfoTombstone> tombstones = jobInfoService.getJobInfoTombstoneSince(
+                    new Date(tombstoneWatermark - DELTA_OVERLAP));
+            Delta delta = new Delta(true);
+            Set<Long> ids = Sets.newHashSetWithExpectedSize(allJobInfo.size());
+            for (JobInfo jobInfo : allJobInfo) {
+                ids.add(jobInfo.getId());
+                put(jobInfo, loadTime);
+                delta.updated.add(copy(jobInfo));
+            }
+            synchronized (this) {
+                Iterator<Map.Entry<Long, JobInfo>> iterator = jobInfoMap.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, JobInfo> entry = iterator.next();
+                    if (!ids.contains(entry.getKey())) {
+                        iterator.remove();
+                        removeIndex(entry.getValue());
+                        delta.removed.add(entry.getKey());
+                    }
+                }
+            }
+            // 全量结果已包含删除,删除记录只用于推进水位
+            applyTombstones(tombstones);
+            pruneInvalidations(loadTime);
+            loaded = true;
+            lastFullRefreshTime = loadTime;
+            logger.info("job info cache reload,size:{},removed:{},watermark:{}", jobInfoMap.size(),
+                    delta.removed.size(), watermark);
+
+            long retention = Math.max(TOMBSTONE_RETENTION, TimeUnit.NANOSECONDS.toMillis(fullRefreshInterval) * 2);
+            try {
+                jobInfoService.removeJobInfoTombstoneBefore(new Date(System.currentTimeMillis() - retention));
+            } catch (RuntimeException e) {
+                logger.error("清理任务删除记录失败", e);
+            }
+            return delta;
+        }
+    }
+
+    // 移除已删除的任务,返回首次读到的删除记录对应的任务id
+    private Set<Long> applyTombstones(List<JobInfoTombstone> tombstones) {
+        Set<Long> removed = Sets.newHashSet();
+        for (JobInfoTombstone tombstone : tombstones) {
+            long deleteTime = tombstone.getDeleteTime().getTime();
+            if (deleteTime > tombstoneWatermark) {
+                tombstoneWatermark = deleteTime;
+            }
+            if (appliedTombstones.put(tombstone.getJobId(), deleteTime) == null) {
+                invalidate(tombstone.getJobId());
+                removed.add(tombstone.getJobId());
+            }
+        }
+        // 不会再被增量读到的删除记录
+        Iterator<Long> iterator = appliedTombstones.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() < tombstoneWatermark - DELTA_OVERLAP) {
+                iterator.remove();
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return jobInfoMap.size();
+    }
+
+    // loadTime之后被失效的任务不放入,返回是否为新任务或update_time有变化
+    private synchronized boolean put(JobInfo jobInfo, long loadTime) {
+        Long invalidateTime = invalidations.get(jobInfo.getId());
+        if (null != invalidateTime && invalidateTime - loadTime >= 0) {
+            return false;
+        }
+        if (null != jobInfo.getUpdateTime() && jobInfo.getUpdateTime().getTime() > watermark) {
+            watermark = jobInfo.getUpdateTime().getTime();
+        }
+        JobInfo old = jobInfoMap.put(jobInfo.getId(), jobInfo);
+        removeIndex(old);
+        if (StringUtils.isNotBlank(jobInfo.getExecuteHost())) {
+            executeHostIndex.put(jobInfo.getExecuteHost().trim(), jobInfo.getId());
+        }
+        for (String host : Utils.splitHostList(jobInfo.getHostList())) {
+            candidateHostIndex.put(host, jobInfo.getId());
+        }
+        if (null != jobInfo.getJobName()) {
+            jobNameIndex.put(jobInfo.getJobName(), jobInfo.getId());
+        }
+        return null == old || !Objects.equal(old.getUpdateTime(), jobInfo.getUpdateTime());
+    }
+
+    private void removeIndex(JobInfo jobInfo) {
+        if (null == jobInfo) {
+            return;
+        }
+        if (StringUtils.isNotBlank(jobInfo.getExecuteHost())) {
+            executeHostIndex.remove(jobInfo.getExecuteHost().trim(), jobInfo.getId());
+        }
+        for (String host : Utils.splitHostList(jobInfo.getHostList())) {
+            candidateHostIndex.remove(host, jobInfo.getId());
+        }
+        Long id = jobNameIndex.get(jobInfo.getJobName());
+        if (null != id && id == jobInfo.getId()) {
+            jobNameIndex.remove(jobInfo.getJobName());
+        }
+    }
+
+    private void pruneInvalidations(long now) {
+        Iterator<Long> iterator = invalidations.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() > INVALIDATION_RETENTION) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 一次刷新的结果
+     */
+    public static class Delta {
+        private final boolean full;
+        private final List<JobInfo> updated = Lists.newArrayList();
+        private final Set<Long> removed = Sets.newHashSet();
+
+        Delta(boolean full) {
+            this.full = full;
+        }
+
+        /**
+         * 是否为全量加载
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        /**
+         * 新增或配置有变化的任务,全量加载时为所有任务
+         */
+        public List<JobInfo> getUpdated() {
+            return updated;
+        }
+
+        /**
+         * 已删除的任务id
+         */
+        public Set<Long> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private List<JobInfo> copyAll(Collection<Long> ids) {
+        List<JobInfo> result = Lists.newArrayListWithCapacity(ids.size());
+        for (Long id : ids) {
+            JobInfo jobInfo = jobInfoMap.get(id);
+            if (null != jobInfo) {
+                result.add(copy(jobInfo));
+            }
+        }
+        return result;
+    }
+
+    // 缓存中的对象不对外暴露,调用方可以修改返回值
+    private static JobInfo copy(JobInfo jobInfo) {
+        JobInfo target = new JobInfo();
+        BeanUtils.copyProperties(jobInfo, target);
+        return target;
+    }
+}
@@ -3,15 +3,19 @@ package org.gscheduler.service.executor;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.framework.recipes.locks.InterProcessMutex;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
 import org.gscheduler.commons.ZkHelper;
 import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.metrics.JobMetrics;
 import org.gscheduler.service.task.JobInfoService;
 import org.gscheduler.utils.Utils;
 import org.slf4j.Logger;
@@ -21,13 +25,13 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 它机任务监听:任务状态参数改变监听,任务执行状态监听(服务器不可用接管任务执行)
@@ -46,6 +50,21 @@ public class JobListener {
     @Resource
     JobInfoService jobInfoService;
 
+    @Resource
+    JobWorkflowEngine jobWorkflowEngine;
+
+    @Resource
+    JobInfoCache jobInfoCache;
+
+    @Resource
+    JobNodeCodec jobNodeCodec;
+
+    @Resource
+    JobMetrics jobMetrics;
+
+    @Resource
+    JobRebalancer jobRebalancer;
+
     @Value("${zookeeper.failover.tolerate.time}")
     String zkFailoverTolerateTime;
 
@@ -56,6 +75,8 @@ public class JobListener {
 
     //缓存zk监听的task
     private Map<String, Long> taskNodeMap = new ConcurrentHashMap<>(50);
+    //已处理的任务节点数据版本,key:节点路径,value:Stat.version
+    private final Map<String, Integer> taskNodeVersionMap = new ConcurrentHashMap<>(50);
     //保存failover机器上接管过来,并在本地执行的任务
     private final static Map<String, List<JobInfo>> removeNodeMap = Maps.newConcurrentMap();
     //job更新同步监测路径
@@ -64,13 +85,15 @@ public class JobListener {
     private static final String SERVICE_UPDATE_LOCK_PATH = "/monitor/task/lock/startup_lock";
     //服务可用监测路径
     private static final String SERVICE_AVAILABLE_PATH = "/monitor/task/service_available";
-    //failover任务锁,failover后一个任务只能在一台service上执行
-    private static final String SERVICE_AVAILABLE_LOCK = "/monitor/task/lock/failover_lock";
-    //failover执行线程池
-    private ExecutorService service;
+    //依赖任务触发路径,父任务执行成功后在该路径下创建顺序节点
+    public static final String JOB_TRIGGER_PATH = "/monitor/task/job_trigger";
+    //failover认领和启动任务的工作线程数
+    private static final int FAILOVER_WORKER_THREADS = 4;
+    //failover定时和执行,节点恢复时取消
+    private volatile JobFailoverScheduler failoverScheduler;
     //failover等待最长时间,即发布容忍最长时间ms
     private int tolerateTime = 10 * 60 * 1000;
-    //分布式锁获取超时时间ms
+    //分布式锁获取超时时间ms,也是failover第二轮认领前等待首选机器认领的时间
     private int lockAcquireTime = 10 * 1000;
     //是否在使用zk作为一致性的监听实现
     private boolean isInListening = false;
@@ -91,6 +114,10 @@ public class JobListener {
         }
         logger.info("isInListener:{},tolerateTime:{},lockAcquireTime:{}", isInListening, tolerateTime, lockAcquireTime);
 
+        if (null == failoverScheduler) {
+            failoverScheduler = new JobFailoverScheduler(FAILOVER_WORKER_THREADS);
+        }
+
         //检测
         zkClient = zkHelper.getDefaultZKClient();
         InterProcessMutex lock = new InterProcessMutex(zkClient.getZkCuratorClient(), SERVICE_UPDATE_LOCK_PATH);
@@ -105,7 +132,9 @@ public class JobListener {
             //检查路径存在
             boolean isCreatedAvailablePath = zkClient.checkAndCreatePath(SERVICE_AVAILABLE_PATH);
             boolean isCreatedUpdatePath = zkClient.checkAndCreatePath(SERVICE_UPDATE_PATH);
-            logger.info("isCreatedAvailablePath:{},isCreatedUpdatePath:{}", isCreatedAvailablePath, isCreatedUpdatePath);
+            boolean isCreatedTriggerPath = zkClient.checkAndCreatePath(JOB_TRIGGER_PATH);
+            logger.info("isCreatedAvailablePath:{},isCreatedUpdatePath:{},isCreatedTriggerPath:{}",
+                    isCreatedAvailablePath, isCreatedUpdatePath, isCreatedTriggerPath);
             //将自己注册上去
             String hostNodePath = SERVICE_AVAILABLE_PATH + "/" + Utils.getHostName();
             if (zkClient.checkNodeExisted(hostNodePath)) {
@@ -122,25 +151,28 @@ public class JobListener {
                 boolean existed = zkClient.checkNodeExisted(nodePath);
                 //节点不存在,创建一个,存在刷新值
                 if (!existed) {
-                    String taskJson = createJobJson(jobInfo, JobManager.JobOperator.NONE);
                     logger.info("create node,path:{},task:{}", nodePath, jobInfo.toString());
-                    zkClient.createNode(nodePath, CreateMode.PERSISTENT, taskJson.getBytes());
+                    zkClient.createNode(nodePath, CreateMode.PERSISTENT,
+                            jobNodeCodec.encode(jobInfo, JobManager.JobOperator.NONE));
                 } else if (!isUpdated) {
                     //如果最近没有更新过,更新!
-                    String taskJson = createJobJson(jobInfo, JobManager.JobOperator.NONE);
-                    logger.info("update node:{} data:{}", nodePath, taskJson);
-                    zkClient.setData(nodePath, taskJson.getBytes());
+                    logger.info("update node:{} task:{}", nodePath, jobInfo.toString());
+                    zkClient.setData(nodePath, jobNodeCodec.encode(jobInfo, JobManager.JobOperator.NONE));
                 }
 
                 taskNodeMap.put(nodePath, jobInfo.getId());
             }
 
-            //监听'/monitor/task/service_update'路径下的节点增删
-            zkClient.setPathChildListener(SERVICE_UPDATE_PATH, taskNodeListener());
+            //监听'/monitor/task/service_update'路径下的节点增删,缓存节点数据,事件中直接带有数据
+            zkClient.setPathChildListener(SERVICE_UPDATE_PATH, taskNodeListener(), true);
             //监听'/monitor/task/service_available'路径下的节点增删
             zkClient.setPathChildListener(SERVICE_AVAILABLE_PATH, serviceNodeListener());
+            //监听'/monitor/task/job_trigger'路径下的依赖任务触发节点
+            zkClient.setPathChildListener(JOB_TRIGGER_PATH, jobTriggerListener(), true);
             //执行完毕,设置lock时间戳
             zkClient.setData(SERVICE_UPDATE_LOCK_PATH, Long.toString(date).getBytes());
+            //自动分配执行主机
+            jobRebalancer.init(zkClient, SERVICE_AVAILABLE_PATH);
         } catch (Exception e) {
             logger.error("init zk listener exception.", e);
             zkClient.setData(SERVICE_UPDATE_LOCK_PATH, "exception".getBytes());
@@ -155,7 +187,7 @@ public class JobListener {
     }
 
     /**
-     * 将必要的taskSchedule信息转换成json
+     * 将必要的taskSchedule信息转换成json,job.node.codec=json时使用,二进制格式见JobNodeCodec
      *
      * @param jobInfo  jobInfo
      * @param operator 接收到nodeChange通知时的操作
@@ -171,10 +203,29 @@ public class JobListener {
         jsonMap.put("executeHost", jobInfo.getExecuteHost());
         jsonMap.put("initiateMode", String.valueOf(jobInfo.getInitiateMode()));
         jsonMap.put("failExecuteHost", jobInfo.getFailExecuteHost());
+        jsonMap.put("subJob", jobInfo.getSubJob());
         jsonMap.put("operator", operator.name());
         return JSON.toJSONString(jsonMap);
     }
 
+    /**
+     * 依赖任务触发节点的数据,包含子任务的执行主机,监听方无需查询数据库即可判断是否本机执行
+     *
+     * @param jobInfo 子任务
+     * @param event   触发事件
+     * @return json
+     */
+    public static String createTriggerJson(JobInfo jobInfo, JobTriggerEvent event) {
+        Map<String, String> jsonMap = Maps.newHashMap();
+        jsonMap.put("id", Long.toString(jobInfo.getId()));
+        jsonMap.put("upstream", Long.toString(event.getUpstreamId()));
+        jsonMap.put("upstreamName", event.getUpstreamName());
+        jsonMap.put("runId", event.getRunId());
+        jsonMap.put("executeHost", jobInfo.getExecuteHost());
+        jsonMap.put("failExecuteHost", jobInfo.getFailExecuteHost());
+        return JSON.toJSONString(jsonMap);
+    }
+
     /**
      * 监听'/monitor/task/service_update'节点下的子节点的添加和删除事件
      *
@@ -194,15 +245,23 @@ public class JobListener {
 
                 switch (event.getType()) {
                     case CHILD_UPDATED:
-                        taskNodeUpdate(nodePath);
+                        if (isNewerVersion(event.getData())) {
+                            taskNodeUpdate(nodePath, decodeNode(event.getData()));
+                        }
                         break;
                     case CHILD_ADDED:
-                        taskNodeAdd(nodePath);
+                        if (isNewerVersion(event.getData())) {
+                            taskNodeAdd(nodePath, decodeNode(event.getData()));
+                        }
+                        //新增任务按自动分配选择执行主机
+                        jobRebalancer.requestRebalance();
                         break;
                     case CHILD_REMOVED:
+                        taskNodeVersionMap.remove(nodePath);
                         //记录已从db移除,直接关闭即可
                         if (taskNodeMap.containsKey(nodePath)) {
                             logger.info("kill and remove node:{}", nodePath);
+                            jobInfoCache.invalidate(taskNodeMap.get(nodePath));
                             jobManager.killSchedule(taskNodeMap.get(nodePath));
                             taskNodeMap.remove(nodePath);
                         }
@@ -214,68 +273,120 @@ public class JobListener {
         };
     }
 
-    private void taskNodeUpdate(String nodePath) {
+    /**
+     * 事件中缓存的节点数据,PathChildrenCache未缓存数据时从zk读取
+     */
+    private String getNodeData(ChildData childData) {
+        byte[] data = childData.getData();
+        if (null == data) {
+            return zkClient.getData(childData.getPath());
+        }
+        return new String(data);
+    }
+
+    /**
+     * 解码任务节点数据,兼容升级前的json数据
+     *
+     * @return 没有数据或格式错误返回null
+     */
+    private JobNodeCodec.JobNode decodeNode(ChildData childData) {
+        byte[] data = childData.getData();
+        if (null == data) {
+            data = zkClient.getDataBytes(childData.getPath());
+        }
+        try {
+            return JobNodeCodec.decode(data);
+        } catch (RuntimeException e) {
+            logger.error("decode task node data error,path:{}", childData.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 节点数据是否比已处理的新.PathChildrenCache按顺序投递事件,每个事件带有当时的数据和版本,
+     * 数据在处理前再次修改时会有后续事件,版本不大于已处理版本的事件直接忽略
+     */
+    private boolean isNewerVersion(ChildData childData) {
+        Stat stat = childData.getStat();
+        if (null == stat) {
+            return true;
+        }
+        Integer processedVersion = taskNodeVersionMap.get(childData.getPath());
+        if (null != processedVersion && stat.getVersion() <= processedVersion) {
+            logger.info("ignore stale task node event,path:{},version:{},processed version:{}",
+                    childData.getPath(), stat.getVersion(), processedVersion);
+            return false;
+        }
+        taskNodeVersionMap.put(childData.getPath(), stat.getVersion());
+        return true;
+    }
+
+    private void taskNodeUpdate(String nodePath, JobNodeCodec.JobNode node) {
         logger.info("enter task node update event,nodePath:{}", nodePath);
-        String jsonData = zkClient.getData(nodePath);
-        if (StringUtils.isBlank(jsonData)) {
+        if (null == node) {
             logger.info("task node update event,cannot get zk node data.");
             return;
         }
-        JSONObject jsonObject = JSON.parseObject(jsonData);
-        String operator = jsonObject.getString("operator");
-        String executeHost = jsonObject.getString("executeHost");
-        String failExecuteHost = jsonObject.getString("failExecuteHost");
-        String initiateMode = jsonObject.getString("initiateMode");
+        JobManager.JobOperator operator = node.getOperator();
+        String executeHost = node.getExecuteHost();
+        String failExecuteHost = node.getFailExecuteHost();
+        short initiateMode = node.getInitiateMode();
         long id;
         if (taskNodeMap.containsKey(nodePath)) {
             id = taskNodeMap.get(nodePath);
         } else {
-            id = Long.parseLong(jsonObject.getString("id"));
+            id = node.getId();
         }
 
-        logger.info("get zk task node data:{}", jsonData);
+        logger.info("get zk task node data:{}", node);
+        //任务已修改,后续操作从数据库读取最新配置
+        jobInfoCache.invalidate(id);
+        //依赖关系修改,更新本机运行中任务的子任务
+        if (null != node.getSubJob()) {
+            jobManager.refreshSubJob(id, node.getSubJob());
+        }
         //failover时执行操作
         if (StringUtils.equals(Utils.getHostName(), failExecuteHost)) {
             logger.info("failover executor,failExecuteHost:{},operator:{}", failExecuteHost, operator);
             //本机是failover的执行机器
-            if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.STOP) {
+            if (operator == JobManager.JobOperator.STOP) {
                 logger.info("stop failover job,id:{}", id);
                 jobManager.stopSchedule(id);
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.START) {
+            } else if (operator == JobManager.JobOperator.START) {
                 logger.info("start failover job,id:{}", id);
                 jobManager.startSchedule(id);
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.RESTART) {
+            } else if (operator == JobManager.JobOperator.RESTART) {
                 logger.info("restart failover job,id:{}", id);
                 jobManager.restartSchedule(id);
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.STOP_OR_START) {
+            } else if (operator == JobManager.JobOperator.STOP_OR_START) {
                 logger.info("local failover,id:{}", id);
                 jobManager.restartSchedule(id);
             }
             return;
         }
 
-        if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.NONE) {
+        if (operator == JobManager.JobOperator.NONE) {
             logger.info("node changed,do not exe any operator,operator:{}", operator);
             return;
         }
 
         //执行主机为本机
         if (StringUtils.equals(Utils.getHostName(), executeHost)) {
-            if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.STOP) {
+            if (operator == JobManager.JobOperator.STOP) {
                 logger.info("stop local job,id:{}", id);
                 jobManager.stopSchedule(id);
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.START) {
-                if (NumberUtils.toShort(initiateMode) == JobManager.AVAILABLE) {
+            } else if (operator == JobManager.JobOperator.START) {
+                if (initiateMode == JobManager.AVAILABLE) {
                     logger.info("start local job,id:{}", id);
                     jobManager.startSchedule(id);
                 }
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.RESTART) {
-                if (NumberUtils.toShort(initiateMode) == JobManager.AVAILABLE) {
+            } else if (operator == JobManager.JobOperator.RESTART) {
+                if (initiateMode == JobManager.AVAILABLE) {
                     logger.info("restart local job,id:{}", id);
                     jobManager.restartSchedule(id);
                 }
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.STOP_OR_START) {
-                if (NumberUtils.toShort(initiateMode) == JobManager.AVAILABLE) {
+            } else if (operator == JobManager.JobOperator.STOP_OR_START) {
+                if (initiateMode == JobManager.AVAILABLE) {
                     logger.info("start local job,id:{}", id);
                     jobManager.restartSchedule(id);
                 } else {
@@ -285,41 +396,39 @@ public class JobListener {
             }
         } else {
             //执行主机非本机
-            if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.STOP_OR_START) {
+            if (operator == JobManager.JobOperator.STOP_OR_START) {
                 logger.info("host change,stop local job,id:{}", id);
                 jobManager.stopSchedule(id);
-            } else if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.STOP) {
+            } else if (operator == JobManager.JobOperator.STOP) {
                 logger.info("stop local job if exist,id:{}", id);
                 jobManager.stopSchedule(id);
             }
         }
     }
 
-    private void taskNodeAdd(String nodePath) {
+    private void taskNodeAdd(String nodePath, JobNodeCodec.JobNode node) {
         logger.info("enter task node add event,nodePath:{}", nodePath);
         if (taskNodeMap.containsKey(nodePath)) {
             logger.info("existed node,ignore child add event.");
             return;
         }
 
-        String data = zkClient.getData(nodePath);
-        if (StringUtils.isBlank(data)) {
+        if (null == node) {
             logger.warn("get zk data error,ignore child add event.");
             return;
         }
-        logger.info("task node add event,get zk data:{}", data);
+        logger.info("task node add event,get zk data:{}", node);
 
-        JSONObject jsonObject = JSON.parseObject(data);
-        String operator = jsonObject.getString("operator");
         //广播操作为NONE,则无需操作.
-        if (JobManager.JobOperator.valueOf(operator) == JobManager.JobOperator.NONE) {
+        if (node.getOperator() == JobManager.JobOperator.NONE) {
             return;
         }
 
         logger.info("do new task add logic,set Node Listener and start task if ok.");
-        String executeHost = jsonObject.getString("executeHost");
-        short initiateMode = NumberUtils.toShort(jsonObject.getString("initiateMode"));
-        long id = Long.parseLong(jsonObject.getString("id"));
+        String executeHost = node.getExecuteHost();
+        short initiateMode = node.getInitiateMode();
+        long id = node.getId();
+        jobInfoCache.invalidate(id);
 
         if (StringUtils.equals(Utils.getHostName(), executeHost) && initiateMode == JobManager.AVAILABLE) {
             //新增job,如果是启动状态则启动
@@ -328,6 +437,50 @@ public class JobListener {
         taskNodeMap.put(nodePath, id);
     }
 
+    /**
+     * 监听'/monitor/task/job_trigger'节点下的触发节点,子任务在本机执行时执行并删除节点
+     *
+     * @return PathChildrenCacheListener
+     */
+    private PathChildrenCacheListener jobTriggerListener() {
+        return new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                if (event == null || event.getData() == null || event.getData().getPath() == null) {
+                    return;
+                }
+                if (event.getType() == PathChildrenCacheEvent.Type.CHILD_ADDED) {
+                    doJobTrigger(event.getData().getPath(), getNodeData(event.getData()));
+                }
+            }
+        };
+    }
+
+    private void doJobTrigger(String nodePath, String data) {
+        if (StringUtils.isBlank(data)) {
+            //已被执行主机处理
+            return;
+        }
+        JSONObject jsonObject = JSON.parseObject(data);
+        String executeHost = jsonObject.getString("executeHost");
+        String failExecuteHost = jsonObject.getString("failExecuteHost");
+        String localHost = Utils.getHostName();
+        boolean isLocal = StringUtils.isNotBlank(failExecuteHost) ? StringUtils.equals(localHost, failExecuteHost)
+                : StringUtils.equals(localHost, executeHost);
+        if (!isLocal) {
+            return;
+        }
+
+        long id = NumberUtils.toLong(jsonObject.getString("id"), 0);
+        logger.info("job trigger event,path:{},data:{}", nodePath, data);
+        if (id > 0) {
+            long upstreamId = NumberUtils.toLong(jsonObject.getString("upstream"), 0);
+            jobWorkflowEngine.onUpstreamCompleted(new JobTriggerEvent(id, upstreamId,
+                    jsonObject.getString("upstreamName"), jsonObject.getString("runId")));
+        }
+        zkClient.deleteNode(nodePath);
+    }
+
     /**
      * 监听'/monitor/task/service_available'节点下的临时子节点的添加和删除事件
      * 监听在其他机器上执行的任务,且本机在机器执行列表中,心跳停止,机器连接中断.
@@ -351,11 +504,13 @@ public class JobListener {
                         logger.info("service node add,path:{}", path);
                         alarmString.append("service add!path:").append(path);
                         doServiceNodeAdd(path);
+                        jobRebalancer.requestRebalance();
                         break;
                     case CHILD_REMOVED:
                         logger.info("service node removed,path:{}", path);
                         alarmString.append("service down!path:").append(path);
                         doServiceNodeRemove(path);
+                        jobRebalancer.requestRebalance();
                         break;
                     case CONNECTION_RECONNECTED:
                         alarmString.append("connection_reconnected!path:").append(path);
@@ -399,91 +554,215 @@ public class JobListener {
             return;
         }
 
-        //放入一个空的list
-        removeNodeMap.put(path, new ArrayList<JobInfo>());
-        if (service == null) {
-            service = Executors.newCachedThreadPool();
+        JobFailoverScheduler scheduler = failoverScheduler;
+        if (null == scheduler) {
+            logger.info("listener closed,ignore failover,path:{}", path);
+            return;
         }
-        service.execute(new Runnable() {
+        //同一节点重复down掉时,以最后一次为准
+        cancelFailover(path);
+        //放入一个空的list
+        removeNodeMap.put(path, new CopyOnWriteArrayList<JobInfo>());
+        final long detectTime = System.currentTimeMillis();
+        //按任务的等待时间分组,每组一个定时任务
+        Set<Integer> tolerateTimes = groupTolerateTime(nonLocalTaskList, tolerateTime);
+        scheduler.schedule(path, tolerateTimes, new JobFailoverScheduler.FailoverTask() {
             @Override
-            public void run() {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(tolerateTime);
-                    if (!removeNodeMap.containsKey(path)) {
-                        return;
-                    }
-
-                    doFailoverTask(path, host);
-                } catch (Exception e) {
-                    logger.error("executor error.", e);
+            public void run(int tolerate) {
+                if (!removeNodeMap.containsKey(path)) {
+                    return;
                 }
+                doFailoverTask(path, host, tolerate, detectTime);
             }
         });
+        jobMetrics.getFailoverStats().scheduled();
+        logger.info("failover scheduled,path:{},tolerate times:{}", path, tolerateTimes);
+    }
+
+    /**
+     * 任务的failover等待时间,没有单独配置时使用zookeeper.failover.tolerate.time
+     */
+    private int getTolerateTime(JobInfo jobInfo) {
+        return getTolerateTime(jobInfo, tolerateTime);
+    }
+
+    static int getTolerateTime(JobInfo jobInfo, int defaultTolerateTime) {
+        Integer tolerate = jobInfo.getFailoverTolerateTime();
+        return null != tolerate && tolerate > 0 ? tolerate : defaultTolerateTime;
+    }
+
+    /**
+     * 任务按各自的等待时间去重排序
+     */
+    static Set<Integer> groupTolerateTime(List<JobInfo> jobInfos, int defaultTolerateTime) {
+        Set<Integer> tolerateTimes = Sets.newTreeSet();
+        for (JobInfo jobInfo : jobInfos) {
+            tolerateTimes.add(getTolerateTime(jobInfo, defaultTolerateTime));
+        }
+        return tolerateTimes;
+    }
+
+    /**
+     * 取消节点尚未执行的failover
+     */
+    private void cancelFailover(String path) {
+        JobFailoverScheduler scheduler = failoverScheduler;
+        if (null == scheduler) {
+            return;
+        }
+        if (scheduler.cancel(path)) {
+            jobMetrics.getFailoverStats().cancelled();
+            logger.info("cancel pending failover,path:{}", path);
+        }
     }
 
     /**
      * 处理节点down掉后,将down掉的service中所有任务中hostList包含localHost的任务,在local启动执行.
+     * 不使用全局锁,每个任务按version乐观锁单独认领,存活的机器并行接管互不相交的任务:
+     * 第一轮只认领按rendezvous hash分配给本机的任务,负载均匀分散到存活机器;
+     * lockAcquireTime后第二轮认领仍无人接管的任务(首选机器也已down或未开启failover),由认领成功的机器执行.
+     * 在failover工作线程中执行,只处理等待时间为tolerate的任务.
      *
      * @param path 被移除的节点路径
      */
-    private void doFailoverTask(String path, String host) {
+    private void doFailoverTask(final String path, final String host, final int tolerate, final long detectTime) {
         //超过failover设定最大时间,执行failover
-        logger.info("exceed tolerate time,execute failover,path:{}", path);
-        //先拿到执行权
-        InterProcessMutex lock = new InterProcessMutex(zkClient.getZkCuratorClient(), SERVICE_AVAILABLE_LOCK);
+        logger.info("exceed tolerate time,execute failover,path:{},tolerate:{}", path, tolerate);
         try {
-            if (!lock.acquire(lockAcquireTime, TimeUnit.MILLISECONDS)) {
-                logger.info("lock:{} request failure.participant:{}", SERVICE_AVAILABLE_LOCK, lock.getParticipantNodes().toString());
+            String localHost = Utils.getHostName();
+            Set<String> liveHosts = Sets.newHashSet(zkClient.getChildren(SERVICE_AVAILABLE_PATH));
+            liveHosts.add(localHost);
+            if (liveHosts.contains(host)) {
+                logger.info("service node has been recovered,ignore failover,path:{}", path);
                 return;
             }
-            logger.info("lock:{} request lock success.", SERVICE_AVAILABLE_LOCK);
 
-            //获取最新的任务状态
-            List<JobInfo> taskSchedules = jobInfoService.getJobInfoForFailover(host);
-            for (JobInfo jobInfo : taskSchedules) {
-                if (StringUtils.isNotBlank(jobInfo.getFailExecuteHost())) {
-                    //如果该任务已经有机器执行,则跳过
-                    logger.info("task has been failover,failover host:{}", jobInfo.getFailExecuteHost());
-                    continue;
+            List<JobInfo> preferred = new ArrayList<>();
+            int others = 0;
+            for (JobInfo jobInfo : getFailoverTask(host, tolerate)) {
+                List<String> candidates = new ArrayList<>();
+                for (String candidate : Utils.splitHostList(jobInfo.getHostList())) {
+                    if (liveHosts.contains(candidate)) {
+                        candidates.add(candidate);
+                    }
                 }
-
-                //如果任务没有执行,则修改为本机,并启动执行
-                if (jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
-                    jobInfoService.modifyFailExecuteHost(jobInfo.getId(), Utils.getHostName());
-                    //更新zk
-                    jobInfo.setFailExecuteHost(Utils.getHostName());
-                    String jobJson = JobListener.createJobJson(jobInfo, JobManager.JobOperator.NONE);
-                    String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
-                    zkClient.setData(nodePath, jobJson.getBytes());
-
-                    jobManager.initJobScheduler(jobInfo).startAsync().awaitRunning();
-                    //加入到removeMap中
-                    removeNodeMap.get(path).add(jobInfo);
-                    logger.info("local take over and exe failover task:{}", jobInfo.toString());
+                if (candidates.isEmpty() || StringUtils.equals(localHost, JobPlacement.rendezvous(jobInfo.getId(), candidates))) {
+                    preferred.add(jobInfo);
+                } else {
+                    others++;
                 }
             }
+            int claimed = claimFailoverTask(path, preferred, detectTime);
+            logger.info("failover preferred task claimed:{}/{},others:{},path:{}", claimed, preferred.size(), others, path);
+            JobFailoverScheduler scheduler = failoverScheduler;
+            if (others == 0 || null == scheduler) {
+                return;
+            }
+
+            scheduler.scheduleFollowUp(path, lockAcquireTime, new Runnable() {
+                @Override
+                public void run() {
+                    if (!removeNodeMap.containsKey(path)) {
+                        return;
+                    }
+                    try {
+                        //获取最新的任务状态,打乱顺序减少与其他机器的冲突
+                        List<JobInfo> remaining = getFailoverTask(host, tolerate);
+                        Collections.shuffle(remaining);
+                        int claimed = claimFailoverTask(path, remaining, detectTime);
+                        logger.info("failover remaining task claimed:{},path:{}", claimed, path);
+                    } catch (Exception e) {
+                        logger.error("execute failover error,path:{}", path, e);
+                    }
+                }
+            });
         } catch (Exception e) {
             logger.error("execute failover error,path:{}", path, e);
-        } finally {
+        }
+    }
+
+    private List<JobInfo> getFailoverTask(String host, int tolerate) {
+        List<JobInfo> jobInfos = new ArrayList<>();
+        for (JobInfo jobInfo : jobInfoService.getJobInfoForFailover(host)) {
+            if (getTolerateTime(jobInfo) == tolerate) {
+                jobInfos.add(jobInfo);
+            }
+        }
+        return jobInfos;
+    }
+
+    /**
+     * 认领并在本机启动任务,调度器并行启动
+     *
+     * @param detectTime 发现节点down掉的时间,用于统计接管时长
+     * @return 认领成功的任务数
+     */
+    private int claimFailoverTask(String path, List<JobInfo> jobInfos, long detectTime) {
+        String localHost = Utils.getHostName();
+        List<JobScheduler> started = new ArrayList<>();
+        for (JobInfo jobInfo : jobInfos) {
+            if (StringUtils.isNotBlank(jobInfo.getFailExecuteHost())) {
+                //如果该任务已经有机器执行,则跳过
+                logger.info("task has been failover,failover host:{}", jobInfo.getFailExecuteHost());
+                continue;
+            }
+            //如果任务没有执行,则认领为本机,并启动执行
+            if (jobInfo.getInitiateMode() != JobManager.AVAILABLE) {
+                continue;
+            }
+            List<JobInfo> takenOver = removeNodeMap.get(path);
+            if (null == takenOver) {
+                logger.info("service node has been recovered,stop failover,path:{}", path);
+                break;
+            }
+            if (!jobInfoService.claimFailover(jobInfo.getId(), jobInfo.getVersion(), localHost)) {
+                logger.info("task has been claimed by other host,id:{}", jobInfo.getId());
+                continue;
+            }
+            //更新zk
+            jobInfo.setFailExecuteHost(localHost);
+            String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
+            zkClient.setData(nodePath, jobNodeCodec.encode(jobInfo, JobManager.JobOperator.NONE));
+
+            JobScheduler jobScheduler = jobManager.initJobScheduler(jobInfo);
+            if (null != jobScheduler) {
+                jobScheduler.startAsync();
+                started.add(jobScheduler);
+            }
+            //加入到removeMap中
+            takenOver.add(jobInfo);
+            logger.info("local take over and exe failover task:{}", jobInfo.toString());
+        }
+        JobMetrics.FailoverStats failoverStats = jobMetrics.getFailoverStats();
+        for (JobScheduler jobScheduler : started) {
             try {
-                lock.release();
-            } catch (Exception e) {
-                logger.error("release zk update lock exception.", e);
+                jobScheduler.awaitRunning();
+                failoverStats.recordTakeover(System.currentTimeMillis() - detectTime);
+            } catch (IllegalStateException e) {
+                logger.error("start failover task error.", e);
             }
         }
+        return started.size();
     }
 
     /**
-     * 当节点复活,关闭本地执行的复活节点的任务.
+     * 当节点复活,取消等待中的failover,关闭本地执行的复活节点的任务.
      *
      * @param path 复活节点路径
      */
     private void doServiceNodeAdd(String path) {
-        if (removeNodeMap.containsKey(path)) {
+        cancelFailover(path);
+        //如果已经failover,则先关闭任务,再移除
+        List<JobInfo> taskSchedules = removeNodeMap.remove(path);
+        if (null != taskSchedules) {
             logger.info("close task and remove item,path:{}", path);
-            //如果已经failover,则先关闭任务,再移除
-            List<JobInfo> taskSchedules = removeNodeMap.get(path);
             for (JobInfo jobInfo : taskSchedules) {
+                //自动分配已将任务迁移到本机,继续执行
+                JobInfo current = jobInfoService.getJobInfoById(jobInfo.getId());
+                if (null != current && StringUtils.equals(Utils.getHostName(), current.getExecuteHost())) {
+                    logger.info("failover task has been moved to local,keep running:{}", jobInfo.toString());
+                    continue;
+                }
                 logger.info("remove and kill failover task:{}", jobInfo.toString());
                 jobManager.killSchedule(jobInfo.getId());
 
@@ -492,17 +771,22 @@ public class JobListener {
                     jobInfoService.modifyFailExecuteHost(jobInfo.getId(), "");
                 }
             }
-            removeNodeMap.remove(path);
         }
     }
 
     public void close() {
         logger.info("close zookeeper task listener.");
         isInListening = false;
+        jobRebalancer.close();
         try {
             zkClient.closePathChildrenCache(SERVICE_UPDATE_PATH);
             zkClient.closePathChildrenCache(SERVICE_AVAILABLE_PATH);
+            zkClient.closePathChildrenCache(JOB_TRIGGER_PATH);
             taskNodeMap.clear();
+            if (null != failoverScheduler) {
+                failoverScheduler.close();
+                failoverScheduler = null;
+            }
         } catch (Exception e) {
             logger.error("close JobListener exception.", e);
         }
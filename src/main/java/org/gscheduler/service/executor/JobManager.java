@@ -1,11 +1,15 @@
 package org.gscheduler.service.executor;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Service;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.gscheduler.commons.SpringContextHolder;
+import org.gscheduler.entity.ExecuteStatus;
 import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.metrics.JobMetrics;
 import org.gscheduler.service.task.JobInfoService;
 import org.gscheduler.utils.Utils;
 import org.slf4j.Logger;
@@ -14,12 +18,21 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 作业管理类,任务启动,关闭,停止.
@@ -35,22 +48,6 @@ public class JobManager {
      * 任务状态:禁用状态
      */
     public static final short DISABLE = 0;
-    /**
-     * 任务执行状态:未执行
-     */
-    public static final short UN_EXECUTE = -1;
-    /**
-     * 任务执行状态:执行失败
-     */
-    public static final short FAILED_EXECUTE = 0;
-    /**
-     * 任务执行状态:运行中
-     */
-    public static final short IN_EXECUTE = 1;
-    /**
-     * 任务执行状态:执行成功
-     */
-    public static final short SUCCESS_EXECUTE = 2;
 
     /**
      * 是否使用zk监听任务
@@ -75,13 +72,44 @@ public class JobManager {
     @Resource
     JobListener jobListener;
 
+    @Resource
+    JobStatusWriter jobStatusWriter;
+
+    @Resource
+    JobInfoCache jobInfoCache;
+
+    @Resource
+    JobMetrics jobMetrics;
+
+    @Resource
+    JobExecutionWriter jobExecutionWriter;
+
+    @Resource
+    JobExecutionCompactor jobExecutionCompactor;
+
+    @Resource
+    JobSnapshot jobSnapshot;
+
+    @Resource
+    JobDispatcher jobDispatcher;
+
     @Value("${zookeeper.use.task.listener}")
     String isUseZookeeper;
 
+    @Value("${job.startup.concurrency}")
+    String startupConcurrency;
+
+    @Value("${job.shutdown.timeout}")
+    String shutdownTimeout;
+
     /**
-     * 多个线程会同时操作该Map,只存放正在运行的JobScheduler,key-id,value-obj
+     * 多个线程会同时操作该容器,只存放正在运行的JobScheduler,key-id,value-obj
      */
-    private final Map<Long, JobScheduler> jobSchedulerMaps = new ConcurrentHashMap<>(50);
+    private final JobSchedulerRegistry jobSchedulers = new JobSchedulerRegistry();
+    // 多个父任务同时触发同一个子任务时,只启动一个调度器
+    private final Object subJobLock = new Object();
+    // 执行失败的调度器对应的任务id,ScheduleListener写入,JobWatcher取出后重新检查
+    private static final Set<Long> failedJobIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
 
     //监听job线程执行状态的线程池
     private ExecutorService listenerService;
@@ -96,7 +124,57 @@ public class JobManager {
         //执行任务监听
         listenerService = Executors.newSingleThreadExecutor(new NamedThreadFactory("job-listener"));
 
-        List<JobInfo> allJobInfo = jobInfoService.getAllJobInfo();
+        jobMetrics.getStartupStats().begin(System.currentTimeMillis());
+        final Map<Long, JobSnapshot.Entry> snapshot = jobSnapshot.load();
+        if (snapshot.isEmpty()) {
+            startFromDatabase(snapshot);
+        } else {
+            // 先按快照启动,不等待数据库,周期任务保持重启前的触发相位
+            List<JobInfo> snapshotJobInfo = Lists.newArrayListWithCapacity(snapshot.size());
+            for (JobSnapshot.Entry entry : snapshot.values()) {
+                snapshotJobInfo.add(entry.toJobInfo());
+            }
+            List<Long> resumedIds = startJobSchedulers(snapshotJobInfo, snapshot);
+            logger.info("按快照恢复任务:{},耗时:{}ms", resumedIds.size(),
+                    System.currentTimeMillis() - jobMetrics.getStartupStats().getBeginTime());
+            // 后台与数据库对账
+            new NamedThreadFactory("job-startup-reconcile").newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startFromDatabase(snapshot);
+                    } catch (RuntimeException e) {
+                        logger.error("启动时与数据库对账失败,由watcher继续检查.", e);
+                    }
+                }
+            }).start();
+        }
+        // 定期写快照
+        jobSnapshot.init(jobSchedulers);
+
+        // 查看任务的健康状态,处理心跳
+        logger.info("开启监控线程...");
+        jobWatcher.init();
+        // 执行历史超过保留期后按小时汇总
+        jobExecutionCompactor.init();
+    }
+
+    /**
+     * 按数据库启动本机任务.已按快照启动的任务:配置变化的重启,不再由本机执行的关闭
+     *
+     * @param snapshot 启动时读取的快照,没有快照时为空
+     */
+    private void startFromDatabase(Map<Long, JobSnapshot.Entry> snapshot) {
+        // 升级前已存在的任务没有job_host记录,按主机查询候选任务和failover会查不到
+        try {
+            jobInfoService.backfillJobHost();
+        } catch (RuntimeException e) {
+            logger.error("补全任务候选主机job_host失败", e);
+        }
+        // 同时预热缓存
+        List<JobInfo> allJobInfo = jobInfoCache.reload().getUpdated();
+        List<JobInfo> startJobInfo = Lists.newArrayList();
+        Set<Long> localJobIds = Sets.newHashSet();
         for (JobInfo jobInfo : allJobInfo) {
             // 如果任务是未启用的,不初始化
             if (jobInfo.getInitiateMode() != AVAILABLE) {
@@ -115,15 +193,103 @@ public class JobManager {
                 continue;
             }
 
-            JobScheduler jobScheduler = initJobScheduler(jobInfo);
-
             //启动不是依赖调度的任务,依赖调度的任务不启动
-            jobScheduler.startAsync().awaitRunning();
+            localJobIds.add(jobInfo.getId());
+            startJobInfo.add(jobInfo);
         }
 
-        // 查看任务的健康状态,处理心跳
-        logger.info("开启监控线程...");
-        jobWatcher.init();
+        // 按快照启动,但已删除,禁用或不再由本机执行的任务
+        for (Long id : snapshot.keySet()) {
+            if (!localJobIds.contains(id) && null != jobSchedulers.get(id)) {
+                logger.info("快照中的任务不再由本机执行,关闭任务,id:{}", id);
+                stopSchedule(id);
+            }
+        }
+        List<JobInfo> notRunning = Lists.newArrayList();
+        List<Long> scheduledIds = Lists.newArrayListWithCapacity(startJobInfo.size());
+        for (JobInfo jobInfo : startJobInfo) {
+            JobScheduler jobScheduler = jobSchedulers.get(jobInfo.getId());
+            if (null == jobScheduler || !jobScheduler.isRunning()) {
+                notRunning.add(jobInfo);
+                continue;
+            }
+            JobInfo running = jobScheduler.getJobInfo();
+            if (!StringUtils.equals(running.getCrontab(), jobInfo.getCrontab())
+                    || !StringUtils.equals(running.getJobClass(), jobInfo.getJobClass())
+                    || !StringUtils.equals(running.getConfigParameter(), jobInfo.getConfigParameter())) {
+                logger.info("快照中的任务配置已修改,重启任务:{}", jobInfo.getJobName());
+                restartSchedule(jobInfo.getId());
+            } else if (!StringUtils.equals(running.getSubJob(), jobInfo.getSubJob())) {
+                refreshSubJob(jobInfo.getId(), jobInfo.getSubJob());
+            }
+            scheduledIds.add(jobInfo.getId());
+        }
+        scheduledIds.addAll(startJobSchedulers(notRunning, snapshot));
+        JobMetrics.StartupStats startupStats = jobMetrics.getStartupStats();
+        startupStats.scheduled(System.currentTimeMillis(), scheduledIds.size(), startJobInfo.size() - scheduledIds.size());
+        logger.info("任务启动完成,启动:{},失败:{},全部调度耗时:{}ms", startupStats.getStartedCount(),
+                startupStats.getFailedCount(), startupStats.getTimeToAllScheduled());
+    }
+
+    /**
+     * 并行初始化并启动调度器,并发数由job.startup.concurrency控制.只启动已启用的任务,调度器启动时不再更新initiate_mode
+     *
+     * @param snapshot 有快照且crontab未变化的任务按快照恢复触发相位
+     * @return 启动成功的任务id
+     */
+    private List<Long> startJobSchedulers(List<JobInfo> startJobInfo, final Map<Long, JobSnapshot.Entry> snapshot) {
+        if (startJobInfo.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int concurrency = NumberUtils.toInt(startupConcurrency, 8);
+        concurrency = Math.max(1, Math.min(concurrency, startJobInfo.size()));
+        ExecutorService startupService = Executors.newFixedThreadPool(concurrency, new NamedThreadFactory("job-startup"));
+        List<Future<Boolean>> futures = Lists.newArrayListWithCapacity(startJobInfo.size());
+        try {
+            for (final JobInfo jobInfo : startJobInfo) {
+                futures.add(startupService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return startJobScheduler(jobInfo, snapshot.get(jobInfo.getId()));
+                    }
+                }));
+            }
+            List<Long> startedIds = Lists.newArrayListWithCapacity(startJobInfo.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        startedIds.add(startJobInfo.get(i).getId());
+                    }
+                } catch (ExecutionException e) {
+                    logger.error("启动任务失败,任务:{}", startJobInfo.get(i).getJobName(), e.getCause());
+                }
+            }
+            return startedIds;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("等待任务启动被中断.");
+            return Collections.emptyList();
+        } finally {
+            startupService.shutdown();
+        }
+    }
+
+    private boolean startJobScheduler(JobInfo jobInfo, JobSnapshot.Entry entry) {
+        JobScheduler jobScheduler = initJobScheduler(jobInfo);
+        if (null == jobScheduler) {
+            return false;
+        }
+        jobScheduler.skipInitiateModeUpdate();
+        if (null != entry && StringUtils.equals(entry.getCrontab(), jobInfo.getCrontab())) {
+            jobScheduler.resume(entry);
+        }
+        try {
+            jobScheduler.startAsync().awaitRunning();
+        } catch (IllegalStateException e) {
+            logger.error("启动任务失败,JobScheduler:{}", jobScheduler.toString(), e);
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -138,7 +304,7 @@ public class JobManager {
         }
 
         // 如果初始化成功,放入容器管理
-        jobSchedulerMaps.put(jobInfo.getId(), jobScheduler);
+        jobSchedulers.put(jobInfo.getId(), jobScheduler);
         // 添加监听器
         jobScheduler.addListener(new ScheduleListener(jobInfo), listenerService);
         return jobScheduler;
@@ -165,16 +331,14 @@ public class JobManager {
      */
     public void startSchedule(long id) {
         Preconditions.checkArgument(id > 0, "id illegal.");
-        JobScheduler jobScheduler = jobSchedulerMaps.get(id);
+        JobScheduler jobScheduler = jobSchedulers.get(id);
         if (jobScheduler != null && jobScheduler.isRunning()) {
             logger.info("任务已经在执行,id:{}", id);
             return;
         }
 
         // 移除JobScheduler
-        if (jobSchedulerMaps.containsKey(id)) {
-            jobSchedulerMaps.remove(id);
-        }
+        jobSchedulers.remove(id);
         // 从数据库中获取并启动
         getAndStartNewJobScheduler(id);
     }
@@ -185,7 +349,7 @@ public class JobManager {
     public void restartSchedule(long id) {
         Preconditions.checkArgument(id > 0, "id illegal.");
         logger.info("线程:{},重启任务,id:{}", Thread.currentThread().getName(), id);
-        JobScheduler jobScheduler = jobSchedulerMaps.get(id);
+        JobScheduler jobScheduler = jobSchedulers.get(id);
         if (null == jobScheduler) {
             logger.warn("该任务未启动,启动任务,id:{}", id);
             getAndStartNewJobScheduler(id);
@@ -196,7 +360,7 @@ public class JobManager {
         // 关闭任务
         try {
             jobScheduler.stopAsync().awaitTerminated();
-            jobSchedulerMaps.remove(id);
+            jobSchedulers.remove(id);
         } catch (IllegalStateException e) {
             logger.error("重启定时任务失败,id:{},JobScheduler:{}", id, jobScheduler, e);
         }
@@ -211,17 +375,21 @@ public class JobManager {
         // 获取定时任务信息
         JobInfo taskScheduleById;
         try {
-            taskScheduleById = jobInfoService.getJobInfoById(id);
+            taskScheduleById = jobInfoCache.get(id);
         } catch (RuntimeException e) {
             logger.error("从数据库获取定时任务失败,id:{}", id, e);
             return;
         }
+        if (null == taskScheduleById) {
+            logger.warn("任务不存在,id:{}", id);
+            return;
+        }
         // 如果,设置为不启用,则不启动任务
         if (taskScheduleById.getInitiateMode() == DISABLE) {
             logger.info("该任务为未启用状态,不启动改任务:{}", taskScheduleById.toString());
             return;
         }
-        // 初始化任务,并加入到Map容器中
+        // 初始化任务,并加入到容器中
         JobScheduler restartJobScheduler = initJobScheduler(taskScheduleById);
         if (null == restartJobScheduler) {
             logger.error("初始化任务({})调度器失败.", taskScheduleById.getJobName());
@@ -243,7 +411,7 @@ public class JobManager {
      */
     public boolean stopSchedule(long id) {
         Preconditions.checkArgument(id > 0, "id illegal.");
-        JobScheduler jobScheduler = jobSchedulerMaps.get(id);
+        JobScheduler jobScheduler = jobSchedulers.get(id);
         // 从map中没有获取到任务,说明该任务没有执行
         if (null == jobScheduler) {
             logger.info("任务不处于执行状态,id:{}", id);
@@ -258,22 +426,87 @@ public class JobManager {
         }
         logger.info("任务关闭成功,State:{}", jobScheduler.state());
         // 更新任务状态为未执行
-        jobInfoService.modifyExecuteStatus(id, UN_EXECUTE);
-        jobSchedulerMaps.remove(id);
+        jobStatusWriter.modifyExecuteStatus(id, ExecuteStatus.UN_EXECUTE);
+        jobSchedulers.remove(id);
         // tip:更新数据库状态在JobScheduler中的shutDown中执行
         return true;
     }
 
+    /**
+     * 立即执行一次任务,用于父任务执行成功后触发子任务.子任务不按crontab调度,只在被触发时执行
+     *
+     * @param jobInfo 子任务
+     * @param runId   工作流执行id
+     * @return 本机是否执行了该任务
+     */
+    public boolean triggerSchedule(JobInfo jobInfo, String runId) {
+        Preconditions.checkNotNull(jobInfo, "jobInfo is null.");
+        if (jobInfo.getInitiateMode() == DISABLE) {
+            logger.info("任务未启用,不触发,id:{}", jobInfo.getId());
+            return false;
+        }
+        if (!checkHostName(jobInfo.getExecuteHost())
+                && !StringUtils.equals(jobInfo.getFailExecuteHost(), Utils.getHostName())) {
+            logger.info("任务不属于本机执行,不触发,id:{}", jobInfo.getId());
+            return false;
+        }
+        JobScheduler jobScheduler = getOrStartSubJobScheduler(jobInfo);
+        if (null == jobScheduler) {
+            return false;
+        }
+        logger.info("触发任务执行,id:{},runId:{}", jobInfo.getId(), runId);
+        return jobScheduler.trigger(runId);
+    }
+
+    /**
+     * 获取子任务的调度器,不存在时以只触发的方式启动一个,不放入时间轮.
+     * 调度器启动后才接受触发,stop/kill/shutdown时和定时任务一样等待正在执行的触发结束
+     */
+    private JobScheduler getOrStartSubJobScheduler(JobInfo jobInfo) {
+        synchronized (subJobLock) {
+            JobScheduler jobScheduler = jobSchedulers.get(jobInfo.getId());
+            if (null != jobScheduler) {
+                jobScheduler.setSubJob(jobInfo.getSubJob());
+                return jobScheduler;
+            }
+            jobScheduler = initJobScheduler(jobInfo);
+            if (null == jobScheduler) {
+                return null;
+            }
+            jobScheduler.triggerOnly();
+            try {
+                jobScheduler.startAsync().awaitRunning();
+            } catch (IllegalStateException e) {
+                logger.error("启动子任务失败,JobScheduler:{}", jobScheduler.toString(), e);
+                return null;
+            }
+            return jobScheduler;
+        }
+    }
+
+    /**
+     * 依赖关系修改后,更新本机运行中任务的子任务列表
+     */
+    public void refreshSubJob(long id, String subJob) {
+        JobScheduler jobScheduler = jobSchedulers.get(id);
+        if (null != jobScheduler) {
+            logger.info("refresh sub job,id:{},subJob:{}", id, subJob);
+            jobScheduler.setSubJob(subJob);
+        }
+    }
+
     public void killSchedule(long id) {
         Preconditions.checkArgument(id > 0, "id illegal.");
-        JobScheduler jobScheduler = jobSchedulerMaps.get(id);
+        // 任务已删除或不再由本机执行,清除指标
+        jobMetrics.remove(id);
+        JobScheduler jobScheduler = jobSchedulers.get(id);
         // 从map中没有获取到任务,说明该任务没有执行
         if (null == jobScheduler) {
             logger.info("任务不处于执行状态,id:{}", id);
             return;
         }
 
-        jobSchedulerMaps.remove(id);
+        jobSchedulers.remove(id);
         try {
             jobScheduler.stopAsync().awaitTerminated();
         } catch (IllegalStateException e) {
@@ -283,35 +516,93 @@ public class JobManager {
     }
 
     public void stopAllScheduler() {
-        for (JobScheduler jobScheduler : jobSchedulerMaps.values()) {
+        List<JobScheduler> schedulers = Lists.newArrayList(jobSchedulers);
+        drainSchedulers(schedulers);
+        for (JobScheduler jobScheduler : schedulers) {
+            jobSchedulers.remove(jobScheduler.getId(), jobScheduler);
+        }
+        jobStatusWriter.flush();
+    }
+
+    /**
+     * 当容器关闭时,不再接受新的触发,并行等待正在执行的任务结束,最多等待job.shutdown.timeout,然后将状态改为"未执行"
+     *
+     * @return 等待超时时仍在执行的任务id
+     */
+    public List<Long> shutdown() {
+        // 停止调度器之前写快照,记录每个任务的下一次计划触发时间
+        jobSnapshot.shutdown();
+        try {
+            int count = jobSnapshot.save(jobSchedulers);
+            logger.info("job snapshot saved,jobs:{}", count);
+        } catch (IOException e) {
+            logger.error("关闭时写任务快照失败", e);
+        }
+        jobDispatcher.drain();
+        List<Long> runningIds = drainSchedulers(Lists.newArrayList(jobSchedulers));
+        // 写入所有任务最后一次执行的状态和执行记录
+        jobStatusWriter.flush();
+        jobExecutionWriter.flush();
+        return runningIds;
+    }
+
+    /**
+     * 同时通知所有调度器停止,在共同的截止时间内等待结束,最终状态合并到JobStatusWriter中一次写库
+     *
+     * @return 截止时间到达时仍在执行的任务id
+     */
+    private List<Long> drainSchedulers(List<JobScheduler> schedulers) {
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(NumberUtils.toLong(shutdownTimeout, 30));
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (JobScheduler jobScheduler : schedulers) {
+            jobScheduler.stopAsync();
+        }
+        List<Long> runningIds = Lists.newArrayList();
+        List<String> runningNames = Lists.newArrayList();
+        for (JobScheduler jobScheduler : schedulers) {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
             try {
-                jobScheduler.stopAsync().awaitTerminated();
-                jobSchedulerMaps.remove(jobScheduler.getId());
-                jobInfoService.modifyExecuteStatus(jobScheduler.getId(), UN_EXECUTE);
+                jobScheduler.awaitTerminated(remaining, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                runningIds.add(jobScheduler.getId());
+                runningNames.add(jobScheduler.toString());
+                continue;
             } catch (IllegalStateException e) {
                 logger.error("定时任务关闭失败,JobScheduler:{}", jobScheduler.toString());
             }
+            // 在最后一次执行的状态之后提交,保证写库的是未执行
+            jobStatusWriter.modifyExecuteStatus(jobScheduler.getId(), ExecuteStatus.UN_EXECUTE);
+        }
+        if (runningIds.isEmpty()) {
+            logger.info("所有调度器已停止,任务数:{}", schedulers.size());
+        } else {
+            logger.warn("等待{}ms后仍有任务在执行,任务数:{},任务:{}", timeoutMillis, runningIds.size(), runningNames);
         }
+        return runningIds;
+    }
+
+    JobScheduler getJobScheduler(long id) {
+        return jobSchedulers.get(id);
     }
 
     /**
-     * 当容器关闭时,将状态改为"未执行"
+     * 取出上次调用之后执行失败的调度器对应的任务id
      */
-    public void shutdown() {
-        for (JobScheduler jobScheduler : jobSchedulerMaps.values()) {
-            try {
-                jobInfoService.modifyExecuteStatus(jobScheduler.getId(), UN_EXECUTE);
-            } catch (RuntimeException e) {
-                logger.error("更新任务状态失败,JobScheduler:{}", jobScheduler.toString());
-            }
-            jobScheduler.stopAsync().awaitTerminated();
-            logger.info("{} stop,Job:{}", jobScheduler.serviceName(), jobScheduler.toString());
+    public Set<Long> drainFailedJobIds() {
+        Set<Long> ids = Sets.newHashSet();
+        Iterator<Long> iterator = failedJobIds.iterator();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next());
+            iterator.remove();
         }
+        return ids;
     }
 
-    public Map<Long, JobScheduler> getJobSchedulerMaps() {
-        ImmutableMap<Long, JobScheduler> immutableJobMap = ImmutableMap.copyOf(jobSchedulerMaps);
-        return immutableJobMap;
+    /**
+     * 正在运行的调度器,只读,不复制,遍历时可能看到并发的修改
+     */
+    public JobSchedulerRegistry getJobSchedulers() {
+        return jobSchedulers;
     }
 
     public boolean getIsUsedZKListener() {
@@ -334,7 +625,7 @@ public class JobManager {
      */
     private static class ScheduleListener extends Service.Listener {
         private JobInfo jobInfo;
-        JobInfoService jobInfoService;
+        JobStatusWriter jobStatusWriter;
 
         ScheduleListener(JobInfo jobInfo) {
             super();
@@ -343,26 +634,28 @@ public class JobManager {
         }
 
         private void init() {
-            jobInfoService = SpringContextHolder.getBean(JobInfoService.class);
+            jobStatusWriter = SpringContextHolder.getBean(JobStatusWriter.class);
         }
 
         /**
-         * 更新executeStatus=0,执行失败
+         * 更新executeStatus为FAILED
          */
         @Override
         public void failed(Service.State from, Throwable failure) {
             logger.info("Listener: {}任务执行失败 State:{},exception:{}", jobInfo.getJobName(), from.toString(),
                     failure);
-            jobInfoService.modifyExecuteStatus(jobInfo.getId(), FAILED_EXECUTE);
+            jobStatusWriter.modifyExecuteStatus(jobInfo.getId(), ExecuteStatus.FAILED);
+            // 由JobWatcher下一个周期重新检查
+            failedJobIds.add(jobInfo.getId());
         }
 
         /**
-         * 更新executeStatus=1,运行中
+         * 更新executeStatus为RUNNING
          */
         @Override
         public void running() {
             logger.info("Listener:{} 开始运行,监听线程:{}", jobInfo.getJobName(), Thread.currentThread().getName());
-            jobInfoService.modifyExecuteStatus(jobInfo.getId(), IN_EXECUTE);
+            jobStatusWriter.modifyExecuteStatus(jobInfo.getId(), ExecuteStatus.RUNNING);
         }
 
         @Override
@@ -371,18 +664,18 @@ public class JobManager {
         }
 
         /**
-         * 执行状态executeStatus=-1(未执行)
+         * 执行状态executeStatus为UN_EXECUTE
          *
          * @param from 只可能有两种状态:RUNNING,STARTING
          */
         @Override
         public void stopping(Service.State from) {
             logger.info("Listener: {}开始停止,线程:{}", jobInfo.getJobName(), Thread.currentThread().getName());
-            jobInfoService.modifyExecuteStatus(jobInfo.getId(), UN_EXECUTE);
+            jobStatusWriter.modifyExecuteStatus(jobInfo.getId(), ExecuteStatus.UN_EXECUTE);
         }
 
         /**
-         * 执行状态executeStatus=2(成功)
+         * 任务终止
          *
          * @param from 转换成TERMINATED状态,之前的状态
          */
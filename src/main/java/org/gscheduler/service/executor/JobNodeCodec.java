@@ -0,0 +1,223 @@
+package org.gscheduler.service.executor;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.base.Charsets;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gscheduler.entity.JobInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * '/monitor/task/service_update'节点数据的编解码.
+ * 二进制格式:magic(1B),version(1B),id(varint),initiateMode(1B),operator(1B),
+ * 然后依次为configParameter,crontab,executeHost,failExecuteHost,subJob,每个字符串为varint(长度+1)+UTF-8,0表示null.
+ * 解码时首字节不是magic的按旧版json解析,兼容升级前写入的节点.
+ * 旧版本无法解析二进制,默认按json编码;所有机器都升级到能解码二进制的版本后,再配置job.node.codec=binary.
+ */
+@Component
+public class JobNodeCodec {
+    public static final String CODEC_BINARY = "binary";
+    public static final String CODEC_JSON = "json";
+    // json以'{'开头,不会与magic冲突
+    private static final byte MAGIC = (byte) 0xA7;
+    private static final byte VERSION = 1;
+    // 编码值即下标,只能在末尾追加
+    private static final JobManager.JobOperator[] OPERATORS = {JobManager.JobOperator.NONE,
+            JobManager.JobOperator.STOP, JobManager.JobOperator.START, JobManager.JobOperator.RESTART,
+            JobManager.JobOperator.STOP_OR_START, JobManager.JobOperator.KILL};
+
+    @Value("${job.node.codec}")
+    String nodeCodec;
+
+    /**
+     * 按job.node.codec编码,只有配置为binary时使用二进制,其他情况使用json
+     */
+    public byte[] encode(JobInfo jobInfo, JobManager.JobOperator operator) {
+        if (StringUtils.equalsIgnoreCase(CODEC_BINARY, StringUtils.trim(nodeCodec))) {
+            return encodeBinary(jobInfo, operator);
+        }
+        return JobListener.createJobJson(jobInfo, operator).getBytes();
+    }
+
+    public static byte[] encodeBinary(JobInfo jobInfo, JobManager.JobOperator operator) {
+        byte[][] strings = {encodeString(jobInfo.getConfigParameter()), encodeString(jobInfo.getCrontab()),
+                encodeString(jobInfo.getExecuteHost()), encodeString(jobInfo.getFailExecuteHost()),
+                encodeString(jobInfo.getSubJob())};
+        // magic+version+id+initiateMode+operator
+        int size = 2 + 10 + 2;
+        for (byte[] bytes : strings) {
+            size += 5 + (null == bytes ? 0 : bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).put(VERSION);
+        putVarLong(buffer, jobInfo.getId());
+        buffer.put((byte) jobInfo.getInitiateMode());
+        buffer.put((byte) operatorCode(operator));
+        for (byte[] bytes : strings) {
+            if (null == bytes) {
+                putVarLong(buffer, 0);
+            } else {
+                putVarLong(buffer, bytes.length + 1);
+                buffer.put(bytes);
+            }
+        }
+        byte[] result = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * 解码节点数据,兼容json
+     *
+     * @return 数据为空返回null
+     * @throws IllegalArgumentException 数据格式错误或版本不支持
+     */
+    public static JobNode decode(byte[] data) {
+        if (null == data || data.length == 0) {
+            return null;
+        }
+        if (data[0] != MAGIC) {
+            return decodeJson(new String(data));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get();
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported job node version:" + version);
+        }
+        JobNode node = new JobNode();
+        node.id = getVarLong(buffer);
+        node.initiateMode = buffer.get();
+        int code = buffer.get();
+        if (code < 0 || code >= OPERATORS.length) {
+            throw new IllegalArgumentException("unknown job node operator:" + code);
+        }
+        node.operator = OPERATORS[code];
+        node.configParameter = getString(buffer);
+        node.crontab = getString(buffer);
+        node.executeHost = getString(buffer);
+        node.failExecuteHost = getString(buffer);
+        node.subJob = getString(buffer);
+        return node;
+    }
+
+    private static JobNode decodeJson(String json) {
+        if (StringUtils.isBlank(json)) {
+            return null;
+        }
+        JSONObject jsonObject = JSON.parseObject(json);
+        JobNode node = new JobNode();
+        node.id = NumberUtils.toLong(jsonObject.getString("id"), 0);
+        node.initiateMode = NumberUtils.toShort(jsonObject.getString("initiateMode"));
+        node.operator = JobManager.JobOperator.valueOf(jsonObject.getString("operator"));
+        node.configParameter = jsonObject.getString("configParameter");
+        node.crontab = jsonObject.getString("crontab");
+        node.executeHost = jsonObject.getString("executeHost");
+        node.failExecuteHost = jsonObject.getString("failExecuteHost");
+        node.subJob = jsonObject.getString("subJob");
+        return node;
+    }
+
+    private static int operatorCode(JobManager.JobOperator operator) {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            if (OPERATORS[i] == operator) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown job operator:" + operator);
+    }
+
+    private static byte[] encodeString(String value) {
+        return null == value ? null : value.getBytes(Charsets.UTF_8);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = (int) getVarLong(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, Charsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /**
+     * 解码后的节点数据,字段含义同createJobJson
+     */
+    public static class JobNode {
+        private long id;
+        private short initiateMode;
+        private JobManager.JobOperator operator;
+        private String configParameter;
+        private String crontab;
+        private String executeHost;
+        private String failExecuteHost;
+        private String subJob;
+
+        public long getId() {
+            return id;
+        }
+
+        public short getInitiateMode() {
+            return initiateMode;
+        }
+
+        public JobManager.JobOperator getOperator() {
+            return operator;
+        }
+
+        public String getConfigParameter() {
+            return configParameter;
+        }
+
+        public String getCrontab() {
+            return crontab;
+        }
+
+        public String getExecuteHost() {
+            return executeHost;
+        }
+
+        public String getFailExecuteHost() {
+            return failExecuteHost;
+        }
+
+        /**
+         * @return 节点中没有子任务字段时为null
+         */
+        public String getSubJob() {
+            return subJob;
+        }
+
+        @Override
+        public String toString() {
+            return "JobNode{id=" + id + ",initiateMode=" + initiateMode + ",operator=" + operator
+                    + ",crontab=" + crontab + ",executeHost=" + executeHost + ",failExecuteHost=" + failExecuteHost
+                    + ",subJob=" + subJob + "}";
+        }
+    }
+}
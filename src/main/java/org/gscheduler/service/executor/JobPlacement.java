@@ -0,0 +1,37 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Collection;
+
+/**
+ * 任务在多台机器间的分配.
+ * rendezvous hash(最高随机权重):每台机器对任务计算hash(jobId,host),取最大者.
+ * 所有机器按相同的候选列表独立计算,结果一致且无需协调;一台机器下线时只有它的任务被重新分配,且均匀分散到其余机器.
+ */
+public final class JobPlacement {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private JobPlacement() {
+    }
+
+    /**
+     * @param hosts 候选机器
+     * @return 任务的首选机器, 候选为空返回null
+     */
+    public static String rendezvous(long jobId, Collection<String> hosts) {
+        String selected = null;
+        long maxWeight = Long.MIN_VALUE;
+        for (String host : hosts) {
+            long weight = HASH.newHasher().putLong(jobId).putString(host, Charsets.UTF_8).hash().asLong();
+            // 权重相同时按主机名决定,与遍历顺序无关
+            if (null == selected || weight > maxWeight || (weight == maxWeight && host.compareTo(selected) > 0)) {
+                selected = host;
+                maxWeight = weight;
+            }
+        }
+        return selected;
+    }
+}
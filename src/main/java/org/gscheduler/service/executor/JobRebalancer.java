@@ -0,0 +1,188 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.gscheduler.commons.ZkHelper;
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.task.JobInfoService;
+import org.gscheduler.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自动分配任务的执行主机,job.placement.mode=auto时启用,只在zk监听模式下生效.
+ * 每个任务在host_list中存活(注册在'/monitor/task/service_available')的机器里按rendezvous hash选择执行主机,
+ * 机器加入或离开时只有hash结果变化的任务迁移,迁移通过更新execute_host并广播STOP_OR_START完成.
+ * 只有选举出的leader计算分配;机器上下线和新增任务时延迟job.placement.rebalance.delay后执行,期间的多次变化合并为一次.
+ */
+@Component
+public class JobRebalancer {
+    private static final Logger logger = LoggerFactory.getLogger(JobRebalancer.class);
+    public static final String PLACEMENT_AUTO = "auto";
+    //分配leader选举路径
+    private static final String PLACEMENT_LEADER_PATH = "/monitor/task/lock/placement_leader";
+
+    @Resource
+    JobInfoService jobInfoService;
+
+    @Value("${job.placement.mode}")
+    String placementMode;
+
+    @Value("${job.placement.rebalance.delay}")
+    String rebalanceDelay;
+
+    // 合并变化的延迟,单位s
+    private long delay = 30;
+
+    private ZkHelper.ZKClient zkClient;
+    private String availablePath;
+    private volatile LeaderLatch leaderLatch;
+    private ScheduledExecutorService rebalanceService;
+    private ScheduledFuture<?> pendingRebalance;
+
+    public boolean isEnabled() {
+        return StringUtils.equalsIgnoreCase(PLACEMENT_AUTO, StringUtils.trim(placementMode));
+    }
+
+    /**
+     * 参与leader选举,成为leader后执行一次分配
+     *
+     * @param availablePath 存活机器的注册路径
+     */
+    public synchronized void init(ZkHelper.ZKClient zkClient, String availablePath) {
+        if (!isEnabled() || null != leaderLatch) {
+            return;
+        }
+        long seconds = NumberUtils.toLong(rebalanceDelay, -1);
+        if (seconds >= 0) {
+            delay = seconds;
+        }
+        logger.info("job auto placement init,rebalance delay:{}s", delay);
+        this.zkClient = zkClient;
+        this.availablePath = availablePath;
+        rebalanceService = Executors.newSingleThreadScheduledExecutor(new JobManager.NamedThreadFactory("job-rebalance"));
+        leaderLatch = new LeaderLatch(zkClient.getZkCuratorClient(), PLACEMENT_LEADER_PATH, Utils.getHostName());
+        leaderLatch.addListener(new LeaderLatchListener() {
+            @Override
+            public void isLeader() {
+                logger.info("take placement leadership.");
+                requestRebalance();
+            }
+
+            @Override
+            public void notLeader() {
+                logger.info("lose placement leadership.");
+            }
+        });
+        try {
+            leaderLatch.start();
+        } catch (Exception e) {
+            logger.error("start placement leader latch error.", e);
+        }
+    }
+
+    public synchronized void close() {
+        if (null == leaderLatch) {
+            return;
+        }
+        try {
+            leaderLatch.close();
+        } catch (Exception e) {
+            logger.error("close placement leader latch error.", e);
+        }
+        leaderLatch = null;
+        rebalanceService.shutdownNow();
+        rebalanceService = null;
+        pendingRebalance = null;
+    }
+
+    /**
+     * 机器或任务变化时调用,非leader忽略;延迟执行,已有等待中的分配时重新计时
+     */
+    public synchronized void requestRebalance() {
+        if (null == leaderLatch || !leaderLatch.hasLeadership()) {
+            return;
+        }
+        if (null != pendingRebalance) {
+            pendingRebalance.cancel(false);
+        }
+        pendingRebalance = rebalanceService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebalance();
+                } catch (Exception e) {
+                    logger.error("rebalance job placement error.", e);
+                }
+            }
+        }, delay, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 按当前存活机器分配所有任务
+     *
+     * @return 迁移的任务数
+     */
+    int rebalance() {
+        LeaderLatch latch = leaderLatch;
+        if (null == latch || !latch.hasLeadership()) {
+            return 0;
+        }
+        List<String> liveHosts = zkClient.getChildren(availablePath);
+        if (liveHosts.isEmpty()) {
+            logger.warn("no live host,ignore rebalance.");
+            return 0;
+        }
+        List<JobInfo> jobInfos = jobInfoService.getAllJobInfo();
+        Map<Long, String> moves = plan(jobInfos, liveHosts);
+        for (JobInfo jobInfo : jobInfos) {
+            String target = moves.get(jobInfo.getId());
+            if (null != target) {
+                logger.info("move job,id:{},from:{},to:{}", jobInfo.getId(), jobInfo.getExecuteHost(), target);
+                jobInfoService.moveJob(jobInfo, target);
+            }
+        }
+        logger.info("rebalance job placement,live hosts:{},jobs:{},moved:{}", liveHosts.size(), jobInfos.size(), moves.size());
+        return moves.size();
+    }
+
+    /**
+     * 计算需要迁移的任务,host_list中没有存活机器的任务不迁移
+     *
+     * @return key:任务id,value:新的执行主机
+     */
+    static Map<Long, String> plan(List<JobInfo> jobInfos, Collection<String> liveHosts) {
+        Set<String> live = Sets.newHashSet(liveHosts);
+        Map<Long, String> moves = Maps.newHashMap();
+        for (JobInfo jobInfo : jobInfos) {
+            List<String> candidates = new ArrayList<>();
+            for (String host : Utils.splitHostList(jobInfo.getHostList())) {
+                if (live.contains(host)) {
+                    candidates.add(host);
+                }
+            }
+            String target = JobPlacement.rendezvous(jobInfo.getId(), candidates);
+            if (null != target && !StringUtils.equals(target, jobInfo.getExecuteHost())) {
+                moves.put(jobInfo.getId(), target);
+            }
+        }
+        return moves;
+    }
+}
@@ -1,24 +1,28 @@
 package org.gscheduler.service.executor;
 
-import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.gscheduler.commons.SpringContextHolder;
+import org.gscheduler.entity.ExecuteStatus;
 import org.gscheduler.entity.JobInfo;
-import org.gscheduler.exception.SqlOperationException;
+import org.gscheduler.service.metrics.JobMetrics;
 import org.gscheduler.service.task.JobInfoService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.MoreObjects;
-import com.google.common.base.Stopwatch;
-import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.AbstractService;
 
 /**
- * 作业调度器,定时任务的执行类,真正执行任务是一个 Executors.newSingleThreadScheduledExecutor线程.
+ * 作业调度器,定时任务的执行类.不再独占线程,由JobDispatcher的时间轮触发,在共享的执行线程池中执行任务.
+ * 生命周期沿用guava Service的状态:startAsync启动调度,stopAsync等待正在执行的任务结束后停止.
  */
-class JobScheduler extends AbstractScheduledService {
+class JobScheduler extends AbstractService {
     private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
     public static AtomicInteger threadCount = new AtomicInteger(0);
     private long id;
@@ -34,6 +38,42 @@ class JobScheduler extends AbstractScheduledService {
     // 操作定时任务信息的类
     private JobInfoService jobInfoService;
 
+    // 共享的时间轮和执行线程池
+    private JobDispatcher jobDispatcher;
+
+    // 执行状态异步批量写库
+    private JobStatusWriter jobStatusWriter;
+
+    // 依赖任务工作流
+    private JobWorkflowEngine jobWorkflowEngine;
+
+    // 执行记录异步批量写库
+    private JobExecutionWriter jobExecutionWriter;
+
+    // 执行时长,触发延迟和成功失败次数
+    private JobMetrics.JobStats jobStats;
+    private JobMetrics.StartupStats startupStats;
+
+    // 子任务id,逗号分隔,依赖关系修改时更新
+    private volatile String subJob;
+
+    // 保证同一个任务不会并发执行,stop时等待正在执行的任务
+    private final ReentrantLock runLock = new ReentrantLock();
+    // 保证只通知一次stop
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+    // 当前等待触发的时间轮任务
+    private volatile JobTimingWheel.Timeout timeout;
+    // 上一次计划触发时间,只在runLock内或启动时修改,快照线程会读取
+    private volatile long lastFireTime;
+    // 按快照恢复时的计划触发时间,0表示不恢复
+    private long resumeFireTime;
+    // 最后一次执行结果,写入快照
+    private volatile ExecuteStatus lastStatus = ExecuteStatus.UN_EXECUTE;
+    // 启动时是否更新initiate_mode,JobManager启动阶段只启动已启用的任务,为false
+    private boolean updateInitiateMode = true;
+    // 只由父任务触发执行,启动时不放入时间轮
+    private boolean triggerOnly = false;
+
     /**
      * 用于初始化与任务调度相关的事情 注入类名,使用 spring获取类的实例,类名应该格式为变量命名格式(首字母小写,eg:arrivedMonitor)
      *
@@ -45,11 +85,19 @@ class JobScheduler extends AbstractScheduledService {
 
         this.jobInfo = jobInfo;
         this.id = jobInfo.getId();
+        this.subJob = jobInfo.getSubJob();
         logger.info("任务类:{},线程:{}", jobInfo.getJobClass(), Thread.currentThread().getName());
         try {
             jobTrigger = new JobTrigger(jobInfo.getCrontab());
             jobProcess = SpringContextHolder.getBean(jobInfo.getJobClass().trim());
             jobInfoService = SpringContextHolder.getBean(JobInfoService.class);
+            jobDispatcher = SpringContextHolder.getBean(JobDispatcher.class);
+            jobStatusWriter = SpringContextHolder.getBean(JobStatusWriter.class);
+            jobWorkflowEngine = SpringContextHolder.getBean(JobWorkflowEngine.class);
+            jobExecutionWriter = SpringContextHolder.getBean(JobExecutionWriter.class);
+            JobMetrics jobMetrics = SpringContextHolder.getBean(JobMetrics.class);
+            jobStats = jobMetrics.getJobStats(id, jobInfo.getJobName());
+            startupStats = jobMetrics.getStartupStats();
         } catch (Exception e) {
             logger.error("spring获取bean类实例失败", e);
             logger.error("丢弃该任务,类名:{}", jobInfo.getJobClass());
@@ -81,11 +129,161 @@ class JobScheduler extends AbstractScheduledService {
         return true;
     }
 
-    @Override
-    protected String serviceName() {
+    /**
+     * 任务已经是启用状态,启动时不再逐个写库.需要在startAsync之前调用
+     */
+    void skipInitiateModeUpdate() {
+        this.updateInitiateMode = false;
+    }
+
+    /**
+     * 子任务只在被父任务触发时执行,不按crontab调度,启动时也不更新initiate_mode.需要在startAsync之前调用
+     */
+    void triggerOnly() {
+        this.triggerOnly = true;
+        this.updateInitiateMode = false;
+    }
+
+    /**
+     * 按快照恢复触发相位和最后一次执行结果.需要在startAsync之前调用
+     */
+    void resume(JobSnapshot.Entry entry) {
+        this.resumeFireTime = entry.getNextFireTime();
+        this.lastStatus = entry.getLastStatus();
+    }
+
+    String serviceName() {
         return jobInfo.getJobClass() + "thread-" + threadCount.incrementAndGet();
     }
 
+    @Override
+    protected void doStart() {
+        try {
+            startUp();
+        } catch (Throwable e) {
+            notifyFailed(e);
+            return;
+        }
+        notifyStarted();
+        if (triggerOnly) {
+            return;
+        }
+        if (resumeFireTime > 0) {
+            scheduleAt(jobTrigger.getResumeFireTime(resumeFireTime, System.currentTimeMillis()));
+        } else {
+            scheduleNext(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 取消下一次触发,如果任务正在执行,由执行线程在结束后通知stop
+     */
+    @Override
+    protected void doStop() {
+        cancelTimeout();
+        if (runLock.tryLock()) {
+            runLock.unlock();
+            finishStop();
+        }
+    }
+
+    private void finishStop() {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+        cancelTimeout();
+        try {
+            shutDown();
+        } catch (Throwable e) {
+            notifyFailed(e);
+            return;
+        }
+        notifyStopped();
+    }
+
+    private void cancelTimeout() {
+        JobTimingWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    // 计算下一次触发时间并放入时间轮
+    private void scheduleNext(long now) {
+        scheduleAt(jobTrigger.getNextFireTime(lastFireTime, now));
+    }
+
+    private void scheduleAt(long fireTime) {
+        lastFireTime = fireTime;
+        timeout = jobDispatcher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fire();
+            }
+        }, lastFireTime);
+    }
+
+    // 时间轮到期后在执行线程池中执行
+    private void fire() {
+        runLock.lock();
+        try {
+            // 已停止时不能直接返回,doStop可能因为拿不到runLock等待这里通知stop
+            if (isRunning()) {
+                // 相对计划触发时间的延迟,包含时间轮tick误差和等待执行线程的时间
+                long now = System.currentTimeMillis();
+                jobStats.recordTriggerLag(now - lastFireTime);
+                startupStats.recordFire(now);
+                runOneIteration(null);
+                if (isRunning()) {
+                    scheduleNext(System.currentTimeMillis());
+                }
+            }
+        } catch (Throwable e) {
+            logger.error("调度任务失败,id:{}", id, e);
+            notifyFailed(e);
+        } finally {
+            runLock.unlock();
+        }
+        if (state() == State.STOPPING) {
+            finishStop();
+        }
+    }
+
+    /**
+     * 立即执行一次,用于依赖任务被父任务触发.与定时触发共用runLock,同一任务不会并发执行;
+     * 调度器停止后不再接受触发,停止前已提交但未开始的触发被丢弃
+     *
+     * @param runId 工作流执行id
+     * @return 是否提交了执行
+     */
+    boolean trigger(final String runId) {
+        if (!isRunning()) {
+            logger.info("任务未运行,不触发,id:{},State:{}", id, state());
+            return false;
+        }
+        jobDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                runLock.lock();
+                try {
+                    if (isRunning()) {
+                        runOneIteration(runId);
+                    } else {
+                        logger.info("任务已停止,丢弃触发,id:{},runId:{}", id, runId);
+                    }
+                } catch (Throwable e) {
+                    logger.error("触发任务失败,id:{}", id, e);
+                } finally {
+                    runLock.unlock();
+                }
+                if (state() == State.STOPPING) {
+                    finishStop();
+                }
+            }
+        });
+        return true;
+    }
+
     /**
      * 定时任务停止时,调用该方法,更新数据库initial_mode=0.
      *
@@ -93,7 +291,6 @@ class JobScheduler extends AbstractScheduledService {
      *
      * @throws Exception
      */
-    @Override
     protected void shutDown() throws Exception {
         logger.info("任务关闭,更新数据库");
     }
@@ -103,56 +300,92 @@ class JobScheduler extends AbstractScheduledService {
      *
      * @throws Exception
      */
-    @Override
     protected void startUp() throws Exception {
         logger.info("调度器线程:{},开始执行", Thread.currentThread().getName());
-        jobInfoService.modifyInitiateMode(id, JobManager.AVAILABLE);
+        if (updateInitiateMode) {
+            jobInfoService.modifyInitiateMode(id, JobManager.AVAILABLE);
+        }
     }
 
     /**
-     * 如果该方法抛出异常,则定时任务会停止. 该方法会一直循环调度 更新每一次执行时长,上一次执行时间,下一次执行时间
+     * 如果该方法抛出异常,则定时任务会停止. 该方法会一直循环调度 更新每一次执行时长,上一次执行时间,下一次执行时间.
+     * 状态交给JobStatusWriter合并后批量写库,不在执行线程中同步等待数据库
      *
+     * @param runId 工作流执行id,定时触发时为null,有子任务的任务以本次执行作为工作流的开始
      * @throws Exception
      */
-    @Override
-    protected void runOneIteration() throws Exception {
+    protected void runOneIteration(String runId) throws Exception {
         logger.info("开始执行任务,执行任务线程:{}", Thread.currentThread().getName());
+        boolean isWorkflow = runId != null || StringUtils.isNotBlank(subJob);
+        if (isWorkflow && runId == null) {
+            runId = jobInfo.getJobName() + "@" + System.currentTimeMillis();
+        }
+        long startTime = System.currentTimeMillis();
         boolean succeed = false;
+        Throwable error = null;
         try {
-            jobInfoService.modifyExecuteTime(id, "running");
             // 下一次执行时间
-            jobInfoService.modifyLastAndNextExecuteTime(id, new Date(), jobTrigger.getNextExecutionDate());
-            Stopwatch stopwatch = Stopwatch.createStarted();
+            jobStatusWriter.markRunning(id, startTime, jobTrigger.getNextExecutionDate());
 
             jobProcess.execute();
 
-            stopwatch.stop();
-            String executeTime = stopwatch.toString();
-            logger.info("任务执行时长:{}", executeTime);
-            jobInfoService.modifyExecuteTime(id, executeTime);
-            // 执行到此处代表上面执行正常
             succeed = true;
         } catch (Throwable e) {
             logger.error("任务执行中发生异常.", e);
+            error = e;
         }
 
-        if (!succeed) {
-            try {
-                jobInfoService.modifyExecuteTime(id, "failed");
-            } catch (SqlOperationException e) {
-                logger.error("update execute time exception", e);
-            }
+        long endTime = System.currentTimeMillis();
+        logger.info("任务执行时长:{}ms", endTime - startTime);
+        lastStatus = succeed ? ExecuteStatus.SUCCESS : ExecuteStatus.FAILED;
+        jobStatusWriter.markFinished(id, lastStatus, endTime, endTime - startTime);
+        jobStats.recordExecution(startTime, endTime - startTime, succeed);
+        jobExecutionWriter.submit(id, startTime, endTime, error);
+        if (isWorkflow) {
+            jobWorkflowEngine.recordNode(runId, jobInfo, startTime, endTime, succeed);
+        }
+        if (succeed) {
+            notifySubJob(runId);
         }
     }
 
     /**
-     * 定时任务调度策略设置类 固定延迟
+     * 执行成功后立即通知sub_job中的子任务执行,各子任务并行执行
      */
-    @Override
-    protected Scheduler scheduler() {
-        logger.info("Scheduler 线程:{},cron:{}", Thread.currentThread().getName(), jobInfo.getCrontab());
-        return jobTrigger.getScheduler();
-        // return Scheduler.newFixedRateSchedule(delay, period, TimeUnit.MINUTES);
+    private void notifySubJob(String runId) {
+        String currentSubJob = subJob;
+        if (StringUtils.isBlank(currentSubJob)) {
+            return;
+        }
+        for (String subJobString : Splitter.on(',').omitEmptyStrings().trimResults().split(currentSubJob)) {
+            long subJobId = NumberUtils.toLong(subJobString, 0);
+            if (subJobId <= 0) {
+                continue;
+            }
+            try {
+                jobInfoService.notifySubJob(new JobTriggerEvent(subJobId, id, jobInfo.getJobName(), runId));
+            } catch (RuntimeException e) {
+                logger.error("通知子任务失败,id:{},subJob:{}", id, subJobId, e);
+            }
+        }
+    }
+
+    // 启动时的任务配置
+    JobInfo getJobInfo() {
+        return jobInfo;
+    }
+
+    // 下一次计划触发时间,未调度时为0
+    long getNextFireTime() {
+        return lastFireTime;
+    }
+
+    long getLastStartTime() {
+        return null == jobStats ? 0 : jobStats.getLastStartTime();
+    }
+
+    ExecuteStatus getLastStatus() {
+        return lastStatus;
     }
 
     public long getId() {
@@ -163,6 +396,10 @@ class JobScheduler extends AbstractScheduledService {
         this.id = id;
     }
 
+    void setSubJob(String subJob) {
+        this.subJob = subJob;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this.getClass()).addValue(jobInfo).add("State:", this.state())
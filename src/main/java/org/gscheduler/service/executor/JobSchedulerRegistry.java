@@ -0,0 +1,238 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 正在运行的JobScheduler的容器,key为long型任务id,避免装箱.
+ * 开放寻址(线性探测)的哈希表:读不加锁,写持有this锁;扩容或清理时新建表后整体替换,读线程继续使用旧表.
+ * 删除只清空value,key保留到下次重建,保证并发读的探测链不断.
+ * 遍历直接读取当前的表,不复制,弱一致:遍历期间的修改可能看到也可能看不到.
+ * 修改只在JobManager中进行,其他类只能读.
+ */
+public final class JobSchedulerRegistry implements Iterable<JobScheduler> {
+    // 任务id从1开始,0表示空槽
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 64;
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+    // 每次修改加一,用于判断两次读取之间容器是否变化
+    private volatile long version;
+    private volatile int size;
+    // 已占用的槽数,包括已删除的,只在持有锁时访问
+    private int used;
+
+    public JobScheduler get(long id) {
+        Table t = table;
+        int i = t.indexOf(id);
+        return i < 0 ? null : t.values.get(i);
+    }
+
+    public boolean contains(long id) {
+        return null != get(id);
+    }
+
+    /**
+     * @return 之前的调度器, 没有返回null
+     */
+    synchronized JobScheduler put(long id, JobScheduler jobScheduler) {
+        Preconditions.checkArgument(id > 0, "id illegal.");
+        Preconditions.checkNotNull(jobScheduler, "jobScheduler is null.");
+        Table t = table;
+        int i = t.indexOf(id);
+        if (i >= 0) {
+            JobScheduler previous = t.values.getAndSet(i, jobScheduler);
+            if (null == previous) {
+                size++;
+            }
+            version++;
+            return previous;
+        }
+        // 负载因子不超过0.5,保证探测链较短且一定有空槽
+        if ((used + 1) * 2 > t.capacity()) {
+            t = rebuild(size + 1);
+        }
+        int slot = t.emptySlotOf(id);
+        // 先写value再写key,读到key的线程一定能读到value
+        t.values.set(slot, jobScheduler);
+        t.keys.set(slot, id);
+        used++;
+        size++;
+        version++;
+        return null;
+    }
+
+    /**
+     * @return 被删除的调度器, 没有返回null
+     */
+    synchronized JobScheduler remove(long id) {
+        Table t = table;
+        int i = t.indexOf(id);
+        if (i < 0) {
+            return null;
+        }
+        JobScheduler previous = t.values.getAndSet(i, null);
+        if (null != previous) {
+            size--;
+            version++;
+            shrinkIfSparse();
+        }
+        return previous;
+    }
+
+    /**
+     * 只有当前的调度器是jobScheduler时才删除,避免删除已经被替换的新调度器
+     */
+    synchronized boolean remove(long id, JobScheduler jobScheduler) {
+        if (null == jobScheduler) {
+            return false;
+        }
+        Table t = table;
+        int i = t.indexOf(id);
+        if (i < 0 || !t.values.compareAndSet(i, jobScheduler, null)) {
+            return false;
+        }
+        size--;
+        version++;
+        shrinkIfSparse();
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public Iterator<JobScheduler> iterator() {
+        final Table t = table;
+        return new Iterator<JobScheduler>() {
+            private int index = -1;
+            private JobScheduler next = advance();
+
+            private JobScheduler advance() {
+                while (++index < t.capacity()) {
+                    JobScheduler value = t.values.get(index);
+                    if (null != value) {
+                        return value;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return null != next;
+            }
+
+            @Override
+            public JobScheduler next() {
+                if (null == next) {
+                    throw new NoSuchElementException();
+                }
+                JobScheduler current = next;
+                next = advance();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * 已删除的槽过多时重建,删除大量任务后内存随之回落
+     */
+    private void shrinkIfSparse() {
+        Table t = table;
+        if (t.capacity() > MIN_CAPACITY && size * 8 < t.capacity()) {
+            rebuild(size);
+        } else if ((used - size) * 4 > t.capacity()) {
+            rebuild(size);
+        }
+    }
+
+    /**
+     * 按expectedSize新建表,只复制未删除的槽,然后替换
+     */
+    private Table rebuild(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        Table old = table;
+        Table t = new Table(capacity);
+        int count = 0;
+        for (int i = 0; i < old.capacity(); i++) {
+            JobScheduler value = old.values.get(i);
+            if (null != value) {
+                long id = old.keys.get(i);
+                int slot = t.emptySlotOf(id);
+                t.values.set(slot, value);
+                t.keys.set(slot, id);
+                count++;
+            }
+        }
+        used = count;
+        table = t;
+        return t;
+    }
+
+    private static final class Table {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<JobScheduler> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        /**
+         * @return id所在的槽, 不存在返回-1
+         */
+        int indexOf(long id) {
+            int i = hash(id) & mask;
+            while (true) {
+                long key = keys.get(i);
+                if (key == id) {
+                    return i;
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /**
+         * 调用方保证id不在表中且表中有空槽
+         */
+        int emptySlotOf(long id) {
+            int i = hash(id) & mask;
+            while (keys.get(i) != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
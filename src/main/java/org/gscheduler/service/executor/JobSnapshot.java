@@ -0,0 +1,315 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 本机调度器状态的本地快照,用于重启时快速恢复.
+ * 记录每个本机定时任务的下一次计划触发时间,最后一次执行结果,以及启动调度器所需的任务配置.
+ * 定期和关闭时写入job.snapshot.dir下的文件,启动时先按快照启动调度器,周期任务保持原来的触发相位,再在后台与数据库对账.
+ * 文件格式:header(magic,version,writeTime,count),定长字段+变长字符串的记录,最后是CRC32校验,写临时文件后原子替换.
+ * job.snapshot.dir为空时不启用.
+ */
+@Component
+public class JobSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(JobSnapshot.class);
+    private static final int MAGIC = 0x4753534E;
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "job-snapshot.bin";
+    // magic+version+writeTime+count
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    // id+nextFireTime+lastStartTime+lastStatus
+    private static final int RECORD_FIXED_SIZE = 8 + 8 + 8 + 2;
+
+    @Value("${job.snapshot.dir}")
+    String snapshotDir;
+
+    @Value("${job.snapshot.interval}")
+    String snapshotInterval;
+
+    // 定期写快照的间隔,单位s
+    private long interval = 60;
+
+    private ScheduledExecutorService snapshotService;
+
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(snapshotDir);
+    }
+
+    /**
+     * 开始定期写快照
+     */
+    public void init(final JobSchedulerRegistry jobSchedulers) {
+        if (!isEnabled()) {
+            logger.info("job snapshot disabled.");
+            return;
+        }
+        long seconds = NumberUtils.toLong(snapshotInterval, 0);
+        if (seconds > 0) {
+            interval = seconds;
+        }
+        logger.info("job snapshot init,dir:{},interval:{}s", snapshotDir, interval);
+        snapshotService = Executors.newSingleThreadScheduledExecutor(new JobManager.NamedThreadFactory("job-snapshot"));
+        snapshotService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save(jobSchedulers);
+                } catch (Exception e) {
+                    logger.error("写任务快照失败", e);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 关闭时停止定期写入,由调用方最后写一次
+     */
+    public void shutdown() {
+        if (null != snapshotService) {
+            snapshotService.shutdownNow();
+        }
+    }
+
+    /**
+     * 写入正在运行的本机定时任务,子任务和failover任务不写入
+     *
+     * @return 写入的任务数
+     */
+    public synchronized int save(JobSchedulerRegistry jobSchedulers) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        String hostName = Utils.getHostName();
+        List<Entry> entries = Lists.newArrayList();
+        for (JobScheduler jobScheduler : jobSchedulers) {
+            JobInfo jobInfo = jobScheduler.getJobInfo();
+            if (!jobScheduler.isRunning() || null == jobInfo || StringUtils.isNotBlank(jobInfo.getParentName())
+                    || !StringUtils.equals(jobInfo.getExecuteHost(), hostName)) {
+                continue;
+            }
+            entries.add(new Entry(jobInfo, jobScheduler.getNextFireTime(), jobScheduler.getLastStartTime(),
+                    jobScheduler.getLastStatus()));
+        }
+        write(entries);
+        return entries.size();
+    }
+
+    /**
+     * 读取快照,文件不存在或损坏返回空
+     *
+     * @return key:任务id
+     */
+    public Map<Long, Entry> load() {
+        if (!isEnabled()) {
+            return Collections.emptyMap();
+        }
+        Path path = Paths.get(snapshotDir, FILE_NAME);
+        if (!Files.exists(path)) {
+            return Collections.emptyMap();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Map<Long, Entry> entries = read(buffer);
+            logger.info("load job snapshot,jobs:{}", entries.size());
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            logger.error("读取任务快照失败,忽略快照,path:{}", path, e);
+            return Collections.emptyMap();
+        }
+    }
+
+    void write(List<Entry> entries) throws IOException {
+        List<byte[][]> encoded = Lists.newArrayListWithCapacity(entries.size());
+        int size = HEADER_SIZE;
+        for (Entry entry : entries) {
+            byte[][] strings = {encode(entry.jobName), encode(entry.jobClass), encode(entry.crontab),
+                    encode(entry.subJob), encode(entry.configParameter)};
+            size += RECORD_FIXED_SIZE;
+            for (byte[] bytes : strings) {
+                size += 4 + (null == bytes ? 0 : bytes.length);
+            }
+            encoded.add(strings);
+        }
+        // crc32
+        size += 8;
+
+        File dir = new File(snapshotDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("create snapshot dir failed:" + snapshotDir);
+        }
+        Path tmp = Paths.get(snapshotDir, FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                buffer.putLong(entry.id).putLong(entry.nextFireTime).putLong(entry.lastStartTime)
+                        .putShort(entry.lastStatus.getCode());
+                for (byte[] bytes : encoded.get(i)) {
+                    if (null == bytes) {
+                        buffer.putInt(-1);
+                    } else {
+                        buffer.putInt(bytes.length).put(bytes);
+                    }
+                }
+            }
+            buffer.putLong(checksum(buffer, size - 8));
+            buffer.force();
+        }
+        Files.move(tmp, Paths.get(snapshotDir, FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<Long, Entry> read(MappedByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < HEADER_SIZE + 8 || buffer.getLong(size - 8) != checksum(buffer, size - 8)) {
+            throw new IllegalStateException("snapshot checksum mismatch");
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalStateException("snapshot version mismatch");
+        }
+        long writeTime = buffer.getLong();
+        int count = buffer.getInt();
+        Map<Long, Entry> entries = Maps.newHashMapWithExpectedSize(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                entry.id = buffer.getLong();
+                entry.nextFireTime = buffer.getLong();
+                entry.lastStartTime = buffer.getLong();
+                entry.lastStatus = ExecuteStatus.fromCode(buffer.getShort());
+                entry.jobName = decode(buffer);
+                entry.jobClass = decode(buffer);
+                entry.crontab = decode(buffer);
+                entry.subJob = decode(buffer);
+                entry.configParameter = decode(buffer);
+                entries.put(entry.id, entry);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("snapshot truncated,writeTime:" + writeTime, e);
+        }
+        return entries;
+    }
+
+    private static long checksum(MappedByteBuffer buffer, int length) {
+        CRC32 crc32 = new CRC32();
+        for (int i = 0; i < length; i++) {
+            crc32.update(buffer.get(i));
+        }
+        return crc32.getValue();
+    }
+
+    private static byte[] encode(String value) {
+        return null == value ? null : value.getBytes(Charsets.UTF_8);
+    }
+
+    private static String decode(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * 一个任务的快照
+     */
+    public static class Entry {
+        private long id;
+        // 下一次计划触发时间,epoch ms
+        private long nextFireTime;
+        // 最后一次开始执行的时间,没有执行过为0
+        private long lastStartTime;
+        private ExecuteStatus lastStatus;
+        private String jobName;
+        private String jobClass;
+        private String crontab;
+        private String subJob;
+        private String configParameter;
+
+        Entry() {
+        }
+
+        Entry(JobInfo jobInfo, long nextFireTime, long lastStartTime, ExecuteStatus lastStatus) {
+            this.id = jobInfo.getId();
+            this.nextFireTime = nextFireTime;
+            this.lastStartTime = lastStartTime;
+            this.lastStatus = lastStatus;
+            this.jobName = jobInfo.getJobName();
+            this.jobClass = jobInfo.getJobClass();
+            this.crontab = jobInfo.getCrontab();
+            this.subJob = jobInfo.getSubJob();
+            this.configParameter = jobInfo.getConfigParameter();
+        }
+
+        /**
+         * 按快照构造本机执行的任务配置,数据库对账前使用
+         */
+        public JobInfo toJobInfo() {
+            JobInfo jobInfo = new JobInfo();
+            jobInfo.setId(id);
+            jobInfo.setJobName(jobName);
+            jobInfo.setJobClass(jobClass);
+            jobInfo.setCrontab(crontab);
+            jobInfo.setSubJob(subJob);
+            jobInfo.setConfigParameter(configParameter);
+            jobInfo.setParentName("");
+            jobInfo.setInitiateMode(JobManager.AVAILABLE);
+            jobInfo.setExecuteHost(Utils.getHostName());
+            jobInfo.setFailExecuteHost("");
+            return jobInfo;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getNextFireTime() {
+            return nextFireTime;
+        }
+
+        public long getLastStartTime() {
+            return lastStartTime;
+        }
+
+        public ExecuteStatus getLastStatus() {
+            return lastStatus;
+        }
+
+        public String getCrontab() {
+            return crontab;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.gscheduler.service.executor;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecuteState;
+import org.gscheduler.service.task.JobInfoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 任务执行状态的异步批量写入.任务每次执行会更新多次执行状态,执行时长,上一次和下一次执行时间,
+ * 这里先按任务id合并到内存,同一任务只保留最新值,由单独的线程定时(或积攒到一定数量时)批量写库,
+ * 执行线程不再同步等待数据库.
+ */
+@Component
+public class JobStatusWriter {
+    private static final Logger logger = LoggerFactory.getLogger(JobStatusWriter.class);
+
+    @Value("${job.status.flush.interval}")
+    String statusFlushInterval;
+
+    @Value("${job.status.flush.size}")
+    String statusFlushSize;
+
+    @Resource
+    JobInfoService jobInfoService;
+
+    // 批量写库间隔,单位ms
+    private long flushInterval = 1000;
+    // 待写入的任务数达到该值时立即写库
+    private int flushSize = 200;
+
+    // 待写入的状态,key:任务id,访问需要持有该对象锁
+    private final Map<Long, JobExecuteState> pendingStates = new HashMap<>();
+    // 是否已提交立即写库,避免重复提交
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private ScheduledExecutorService flushService;
+
+    @PostConstruct
+    public void init() {
+        long interval = NumberUtils.toLong(statusFlushInterval, 0);
+        if (interval > 0 && interval != flushInterval) {
+            flushInterval = interval;
+        }
+        int size = NumberUtils.toInt(statusFlushSize, 0);
+        if (size > 0 && size != flushSize) {
+            flushSize = size;
+        }
+        logger.info("job status writer init,flushInterval:{}ms,flushSize:{}", flushInterval, flushSize);
+
+        flushService = Executors.newSingleThreadScheduledExecutor(new JobManager.NamedThreadFactory("job-status"));
+        flushService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 任务开始执行,更新状态为运行中,开始时间,上一次执行时间和下一次执行时间
+     */
+    public void markRunning(long id, long startTime, Date nextExecuteTime) {
+        JobExecuteState executeState = new JobExecuteState(id);
+        executeState.setExecuteStatus(ExecuteStatus.RUNNING);
+        executeState.setExecuteStartTime(startTime);
+        executeState.setLastExecuteTime(new Date(startTime));
+        executeState.setNextExecuteTime(nextExecuteTime);
+        submit(executeState);
+    }
+
+    /**
+     * 任务执行结束,更新状态,结束时间和执行时长
+     */
+    public void markFinished(long id, ExecuteStatus executeStatus, long endTime, long durationMs) {
+        JobExecuteState executeState = new JobExecuteState(id);
+        executeState.setExecuteStatus(executeStatus);
+        executeState.setExecuteEndTime(endTime);
+        executeState.setLastDurationMs(durationMs);
+        submit(executeState);
+    }
+
+    /**
+     * 只更新执行状态.与执行过程中的状态走同一个队列,避免停止任务后被尚未写库的执行状态覆盖
+     */
+    public void modifyExecuteStatus(long id, ExecuteStatus executeStatus) {
+        JobExecuteState executeState = new JobExecuteState(id);
+        executeState.setExecuteStatus(executeStatus);
+        submit(executeState);
+    }
+
+    /**
+     * 合并到待写入状态中,同一任务新值覆盖旧值
+     */
+    public void submit(JobExecuteState executeState) {
+        int size;
+        synchronized (pendingStates) {
+            JobExecuteState pending = pendingStates.get(executeState.getId());
+            if (pending == null) {
+                pendingStates.put(executeState.getId(), executeState);
+            } else {
+                pending.merge(executeState);
+            }
+            size = pendingStates.size();
+        }
+        if (size >= flushSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flushService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushRequested.set(false);
+                        flush();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 将待写入的状态批量写库,失败时放回,不覆盖期间产生的新状态
+     */
+    public synchronized void flush() {
+        List<JobExecuteState> executeStates;
+        synchronized (pendingStates) {
+            if (pendingStates.isEmpty()) {
+                return;
+            }
+            executeStates = new ArrayList<>(pendingStates.values());
+            pendingStates.clear();
+        }
+        try {
+            jobInfoService.batchModifyExecuteState(executeStates);
+            logger.debug("flush job execute state,size:{}", executeStates.size());
+        } catch (RuntimeException e) {
+            logger.error("批量写入任务执行状态失败,size:{},下次重试", executeStates.size(), e);
+            synchronized (pendingStates) {
+                for (JobExecuteState executeState : executeStates) {
+                    JobExecuteState newer = pendingStates.get(executeState.getId());
+                    if (newer != null) {
+                        executeState.merge(newer);
+                    }
+                    pendingStates.put(executeState.getId(), executeState);
+                }
+            }
+        }
+    }
+
+    public int getPendingSize() {
+        synchronized (pendingStates) {
+            return pendingStates.size();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushService != null) {
+            flushService.shutdown();
+        }
+        flush();
+        logger.info("job status writer shutdown,pending size:{}", getPendingSize());
+    }
+}
@@ -0,0 +1,342 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分层时间轮,所有任务共用一个tick线程,到期的任务交给executor执行.
+ * 每层wheelSize个槽位,第0层一个槽位代表一个tick,第n层一个槽位代表wheelSize^n个tick,
+ * 低层转完一圈时将高层对应槽位中的任务降级(cascade)到低层.
+ * 槽位链表只由tick线程操作,其他线程通过newTimeouts/cancelledTimeouts队列提交.
+ */
+class JobTimingWheel {
+    private static final Logger logger = LoggerFactory.getLogger(JobTimingWheel.class);
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_SHUTDOWN = 2;
+
+    // 一个tick的时长,单位ms
+    private final long tickMillis;
+    // 每层槽位数的位数,wheelSize=1<<bits
+    private final int bits;
+    private final int mask;
+    // 时间轮层数
+    private final int levels;
+    // buckets[level][slot]
+    private final Bucket[][] buckets;
+    // 到期任务的执行者
+    private final Executor executor;
+
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final Thread tickThread;
+
+    // 时间轮启动时间,所有tick都相对于该时间计算
+    private volatile long startTime;
+    // 当前tick,只有tick线程修改
+    private long currentTick;
+
+    JobTimingWheel(long tickMillis, int bits, int levels, Executor executor, String threadName) {
+        Preconditions.checkArgument(tickMillis > 0, "tickMillis illegal.");
+        Preconditions.checkArgument(bits > 0 && bits <= 16, "bits illegal.");
+        Preconditions.checkArgument(levels > 0 && bits * levels < 63, "levels illegal.");
+        Preconditions.checkNotNull(executor, "executor is null.");
+        this.tickMillis = tickMillis;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.levels = levels;
+        this.executor = executor;
+        this.buckets = new Bucket[levels][1 << bits];
+        for (int level = 0; level < levels; level++) {
+            for (int slot = 0; slot <= mask; slot++) {
+                buckets[level][slot] = new Bucket();
+            }
+        }
+        this.tickThread = new Thread(new Worker(), threadName);
+        this.tickThread.setDaemon(true);
+    }
+
+    public void start() {
+        if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+            startTime = System.currentTimeMillis();
+            tickThread.start();
+            logger.info("timing wheel started,tick:{}ms,wheelSize:{},levels:{}", tickMillis, mask + 1, levels);
+        }
+    }
+
+    /**
+     * 停止tick线程,未到期的任务全部丢弃
+     */
+    public void stop() {
+        if (state.getAndSet(STATE_SHUTDOWN) != STATE_STARTED) {
+            return;
+        }
+        tickThread.interrupt();
+        try {
+            tickThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("timing wheel stopped,pending timeouts:{}", pending.get());
+    }
+
+    /**
+     * 在deadline(epoch ms)时刻执行task,deadline早于当前时间则在下一个tick执行
+     */
+    public Timeout newTimeout(Runnable task, long deadline) {
+        Preconditions.checkNotNull(task, "task is null.");
+        if (state.get() != STATE_STARTED) {
+            throw new RejectedExecutionException("timing wheel is not running.");
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public int pendingTimeouts() {
+        return pending.get();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (state.get() == STATE_STARTED) {
+                if (!waitForNextTick()) {
+                    break;
+                }
+                try {
+                    transferCancelledTimeouts();
+                    transferNewTimeouts();
+                    cascade();
+                    expireTimeouts();
+                } catch (Throwable e) {
+                    logger.error("timing wheel tick exception,tick:{}", currentTick, e);
+                }
+                currentTick++;
+            }
+        }
+    }
+
+    // 等待当前tick结束,被中断返回false
+    private boolean waitForNextTick() {
+        long tickEnd = startTime + (currentTick + 1) * tickMillis;
+        while (true) {
+            long sleepMillis = tickEnd - System.currentTimeMillis();
+            if (sleepMillis <= 0) {
+                return true;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (state.get() != STATE_STARTED) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void transferCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // 向下取整,保证在deadline之后才执行
+            long deadlineTick = (timeout.deadline - startTime) / tickMillis;
+            timeout.deadlineTick = Math.max(deadlineTick, currentTick);
+            place(timeout);
+        }
+    }
+
+    // 根据到期tick与当前tick的距离放入对应层的槽位
+    private void place(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        for (int level = 0; level < levels; level++) {
+            if (delta < (1L << (bits * (level + 1))) || level == levels - 1) {
+                long tick = timeout.deadlineTick;
+                if (level == levels - 1 && delta >= (1L << (bits * levels))) {
+                    // 超出最高层范围,先放在最高层最远的槽位,降级时重新计算
+                    tick = currentTick + (1L << (bits * levels)) - 1;
+                }
+                int slot = (int) ((tick >>> (bits * level)) & mask);
+                buckets[level][slot].add(timeout);
+                return;
+            }
+        }
+    }
+
+    // 低层转完一圈时,将高层对应槽位的任务重新放置
+    private void cascade() {
+        if (currentTick == 0 || (currentTick & mask) != 0) {
+            return;
+        }
+        for (int level = 1; level < levels; level++) {
+            int slot = (int) ((currentTick >>> (bits * level)) & mask);
+            Timeout timeout = buckets[level][slot].clear();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                timeout.prev = null;
+                if (!timeout.isCancelled()) {
+                    place(timeout);
+                }
+                timeout = next;
+            }
+            if (slot != 0) {
+                break;
+            }
+        }
+    }
+
+    private void expireTimeouts() {
+        Timeout timeout = buckets[0][(int) (currentTick & mask)].clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+            if (timeout.isCancelled()) {
+                // 已在cancel时减过pending
+            } else if (timeout.deadlineTick > currentTick) {
+                // 超出最高层范围的任务,还未到期
+                place(timeout);
+            } else {
+                timeout.expire();
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * 一个定时任务的句柄,可取消
+     */
+    static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final JobTimingWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        // 以下字段只由tick线程访问
+        private long deadlineTick;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(JobTimingWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            wheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            wheel.pending.decrementAndGet();
+            try {
+                wheel.executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.error("executor rejected expired timeout,deadline:{}", deadline, e);
+            }
+        }
+    }
+
+    /**
+     * 槽位,双向链表,只由tick线程操作
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        // 清空槽位,返回原链表头
+        private Timeout clear() {
+            Timeout timeout = head;
+            for (Timeout t = head; t != null; t = t.next) {
+                t.bucket = null;
+            }
+            head = tail = null;
+            return timeout;
+        }
+    }
+}
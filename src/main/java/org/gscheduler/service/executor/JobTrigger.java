@@ -2,6 +2,7 @@ package org.gscheduler.service.executor;
 
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -11,17 +12,17 @@ import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.support.CronSequenceGenerator;
 
 import com.google.common.base.Splitter;
-import com.google.common.util.concurrent.AbstractScheduledService;
 
 /**
  * 任务触发器,支持两种表达式: 1. 1/min 1/hour(延迟1分钟1小时执行一次);1/min 5/min(延迟1分钟5分钟执行一次);5/min 1/day(延迟5分钟1天执行一次) 2.
- * Spring的cron表达式,使用见CronSequenceGenerator说明
+ * Spring的cron表达式,语义见CronSequenceGenerator说明,由预编译的CronExpression计算
  */
 public class JobTrigger {
     private static final Logger logger = LoggerFactory.getLogger(JobTrigger.class);
+    // TimeZone.getDefault()每次调用都会clone,缓存使用
+    private static final TimeZone DEFAULT_TIME_ZONE = TimeZone.getDefault();
     private boolean isCronExpression;
 
     private CronTrigger cronTrigger;
@@ -39,16 +40,36 @@ public class JobTrigger {
         }
     }
 
-    public AbstractScheduledService.Scheduler getScheduler() {
+    /**
+     * 计算下一次触发时间
+     *
+     * @param previousFireTime 上一次计划触发时间(epoch ms),首次触发传0
+     * @param now              当前时间(epoch ms)
+     * @return 下一次触发时间(epoch ms),早于now时表示应立即执行
+     */
+    public long getNextFireTime(long previousFireTime, long now) {
         if (isCronExpression) {
             // cron表达式
-            return cronTrigger;
+            return cronTrigger.getNextFireTime(now);
         } else {
             // 自定义表达式
-            return periodTrigger.getScheduler();
+            return periodTrigger.getNextFireTime(previousFireTime, now);
         }
     }
 
+    /**
+     * 按快照恢复时计算首次触发时间.周期任务保持快照中的触发相位,错过的周期不补执行;cron任务按当前时间计算
+     *
+     * @param snapshotFireTime 快照中的计划触发时间(epoch ms)
+     * @param now              当前时间(epoch ms)
+     */
+    public long getResumeFireTime(long snapshotFireTime, long now) {
+        if (isCronExpression) {
+            return cronTrigger.getNextFireTime(now);
+        }
+        return periodTrigger.getResumeFireTime(snapshotFireTime, now);
+    }
+
     public Date getNextExecutionDate() {
         if (isCronExpression) {
             return cronTrigger.getNextExecutionDate();
@@ -57,26 +78,25 @@ public class JobTrigger {
         }
     }
 
-    // 解析cron表达式,每次执行完任务都要重新获取并设置延迟,每个任务对应一个CronTrigger实例
-    private final static class CronTrigger extends AbstractScheduledService.CustomScheduler {
-        private final CronSequenceGenerator sequenceGenerator;
-        private Date nextExecutionDate;
+    // 解析cron表达式,每次执行完任务都要重新计算下一次触发时间,每个任务对应一个CronTrigger实例
+    private final static class CronTrigger {
+        private final CronExpression expression;
+        // 当前计划触发时间
+        private volatile long nextFireTime;
 
         private CronTrigger(String cronExpression) {
-            this.sequenceGenerator = new CronSequenceGenerator(cronExpression);
+            this.expression = new CronExpression(cronExpression, DEFAULT_TIME_ZONE);
         }
 
+        // 当前计划触发之后的下一次触发时间
         public Date getNextExecutionDate() {
-            return sequenceGenerator.next(nextExecutionDate);
+            long fireTime = nextFireTime;
+            return new Date(expression.next(fireTime > 0 ? fireTime : System.currentTimeMillis()));
         }
 
-        protected Schedule getNextSchedule() throws Exception {
-            Date now = new Date();
-            nextExecutionDate = sequenceGenerator.next(now);
-
-            // 如果timeDiff<0,ScheduleExecutorService会自动处理:将delay置0,立即执行
-            long timeDiff = nextExecutionDate.getTime() - now.getTime();
-            return new Schedule(timeDiff, TimeUnit.MILLISECONDS);
+        private long getNextFireTime(long now) {
+            nextFireTime = expression.next(now);
+            return nextFireTime;
         }
     }
 
@@ -96,12 +116,30 @@ public class JobTrigger {
             this.period = parse.period;
         }
 
-        private AbstractScheduledService.Scheduler getScheduler() {
+        private long getResumeFireTime(long snapshotFireTime, long now) {
+            if (snapshotFireTime <= 0) {
+                return getNextFireTime(0, now);
+            }
+            if (snapshotFireTime >= now) {
+                return snapshotFireTime;
+            }
+            long periodMillis = TimeUnit.SECONDS.toMillis(period);
+            if (periodMillis <= 0) {
+                return now;
+            }
+            long missed = (now - snapshotFireTime + periodMillis - 1) / periodMillis;
+            return snapshotFireTime + missed * periodMillis;
+        }
+
+        private long getNextFireTime(long previousFireTime, long now) {
+            if (previousFireTime <= 0) {
+                return now + TimeUnit.SECONDS.toMillis(delay);
+            }
             if (fixedRate) {
-                // 固定周期执行
-                return AbstractScheduledService.Scheduler.newFixedRateSchedule(delay, period, TimeUnit.SECONDS);
+                // 固定周期执行,以上一次计划触发时间为基准,超时则立即执行
+                return previousFireTime + TimeUnit.SECONDS.toMillis(period);
             }
-            return AbstractScheduledService.Scheduler.newFixedDelaySchedule(delay, period, TimeUnit.SECONDS);
+            return now + TimeUnit.SECONDS.toMillis(period);
         }
     }
 
@@ -186,12 +224,11 @@ public class JobTrigger {
                 return true;
             }
         } else if (cronList.size() == 6) {
-            // cron表达式
-            for (String s : cronList) {
-                illegaled = StringUtils.containsAny(s, "*,-/?0123456789");
-                if (!illegaled) {
-                    return true;
-                }
+            // cron表达式,编译失败即非法
+            try {
+                new CronExpression(expression, DEFAULT_TIME_ZONE);
+            } catch (IllegalArgumentException e) {
+                return true;
             }
         } else {
             return true;
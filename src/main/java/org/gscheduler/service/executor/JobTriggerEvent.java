@@ -0,0 +1,47 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * 依赖任务触发事件,父任务执行成功后通知子任务执行.
+ * runId标识一次工作流执行,由根任务生成并沿依赖边传递,父任务来自同一根任务的汇合节点按runId等待所有父任务.
+ */
+public class JobTriggerEvent {
+    // 被触发的子任务id
+    private final long id;
+    // 触发的父任务id
+    private final long upstreamId;
+    // 触发的父任务名,对应子任务parent_name中的一项
+    private final String upstreamName;
+    // 工作流执行id
+    private final String runId;
+
+    public JobTriggerEvent(long id, long upstreamId, String upstreamName, String runId) {
+        this.id = id;
+        this.upstreamId = upstreamId;
+        this.upstreamName = upstreamName;
+        this.runId = runId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getUpstreamId() {
+        return upstreamId;
+    }
+
+    public String getUpstreamName() {
+        return upstreamName;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("id", id).add("upstreamId", upstreamId)
+                .add("upstreamName", upstreamName).add("runId", runId).toString();
+    }
+}
@@ -1,10 +1,14 @@
 package org.gscheduler.service.executor;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Service;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.task.HostHeartbeatService;
 import org.gscheduler.service.task.JobInfoService;
 import org.gscheduler.utils.Utils;
 import org.slf4j.Logger;
@@ -13,10 +17,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -30,13 +40,21 @@ public class JobWatcher {
     JobManager jobManager;
     @Resource
     JobInfoService jobInfoService;
+    @Resource
+    HostHeartbeatService hostHeartbeatService;
 
     @Resource
     JobListener jobListener;
 
+    @Resource
+    JobInfoCache jobInfoCache;
+
     @Value("${job.heartbeat}")
     String jobHeartbeat;
 
+    @Value("${job.reconcile.concurrency}")
+    String reconcileConcurrency;
+
     // 心跳频率
     private long heartbeat = 2;
     //时间单位
@@ -45,6 +63,8 @@ public class JobWatcher {
     private final long INTERVAL = TIME_UNIT.toMillis(heartbeat) * 2;
 
     private final ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor();
+    // 并行执行对账产生的启动/关闭操作
+    private ExecutorService reconcileService;
 
     public void init() {
         if (jobManager.getIsUsedZKListener()) {
@@ -55,19 +75,28 @@ public class JobWatcher {
         if (heart > 0 && heart != heartbeat) {
             heartbeat = heart;
         }
+        int concurrency = NumberUtils.toInt(reconcileConcurrency, 4);
+        reconcileService = Executors.newFixedThreadPool(concurrency > 0 ? concurrency : 4,
+                new JobManager.NamedThreadFactory("job-reconcile"));
 
         // 固定周期执行
         watcher.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 try {
-                    List<JobInfo> localJob = jobInfoService.getLocalJobInfo();
-                    // 1.监控本地job
-                    watchJob(localJob);
+                    // 按update_time增量刷新,任务没有变化时只有按索引的查询
+                    JobInfoCache.Delta delta = jobInfoCache.refresh();
+                    String hostName = Utils.getHostName();
+                    // 1.监控本地job,全量加载时检查所有本机任务,否则只检查变更的任务
+                    if (delta.isFull()) {
+                        watchJob(jobInfoCache.getByExecuteHost(hostName));
+                    } else {
+                        watchChangedJob(delta);
+                    }
                     // 2.维持本机心跳
-                    heartbeat(localJob);
+                    heartbeat();
                     // 3. 监控其他机器心跳
-                    List<JobInfo> otherJob = jobInfoService.getJobInfoContainHostname();
+                    List<JobInfo> otherJob = jobInfoCache.getByCandidateHost(hostName);
                     watchOtherMachineHeartbeat(otherJob);
                 } catch (Exception e) {
                     logger.error("Watcher:thread jobWatcher-thread-pool occur exception.", e);
@@ -78,26 +107,103 @@ public class JobWatcher {
 
     /**
      * 监控属于本机执行的任务状态,本机任务运行状态检测.
+     * 按id计算期望的任务集合与正在运行的调度器集合的差异,只对需要启动或关闭的任务执行操作.
      */
     public void watchJob(List<JobInfo> localJob) {
-        if (null == localJob || localJob.isEmpty()) {
-            return;
+        if (null == localJob) {
+            localJob = Collections.emptyList();
         }
-        Map<Long, JobScheduler> jobSchedulerMaps = jobManager.getJobSchedulerMaps();
-
+        Map<Long, JobInfo> desired = new HashMap<>(localJob.size() * 2);
+        List<Runnable> actions = Lists.newArrayList();
         for (JobInfo jobInfo : localJob) {
-            JobScheduler jobScheduler = jobSchedulerMaps.get(jobInfo.getId());
+            desired.put(jobInfo.getId(), jobInfo);
             //不检查子任务
             if (StringUtils.isNotBlank(jobInfo.getParentName())) {
                 continue;
             }
             //检查运行状态
-            watchExecuteState(jobInfo, jobScheduler);
+            Runnable action = watchExecuteState(jobInfo, jobManager.getJobScheduler(jobInfo.getId()));
+            if (null != action) {
+                actions.add(action);
+            }
         }
         //检查是否存在nonlocal task
-        watchExecuteHost(localJob);
-        //监控本地sub_task
-        watchLocalSubJob(localJob);
+        actions.addAll(watchExecuteHost(desired.keySet()));
+        execute(actions);
+    }
+
+    /**
+     * 将增量变更应用到本机的调度器,开销与变更数量成正比,与任务总数无关
+     */
+    public void watchChangedJob(JobInfoCache.Delta delta) {
+        for (Long id : delta.getRemoved()) {
+            if (null != jobManager.getJobScheduler(id)) {
+                logger.info("Watcher:close deleted task,id:{}", id);
+                jobManager.killSchedule(id);
+            }
+        }
+        for (JobInfo jobInfo : delta.getUpdated()) {
+            watchChangedJob(jobInfo);
+        }
+        // 执行失败的调度器
+        for (Long id : jobManager.drainFailedJobIds()) {
+            JobInfo jobInfo = jobInfoCache.get(id);
+            if (null != jobInfo) {
+                watchChangedJob(jobInfo);
+            }
+        }
+    }
+
+    /**
+     * 按最新配置检查一个任务:不再由本机执行的关闭,启用状态的启动,配置有变化的重启
+     */
+    private void watchChangedJob(JobInfo jobInfo) {
+        String hostName = Utils.getHostName();
+        JobScheduler jobScheduler = jobManager.getJobScheduler(jobInfo.getId());
+        boolean isLocal = StringUtils.equals(jobInfo.getExecuteHost(), hostName);
+        boolean isFailover = StringUtils.equals(jobInfo.getFailExecuteHost(), hostName);
+        if (!isLocal && !isFailover) {
+            if (null != jobScheduler) {
+                logger.info("Watcher:close nonlocal task,task:{}", jobInfo.getJobName());
+                jobManager.stopSchedule(jobInfo.getId());
+            }
+            return;
+        }
+        //依赖关系变化:成为子任务的关闭定时调度,之后由父任务以只触发方式启动;不再是子任务的按crontab重启
+        if (null != jobScheduler && !StringUtils.equals(StringUtils.trimToEmpty(jobScheduler.getJobInfo().getParentName()),
+                StringUtils.trimToEmpty(jobInfo.getParentName()))) {
+            if (StringUtils.isNotBlank(jobInfo.getParentName())) {
+                logger.info("Watcher:task:{},became sub task,stop scheduler.", jobInfo.getJobName());
+                jobManager.stopSchedule(jobInfo.getId());
+            } else if (StringUtils.isNotBlank(jobScheduler.getJobInfo().getParentName())) {
+                logger.info("Watcher:task:{},no longer sub task,restart right now.", jobInfo.getJobName());
+                jobManager.restartSchedule(jobInfo.getId());
+                return;
+            }
+        }
+        //子任务由父任务触发,failover任务由JobListener启动,只处理禁用
+        if (StringUtils.isNotBlank(jobInfo.getParentName()) || !isLocal) {
+            if (null != jobScheduler && jobInfo.getInitiateMode() == JobManager.DISABLE) {
+                jobManager.stopSchedule(jobInfo.getId());
+            }
+            return;
+        }
+        if (null != jobScheduler && jobScheduler.isRunning() && jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
+            JobInfo running = jobScheduler.getJobInfo();
+            if (!StringUtils.equals(running.getCrontab(), jobInfo.getCrontab())
+                    || !StringUtils.equals(running.getConfigParameter(), jobInfo.getConfigParameter())
+                    || !StringUtils.equals(running.getJobClass(), jobInfo.getJobClass())) {
+                logger.info("Watcher:task:{},config changed,restart right now.", jobInfo.getJobName());
+                jobManager.restartSchedule(jobInfo.getId());
+                return;
+            }
+            jobManager.refreshSubJob(jobInfo.getId(), jobInfo.getSubJob());
+            return;
+        }
+        Runnable action = watchExecuteState(jobInfo, jobScheduler);
+        if (null != action) {
+            action.run();
+        }
     }
 
     /**
@@ -105,17 +211,23 @@ public class JobWatcher {
      *
      * @param jobInfo      obj
      * @param jobScheduler job
+     * @return 需要执行的启动或关闭操作, 状态正常返回null
      */
-    private void watchExecuteState(JobInfo jobInfo, JobScheduler jobScheduler) {
+    private Runnable watchExecuteState(final JobInfo jobInfo, JobScheduler jobScheduler) {
         // 如果该任务没有启用,则检测是否在运行,是-关闭
         if (jobInfo.getInitiateMode() == JobManager.DISABLE) {
             if (null != jobScheduler) {
                 Service.State state = jobScheduler.state();
                 if (state == Service.State.NEW || state == Service.State.STARTING
                         || state == Service.State.RUNNING) {
-                    logger.info("Watcher:task:{},task id disabled but is running,terminate task right now.", jobInfo.getJobName());
-                    jobInfoService.modifyInitiateMode(jobInfo.getId(), JobManager.DISABLE);
-                    jobManager.stopSchedule(jobInfo.getId());
+                    return new Runnable() {
+                        @Override
+                        public void run() {
+                            logger.info("Watcher:task:{},task id disabled but is running,terminate task right now.", jobInfo.getJobName());
+                            jobInfoService.modifyInitiateMode(jobInfo.getId(), JobManager.DISABLE);
+                            jobManager.stopSchedule(jobInfo.getId());
+                        }
+                    };
                 }
             }
         } else if (jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
@@ -124,120 +236,139 @@ public class JobWatcher {
                 Service.State state = jobScheduler.state();
                 if (state == Service.State.NEW || state == Service.State.STARTING
                         || state == Service.State.RUNNING) {
-                    return;
+                    return null;
                 }
             }
             // 任务不存在或任务不在正常State,重新启动任务
-            logger.info("Watcher:task:{},task is enabled but not running,start right now.", jobInfo.getJobName());
-            jobManager.startSchedule(jobInfo.getId());
+            return new Runnable() {
+                @Override
+                public void run() {
+                    logger.info("Watcher:task:{},task is enabled but not running,start right now.", jobInfo.getJobName());
+                    jobManager.startSchedule(jobInfo.getId());
+                }
+            };
         }
+        return null;
     }
 
     /**
-     * 检查执行主机是否合法
+     * 检查执行主机是否合法,正在运行但不属于本机的任务一次批量查询
      *
-     * @param localJob 本地执行列表
+     * @param localJobIds 本地执行的任务id
+     * @return 需要执行的关闭操作
      */
-    private void watchExecuteHost(List<JobInfo> localJob) {
-        Map<Long, JobScheduler> jobSchedulerMaps = jobManager.getJobSchedulerMaps();
-        if (jobSchedulerMaps.size() <= localJob.size()) {
-            return;
+    private List<Runnable> watchExecuteHost(Set<Long> localJobIds) {
+        Set<Long> nonlocalIds = Sets.newHashSet();
+        for (JobScheduler scheduler : jobManager.getJobSchedulers()) {
+            if (!localJobIds.contains(scheduler.getId())) {
+                nonlocalIds.add(scheduler.getId());
+            }
+        }
+        if (nonlocalIds.isEmpty()) {
+            return Collections.emptyList();
         }
         //存在非本机运行的任务
         logger.info("Watcher:exist nonlocal task running on the local.");
-        boolean isExisted;
-        JobInfo task;
-        for (JobScheduler scheduler : jobSchedulerMaps.values()) {
-            isExisted = false;
-            for (JobInfo jobInfo : localJob) {
-                if (jobInfo.getId() == scheduler.getId()) {
-                    isExisted = true;
-                    break;
-                }
-            }
-            if (isExisted) {
+        Map<Long, JobInfo> nonlocalJob = jobInfoCache.getAll(nonlocalIds);
+        String hostName = Utils.getHostName();
+        List<Runnable> actions = Lists.newArrayList();
+        for (final Long id : nonlocalIds) {
+            final JobInfo task = nonlocalJob.get(id);
+            if (null == task) {
+                //任务已删除
+                actions.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        logger.info("Watcher:close deleted task,id:{}", id);
+                        jobManager.killSchedule(id);
+                    }
+                });
                 continue;
             }
-
-            //非本机任务
-            task = jobInfoService.getJobInfoById(scheduler.getId());
-            if (StringUtils.equals(task.getFailExecuteHost(), Utils.getHostName())) {
+            if (StringUtils.equals(task.getFailExecuteHost(), hostName)) {
                 //failover的执行host
                 continue;
             }
             //既不是failover host,也不是ExecuteHost,关闭任务
-            logger.info("Watcher:close nonlocal task,task:{}", task.toString());
-            jobManager.stopSchedule(scheduler.getId());
+            actions.add(new Runnable() {
+                @Override
+                public void run() {
+                    logger.info("Watcher:close nonlocal task,task:{}", task.toString());
+                    jobManager.stopSchedule(id);
+                }
+            });
         }
+        return actions;
     }
 
-    private Map<Long, Long> subTaskVersionMap = Maps.newHashMap();
-
     /**
-     * 监控local sub job的生命周期.
+     * 并行执行启动/关闭操作,等待全部完成.操作之间按任务id互不影响
      */
-    public void watchLocalSubJob(List<JobInfo> localJob) {
-        Map<Long, JobScheduler> jobSchedulerMaps = jobManager.getJobSchedulerMaps();
-        for (JobInfo jobInfo : localJob) {
-            if (StringUtils.isBlank(jobInfo.getParentName())) {
-                continue;
-            }
-
-            Long id = jobInfo.getId();
-            if (subTaskVersionMap.containsKey(id) && subTaskVersionMap.get(id) >= jobInfo.getJobVersion()) {
-                //logger.info("Do not meet execute condition,ignore.");
-                continue;
-            }
-
-            //如果是首次加入,监测,则第一次不执行
-            if (!subTaskVersionMap.containsKey(id)) {
-                subTaskVersionMap.put(id, jobInfo.getJobVersion());
-                continue;
-            }
-
-            logger.info("execute local sub job:{}", jobInfo.toString());
-            subTaskVersionMap.put(id, jobInfo.getJobVersion());
-            if (jobSchedulerMaps.containsKey(id)) {
-                jobManager.startSchedule(id);
-            } else {
-                jobManager.initJobScheduler(jobInfo).startAsync().awaitRunning();
+    private void execute(List<Runnable> actions) {
+        if (actions.isEmpty()) {
+            return;
+        }
+        if (actions.size() == 1) {
+            actions.get(0).run();
+            return;
+        }
+        List<Future<?>> futures = Lists.newArrayListWithCapacity(actions.size());
+        for (Runnable action : actions) {
+            futures.add(reconcileService.submit(action));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Watcher:reconcile task occur exception.", e.getCause());
             }
-            jobManager.stopSchedule(id);
         }
     }
 
-
     /**
-     * 更新属于本机执行的任务的心跳,检测包含本机host的任务心跳
+     * 更新本机心跳,每台主机一条记录,与本机任务数无关
      */
-    public void heartbeat(List<JobInfo> localJob) {
-        if (null == localJob || localJob.isEmpty()) {
-            return;
-        }
-        Date date = new Date();
-        for (JobInfo jobInfo : localJob) {
-            jobInfoService.modifyVersion(jobInfo.getId(), date.getTime());
-        }
+    public void heartbeat() {
+        hostHeartbeatService.heartbeat(Utils.getHostName(), new Date().getTime());
     }
 
     /**
-     * 查看不属于本机执行,但是本机在候选列表中的任务的心跳
+     * 查看不属于本机执行,但是本机在候选列表中的任务的心跳,按执行主机检查
      */
     public void watchOtherMachineHeartbeat(List<JobInfo> otherJob) {
         if (null == otherJob || otherJob.isEmpty()) {
             return;
         }
-        // 心跳监测逻辑,任务是启用状态
+        // 按执行主机分组,只检查启用状态的任务
+        ListMultimap<String, JobInfo> hostJobMap = ArrayListMultimap.create();
         for (JobInfo jobInfo : otherJob) {
             if (jobInfo.getInitiateMode() != JobManager.AVAILABLE) {
                 //任务是禁用状态
                 continue;
             }
+            hostJobMap.put(jobInfo.getExecuteHost(), jobInfo);
+        }
+        if (hostJobMap.isEmpty()) {
+            return;
+        }
 
-            long versionGap = new Date().getTime() - jobInfo.getVersion();
-            if (versionGap > INTERVAL && StringUtils.isBlank(jobInfo.getFailExecuteHost())) {
-                //当前时间减去version时间的间隔大于10分钟,认为心跳已死
-                logger.warn("heartbeat dead,task has be shut down, task:{}", jobInfo.toString());
+        Map<String, Long> hostHeartbeats = hostHeartbeatService.getHostHeartbeats();
+        long now = new Date().getTime();
+        for (String host : hostJobMap.keySet()) {
+            Long heartbeatTime = hostHeartbeats.get(host);
+            long heartbeatGap = now - (null == heartbeatTime ? 0 : heartbeatTime);
+            if (heartbeatGap <= INTERVAL) {
+                continue;
+            }
+            //当前时间减去心跳时间的间隔大于两个心跳周期,认为该主机心跳已死
+            logger.warn("heartbeat dead,host:{},last heartbeat:{}", host, heartbeatTime);
+            for (JobInfo jobInfo : hostJobMap.get(host)) {
+                if (StringUtils.isBlank(jobInfo.getFailExecuteHost())) {
+                    logger.warn("heartbeat dead,task has be shut down, task:{}", jobInfo.toString());
+                }
             }
         }
     }
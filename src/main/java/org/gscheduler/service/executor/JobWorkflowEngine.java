@@ -0,0 +1,293 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+import org.apache.commons.lang3.StringUtils;
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.task.JobInfoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 依赖任务的工作流引擎.父任务执行成功后,其所有子任务并行提交到执行线程池(扇出);
+ * parent_name包含多个父任务的子任务(汇合)等待所有父任务完成后才执行:
+ * 所有父任务来自同一个根任务时按runId汇合,即同一次工作流执行中的所有父任务都完成;
+ * 父任务来自不同的根任务时各自的runId不同,改为按子任务汇合,即子任务上次执行之后所有父任务都至少完成了一次.
+ * 同时按runId记录每个节点的执行时间,工作流耗时为关键路径耗时而非各节点耗时之和.
+ */
+@Component
+public class JobWorkflowEngine {
+    private static final Logger logger = LoggerFactory.getLogger(JobWorkflowEngine.class);
+    // 等待中的汇合节点上限,父任务失败的汇合节点不会被触发,超出后淘汰最早的
+    private static final int MAX_PENDING_JOINS = 10000;
+    // 保留最近的工作流执行记录数
+    private static final int MAX_WORKFLOW_RUNS = 200;
+    // 跨根任务汇合时代替runId的key前缀
+    private static final String CROSS_ROOT_JOIN = "*";
+
+    @Resource
+    JobManager jobManager;
+
+    @Resource
+    JobInfoService jobInfoService;
+
+    @Resource
+    JobInfoCache jobInfoCache;
+
+    @Resource
+    JobEventBus jobEventBus;
+
+    // key:runId/子任务id,跨根任务汇合时为*/子任务id,value:已完成的父任务名,访问需要持有该对象锁
+    private final Map<String, Set<String>> pendingJoins = new BoundedMap<>(MAX_PENDING_JOINS);
+
+    // key:runId,访问需要持有该对象锁
+    private final Map<String, WorkflowRun> workflowRuns = new BoundedMap<>(MAX_WORKFLOW_RUNS);
+
+    @PostConstruct
+    public void init() {
+        //本机依赖任务触发
+        jobEventBus.register(this);
+    }
+
+    /**
+     * 本机模式的依赖任务触发事件
+     */
+    @Subscribe
+    public void onJobTrigger(JobTriggerEvent event) {
+        onUpstreamCompleted(event);
+    }
+
+    /**
+     * 父任务执行成功,子任务的所有父任务都已完成时执行子任务
+     *
+     * @param event 触发事件
+     * @return 是否执行了子任务
+     */
+    public boolean onUpstreamCompleted(JobTriggerEvent event) {
+        logger.info("upstream completed,event:{}", event);
+        JobInfo jobInfo;
+        try {
+            jobInfo = jobInfoService.getJobInfoById(event.getId());
+        } catch (RuntimeException e) {
+            logger.error("从数据库获取定时任务失败,id:{}", event.getId(), e);
+            return false;
+        }
+        if (null == jobInfo) {
+            return false;
+        }
+
+        Set<String> parents = JobDag.splitParentName(jobInfo.getParentName());
+        if (parents.size() > 1) {
+            String joinKey = (isSameRoot(parents) ? event.getRunId() : CROSS_ROOT_JOIN) + "/" + event.getId();
+            synchronized (pendingJoins) {
+                Set<String> completed = pendingJoins.get(joinKey);
+                if (null == completed) {
+                    completed = Sets.newHashSet();
+                    pendingJoins.put(joinKey, completed);
+                }
+                completed.add(event.getUpstreamName());
+                if (!completed.containsAll(parents)) {
+                    logger.info("join job wait for upstream,id:{},joinKey:{},completed:{},parents:{}",
+                            event.getId(), joinKey, completed, parents);
+                    return false;
+                }
+                pendingJoins.remove(joinKey);
+            }
+        }
+        return jobManager.triggerSchedule(jobInfo, event.getRunId());
+    }
+
+    /**
+     * 沿parent_name向上查找,所有父任务是否只来自同一个根任务(没有parent_name的定时任务).
+     * 查不到的任务当作根任务,依赖环由checkJobDependency保证不存在,这里只防止死循环
+     */
+    boolean isSameRoot(Set<String> parents) {
+        Set<String> roots = Sets.newHashSet();
+        Set<String> visited = Sets.newHashSet();
+        Deque<String> queue = new ArrayDeque<>(parents);
+        while (!queue.isEmpty()) {
+            String jobName = queue.poll();
+            if (!visited.add(jobName)) {
+                continue;
+            }
+            JobInfo jobInfo;
+            try {
+                jobInfo = jobInfoCache.getByJobName(jobName);
+            } catch (RuntimeException e) {
+                logger.error("从数据库获取定时任务失败,jobName:{}", jobName, e);
+                jobInfo = null;
+            }
+            if (null == jobInfo || StringUtils.isBlank(jobInfo.getParentName())) {
+                roots.add(jobName);
+                if (roots.size() > 1) {
+                    return false;
+                }
+            } else {
+                queue.addAll(JobDag.splitParentName(jobInfo.getParentName()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录工作流中一个节点的执行时间
+     */
+    public void recordNode(String runId, JobInfo jobInfo, long startTime, long endTime, boolean succeed) {
+        NodeRecord record = new NodeRecord(jobInfo.getId(), jobInfo.getJobName(), startTime, endTime, succeed);
+        WorkflowRun workflowRun;
+        synchronized (workflowRuns) {
+            workflowRun = workflowRuns.get(runId);
+            if (null == workflowRun) {
+                workflowRun = new WorkflowRun(runId);
+                workflowRuns.put(runId, workflowRun);
+            }
+            workflowRun.nodes.add(record);
+        }
+        logger.info("workflow node finished,runId:{},node:{},elapsed:{}ms,succeed:{},workflow elapsed:{}ms",
+                runId, jobInfo.getJobName(), record.getElapsed(), succeed, workflowRun.getElapsed());
+    }
+
+    /**
+     * 最近的工作流执行记录
+     */
+    public List<WorkflowRun> getWorkflowRuns() {
+        synchronized (workflowRuns) {
+            return ImmutableList.copyOf(workflowRuns.values());
+        }
+    }
+
+    public int getPendingJoinSize() {
+        synchronized (pendingJoins) {
+            return pendingJoins.size();
+        }
+    }
+
+    /**
+     * 超出容量时淘汰最早放入的元素
+     */
+    private static class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        BoundedMap(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * 一次工作流执行
+     */
+    public static class WorkflowRun {
+        private final String runId;
+        private final List<NodeRecord> nodes = Lists.newArrayList();
+
+        WorkflowRun(String runId) {
+            this.runId = runId;
+        }
+
+        public String getRunId() {
+            return runId;
+        }
+
+        public synchronized List<NodeRecord> getNodes() {
+            return ImmutableList.copyOf(nodes);
+        }
+
+        /**
+         * 第一个节点开始到最后一个节点结束的耗时,即关键路径耗时
+         */
+        public synchronized long getElapsed() {
+            long start = Long.MAX_VALUE;
+            long end = 0;
+            for (NodeRecord node : nodes) {
+                start = Math.min(start, node.startTime);
+                end = Math.max(end, node.endTime);
+            }
+            return nodes.isEmpty() ? 0 : end - start;
+        }
+
+        /**
+         * 各节点耗时之和,即串行执行的耗时
+         */
+        public synchronized long getTotalNodeElapsed() {
+            long total = 0;
+            for (NodeRecord node : nodes) {
+                total += node.getElapsed();
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).add("runId", runId).add("elapsed", getElapsed())
+                    .add("totalNodeElapsed", getTotalNodeElapsed()).add("nodes", getNodes()).toString();
+        }
+    }
+
+    /**
+     * 工作流中一个节点的执行记录
+     */
+    public static class NodeRecord {
+        private final long id;
+        private final String jobName;
+        private final long startTime;
+        private final long endTime;
+        private final boolean succeed;
+
+        NodeRecord(long id, String jobName, long startTime, long endTime, boolean succeed) {
+            this.id = id;
+            this.jobName = jobName;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.succeed = succeed;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public long getElapsed() {
+            return endTime - startTime;
+        }
+
+        public boolean isSucceed() {
+            return succeed;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).add("jobName", jobName).add("elapsed", getElapsed())
+                    .add("succeed", succeed).toString();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.gscheduler.service.metrics;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的任务执行指标,按任务id统计执行时长直方图,触发延迟直方图和成功/失败次数.
+ * 只统计本机执行的任务,进程重启后清零,不写数据库.
+ */
+@Component
+public class JobMetrics {
+    // key:任务id
+    private final ConcurrentMap<Long, JobStats> jobStatsMap = new ConcurrentHashMap<>();
+    // 本次进程启动的耗时
+    private final StartupStats startupStats = new StartupStats();
+    // 本机接管的failover
+    private final FailoverStats failoverStats = new FailoverStats();
+
+    /**
+     * 获取任务的指标,不存在时创建.调度器初始化时获取并持有,执行时不再查找
+     */
+    public JobStats getJobStats(long id, String jobName) {
+        JobStats jobStats = jobStatsMap.get(id);
+        if (null == jobStats) {
+            JobStats newStats = new JobStats(id, jobName);
+            jobStats = jobStatsMap.putIfAbsent(id, newStats);
+            if (null == jobStats) {
+                jobStats = newStats;
+            }
+        }
+        return jobStats;
+    }
+
+    public JobStats getJobStats(long id) {
+        return jobStatsMap.get(id);
+    }
+
+    public List<JobStats> getAllJobStats() {
+        return ImmutableList.copyOf(jobStatsMap.values());
+    }
+
+    public StartupStats getStartupStats() {
+        return startupStats;
+    }
+
+    public FailoverStats getFailoverStats() {
+        return failoverStats;
+    }
+
+    /**
+     * 任务被删除或移出本机时清除
+     */
+    public void remove(long id) {
+        jobStatsMap.remove(id);
+    }
+
+    /**
+     * 单个任务的指标
+     */
+    public static class JobStats {
+        private final long id;
+        private final String jobName;
+        // 执行时长,ms
+        private final LatencyHistogram duration = new LatencyHistogram();
+        // 实际开始时间与计划触发时间之差,ms
+        private final LatencyHistogram triggerLag = new LatencyHistogram();
+        private final AtomicLong successCount = new AtomicLong(0);
+        private final AtomicLong failureCount = new AtomicLong(0);
+        private volatile long lastDuration;
+        private volatile long lastStartTime;
+
+        JobStats(long id, String jobName) {
+            this.id = id;
+            this.jobName = jobName;
+        }
+
+        /**
+         * 记录一次执行
+         */
+        public void recordExecution(long startTime, long durationMillis, boolean succeed) {
+            duration.record(durationMillis);
+            if (succeed) {
+                successCount.incrementAndGet();
+            } else {
+                failureCount.incrementAndGet();
+            }
+            lastStartTime = startTime;
+            lastDuration = durationMillis;
+        }
+
+        /**
+         * 记录一次定时触发的延迟
+         */
+        public void recordTriggerLag(long lagMillis) {
+            triggerLag.record(lagMillis);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public LatencyHistogram getDuration() {
+            return duration;
+        }
+
+        public LatencyHistogram getTriggerLag() {
+            return triggerLag;
+        }
+
+        public long getSuccessCount() {
+            return successCount.get();
+        }
+
+        public long getFailureCount() {
+            return failureCount.get();
+        }
+
+        public long getLastDuration() {
+            return lastDuration;
+        }
+
+        public long getLastStartTime() {
+            return lastStartTime;
+        }
+    }
+
+    /**
+     * 启动耗时:从开始启动到所有任务调度完成,以及到第一次触发执行的时间.时间单位ms,未发生时为-1
+     */
+    public static class StartupStats {
+        private volatile long beginTime;
+        private volatile long scheduledTime;
+        private final AtomicLong firstFireTime = new AtomicLong(0);
+        private volatile int startedCount;
+        private volatile int failedCount;
+
+        public void begin(long now) {
+            beginTime = now;
+        }
+
+        public void scheduled(long now, int started, int failed) {
+            startedCount = started;
+            failedCount = failed;
+            scheduledTime = now;
+        }
+
+        /**
+         * 调度器每次定时触发时调用,只记录第一次
+         */
+        public void recordFire(long now) {
+            if (firstFireTime.get() == 0 && beginTime > 0) {
+                firstFireTime.compareAndSet(0, now);
+            }
+        }
+
+        public long getBeginTime() {
+            return beginTime;
+        }
+
+        public long getTimeToAllScheduled() {
+            return scheduledTime == 0 ? -1 : scheduledTime - beginTime;
+        }
+
+        public long getTimeToFirstFire() {
+            long fireTime = firstFireTime.get();
+            return fireTime == 0 ? -1 : fireTime - beginTime;
+        }
+
+        public int getStartedCount() {
+            return startedCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+    }
+
+    /**
+     * failover统计:从发现机器down掉到本机接管的任务开始调度的时长直方图(ms),以及等待中被取消的次数
+     */
+    public static class FailoverStats {
+        private final LatencyHistogram takeoverLatency = new LatencyHistogram();
+        private final AtomicLong scheduledCount = new AtomicLong(0);
+        private final AtomicLong cancelledCount = new AtomicLong(0);
+
+        /**
+         * 发现机器down掉,开始等待
+         */
+        public void scheduled() {
+            scheduledCount.incrementAndGet();
+        }
+
+        /**
+         * 机器在等待期间恢复,取消failover
+         */
+        public void cancelled() {
+            cancelledCount.incrementAndGet();
+        }
+
+        /**
+         * 本机接管一个任务
+         */
+        public void recordTakeover(long latencyMillis) {
+            takeoverLatency.record(latencyMillis);
+        }
+
+        public LatencyHistogram getTakeoverLatency() {
+            return takeoverLatency;
+        }
+
+        public long getScheduledCount() {
+            return scheduledCount.get();
+        }
+
+        public long getCancelledCount() {
+            return cancelledCount.get();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.gscheduler.service.metrics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对数线性分桶的时长直方图(HdrHistogram的简化版),单位ms.
+ * 小于16的值每个值一个桶,之后每个2的幂区间等分为8个子桶,记录值与所在桶上界的相对误差不超过12.5%.
+ * 固定240个桶,最大记录约49天,超出按最大值记录.记录无锁,读取不保证与并发的记录严格一致.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 32) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong(0);
+    private final AtomicLong totalSum = new AtomicLong(0);
+    private final AtomicLong maxValue = new AtomicLong(0);
+
+    /**
+     * 记录一个值,负数按0记录
+     */
+    public void record(long value) {
+        long normalized = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(normalized));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(normalized);
+        long max = maxValue.get();
+        while (normalized > max && !maxValue.compareAndSet(max, normalized)) {
+            max = maxValue.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getSum() {
+        return totalSum.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalSum.get() / count;
+    }
+
+    /**
+     * 百分位值,返回所在桶的上界(不超过最大值)
+     *
+     * @param percentile 0-100,如99表示p99
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += counts.get(i);
+            if (accumulated >= target) {
+                return Math.min(bucketUpperBound(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,24 @@
+package org.gscheduler.service.task;
+
+import java.util.Map;
+
+/**
+ * 主机心跳,每台主机一条记录,取代逐个任务更新version
+ */
+public interface HostHeartbeatService {
+
+    /**
+     * 更新主机心跳,不存在则插入
+     *
+     * @param host      主机名
+     * @param heartbeat 心跳时间,毫秒
+     */
+    void heartbeat(String host, long heartbeat);
+
+    /**
+     * 获取所有主机的最近心跳时间
+     *
+     * @return key:主机名,value:心跳时间
+     */
+    Map<String, Long> getHostHeartbeats();
+}
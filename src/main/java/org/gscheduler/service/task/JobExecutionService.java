@@ -0,0 +1,48 @@
+package org.gscheduler.service.task;
+
+import org.gscheduler.entity.JobExecution;
+import org.gscheduler.entity.JobExecutionHourly;
+
+import java.util.List;
+
+/**
+ * 任务执行历史,明细保存在job_execution,超过保留期后汇总到job_execution_hourly
+ */
+public interface JobExecutionService {
+
+    /**
+     * 使用JDBC batch批量写入执行记录
+     */
+    void batchSaveJobExecution(List<JobExecution> jobExecutions);
+
+    /**
+     * 任务最近的执行记录
+     */
+    List<JobExecution> getRecentJobExecution(long jobId, int limit);
+
+    /**
+     * 任务hourTime之后的小时汇总
+     */
+    List<JobExecutionHourly> getJobExecutionHourly(long jobId, long hourTime);
+
+    /**
+     * 主机最早的执行记录开始时间,没有记录返回null
+     */
+    Long getMinStartTime(String host);
+
+    /**
+     * 在一个事务中将主机一个小时内的执行记录汇总到小时表并删除明细
+     *
+     * @param host     主机名,每台主机只压缩自己的记录,避免多台主机重复汇总
+     * @param hourTime 小时开始时间,毫秒
+     * @return 删除的明细数
+     */
+    int compactJobExecution(String host, long hourTime);
+
+    /**
+     * 删除hourTime之前的小时汇总
+     *
+     * @return 删除的记录数
+     */
+    int removeJobExecutionHourly(long hourTime);
+}
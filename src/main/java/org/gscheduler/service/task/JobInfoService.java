@@ -1,9 +1,14 @@
 package org.gscheduler.service.task;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecuteState;
 import org.gscheduler.entity.JobInfo;
+import org.gscheduler.entity.JobInfoTombstone;
+import org.gscheduler.service.executor.JobTriggerEvent;
 
 /**
  * 任务调度
@@ -16,14 +21,24 @@ public interface JobInfoService {
     List<JobInfo> getAllJobInfo();
 
     /**
-     * 搜索在本机执行的所有任务
+     * 获取updateTime之后配置被修改过的任务
      */
-    List<JobInfo> getLocalJobInfo();
+    List<JobInfo> getJobInfoUpdatedSince(Date updateTime);
 
     /**
-     * 搜索不在本机执行,但是主机列表中包含本机的任务
+     * 获取deleteTime之后删除的任务
      */
-    List<JobInfo> getJobInfoContainHostname();
+    List<JobInfoTombstone> getJobInfoTombstoneSince(Date deleteTime);
+
+    /**
+     * 清理deleteTime之前的删除记录
+     */
+    void removeJobInfoTombstoneBefore(Date deleteTime);
+
+    /**
+     * 按最近一次执行时长倒序获取任务,最慢的在前
+     */
+    List<JobInfo> getSlowestJobInfo(int limit);
 
     /**
      * 根据任务名获取job
@@ -35,6 +50,11 @@ public interface JobInfoService {
      */
     JobInfo getJobInfoById(long id);
 
+    /**
+     * 根据id批量获取Job,一次查询,不存在的id不返回
+     */
+    List<JobInfo> getJobInfoByIds(Collection<Long> ids);
+
     /**
      * failover时,获取执行机器为executeHost,且包含本机的task
      *
@@ -54,6 +74,13 @@ public interface JobInfoService {
      */
     void saveJobInfo(JobInfo jobInfo);
 
+    /**
+     * 为job_host中没有记录的任务按host_list补全候选主机,用于升级前已存在的任务
+     *
+     * @return 补全的任务数
+     */
+    int backfillJobHost();
+
     /**
      * 移除job
      */
@@ -63,26 +90,37 @@ public interface JobInfoService {
 
     void startJobInfo(long id);
 
-    void modifySubJobVersion(long id);
+    /**
+     * 父任务执行成功后通知子任务执行,zk模式创建触发节点,本地模式发送进程内事件
+     *
+     * @param event 子任务id,父任务和工作流执行id
+     */
+    void notifySubJob(JobTriggerEvent event);
 
-    void modifyVersion(long id, long value);
+    void modifyFailExecuteHost(long id, String host);
 
     /**
-     * 更新执行时间
+     * 自动分配时迁移任务的执行主机,zk模式下广播STOP_OR_START,原主机关闭,新主机启动
      */
-    void modifyExecuteTime(long id, String executeTime);
+    void moveJob(JobInfo jobInfo, String executeHost);
 
-    void modifyFailExecuteHost(long id, String host);
+    /**
+     * failover认领任务,按version乐观锁更新fail_execute_host,多台机器同时认领时只有一台成功
+     *
+     * @param version 读取任务时的version
+     * @return 是否认领成功
+     */
+    boolean claimFailover(long id, long version, String host);
 
     /**
-     * 更新本次执行时间和下一次执行时间
+     * 使用JDBC batch批量更新执行时长,上一次和下一次执行时间
      */
-    void modifyLastAndNextExecuteTime(long id, Date lastExecuteTime, Date nextExecuteTime);
+    void batchModifyExecuteState(List<JobExecuteState> executeStates);
 
     /**
      * 更新执行状态
      */
-    void modifyExecuteStatus(long id, short executeStatus);
+    void modifyExecuteStatus(long id, ExecuteStatus executeStatus);
 
 
     /**
@@ -0,0 +1,55 @@
+package org.gscheduler.service.task.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+import org.gscheduler.dao.HostHeartbeatDao;
+import org.gscheduler.entity.HostHeartbeat;
+import org.gscheduler.exception.SqlOperationException;
+import org.gscheduler.service.task.HostHeartbeatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 主机心跳数据库操作
+ */
+@Service
+public class HostHeartbeatServiceImpl implements HostHeartbeatService {
+    private static final Logger logger = LoggerFactory.getLogger(HostHeartbeatServiceImpl.class);
+
+    @Resource
+    HostHeartbeatDao hostHeartbeatDao;
+
+    public void heartbeat(String host, long heartbeat) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(host) && heartbeat > 0, "argument illegal");
+        try {
+            if (hostHeartbeatDao.updateHeartbeat(host, heartbeat) > 0) {
+                return;
+            }
+            logger.info("host heartbeat not exist,insert,host:{}", host);
+            try {
+                hostHeartbeatDao.insertHostHeartbeat(host, heartbeat);
+            } catch (DuplicateKeyException e) {
+                // 并发插入,已存在则更新
+                hostHeartbeatDao.updateHeartbeat(host, heartbeat);
+            }
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("更新主机心跳失败", host, e);
+        }
+    }
+
+    public Map<String, Long> getHostHeartbeats() {
+        List<HostHeartbeat> heartbeats = hostHeartbeatDao.selectAllHostHeartbeat();
+        Map<String, Long> heartbeatMap = Maps.newHashMap();
+        for (HostHeartbeat heartbeat : heartbeats) {
+            heartbeatMap.put(heartbeat.getHost(), heartbeat.getHeartbeat());
+        }
+        return heartbeatMap;
+    }
+}
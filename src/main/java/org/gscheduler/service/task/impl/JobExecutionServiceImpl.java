@@ -0,0 +1,104 @@
+package org.gscheduler.service.task.impl;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.gscheduler.dao.JobExecutionDao;
+import org.gscheduler.entity.JobExecution;
+import org.gscheduler.entity.JobExecutionHourly;
+import org.gscheduler.exception.SqlOperationException;
+import org.gscheduler.service.task.JobExecutionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务执行历史数据库操作
+ */
+@Service
+public class JobExecutionServiceImpl implements JobExecutionService {
+    private static final Logger logger = LoggerFactory.getLogger(JobExecutionServiceImpl.class);
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Resource
+    JobExecutionDao jobExecutionDao;
+
+    @Resource
+    SqlSessionFactory sqlSessionFactory;
+
+    public void batchSaveJobExecution(List<JobExecution> jobExecutions) {
+        if (CollectionUtils.isEmpty(jobExecutions)) {
+            return;
+        }
+        // SqlSessionTemplate在事务外每条语句单独提交,这里手动开启BATCH类型的SqlSession
+        SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+        try {
+            JobExecutionDao batchDao = sqlSession.getMapper(JobExecutionDao.class);
+            for (JobExecution jobExecution : jobExecutions) {
+                batchDao.insertJobExecution(jobExecution);
+            }
+            sqlSession.flushStatements();
+            sqlSession.commit();
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("批量写入任务执行记录失败", jobExecutions.size(), e);
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    public List<JobExecution> getRecentJobExecution(long jobId, int limit) {
+        Preconditions.checkArgument(jobId > 0 && limit > 0, "argument illegal");
+        List<JobExecution> jobExecutions = jobExecutionDao.selectRecentJobExecution(jobId, limit);
+        return CollectionUtils.isEmpty(jobExecutions) ? Collections.<JobExecution>emptyList() : jobExecutions;
+    }
+
+    public List<JobExecutionHourly> getJobExecutionHourly(long jobId, long hourTime) {
+        Preconditions.checkArgument(jobId > 0, "argument id illegal");
+        List<JobExecutionHourly> hourlies = jobExecutionDao.selectJobExecutionHourly(jobId, hourTime);
+        return CollectionUtils.isEmpty(hourlies) ? Collections.<JobExecutionHourly>emptyList() : hourlies;
+    }
+
+    public Long getMinStartTime(String host) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(host), "argument host illegal");
+        return jobExecutionDao.selectMinStartTime(host);
+    }
+
+    @Transactional
+    public int compactJobExecution(String host, long hourTime) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(host), "argument host illegal");
+        Preconditions.checkArgument(hourTime % HOUR_MILLIS == 0, "hourTime must be the start of an hour");
+        long endTime = hourTime + HOUR_MILLIS;
+        try {
+            List<JobExecutionHourly> hourlies = jobExecutionDao.selectHourlyAggregate(host, hourTime, endTime);
+            for (JobExecutionHourly hourly : hourlies) {
+                // 该小时已压缩过(执行记录写入延迟),累加
+                if (jobExecutionDao.updateJobExecutionHourly(hourly) == 0) {
+                    jobExecutionDao.insertJobExecutionHourly(hourly);
+                }
+            }
+            int deleted = jobExecutionDao.deleteJobExecution(host, hourTime, endTime);
+            logger.info("compact job execution,host:{},hourTime:{},jobs:{},deleted:{}", host, hourTime,
+                    hourlies.size(), deleted);
+            return deleted;
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("压缩任务执行记录失败", host, hourTime, e);
+        }
+    }
+
+    public int removeJobExecutionHourly(long hourTime) {
+        try {
+            return jobExecutionDao.deleteJobExecutionHourly(hourTime);
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("删除任务执行小时汇总失败", hourTime, e);
+        }
+    }
+}
@@ -1,25 +1,46 @@
 package org.gscheduler.service.task.impl;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.zookeeper.CreateMode;
 import org.gscheduler.commons.ZkHelper;
+import org.gscheduler.dao.JobHostDao;
 import org.gscheduler.dao.JobInfoDao;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecuteState;
 import org.gscheduler.entity.JobInfo;
+import org.gscheduler.entity.JobInfoTombstone;
 import org.gscheduler.exception.SqlOperationException;
+import org.gscheduler.service.executor.JobDag;
+import org.gscheduler.service.executor.JobEventBus;
+import org.gscheduler.service.executor.JobInfoCache;
 import org.gscheduler.service.executor.JobListener;
 import org.gscheduler.service.executor.JobManager;
+import org.gscheduler.service.executor.JobNodeCodec;
+import org.gscheduler.service.executor.JobTriggerEvent;
 import org.gscheduler.service.task.JobInfoService;
 import org.gscheduler.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 任务调度数据库操作实体类
@@ -31,12 +52,27 @@ public class JobInfoServiceImpl implements JobInfoService {
     @Resource
     JobInfoDao jobInfoDao;
 
+    @Resource
+    JobHostDao jobHostDao;
+
+    @Resource
+    SqlSessionFactory sqlSessionFactory;
+
     @Resource
     ZkHelper zkHelper;
 
     @Resource
     JobManager jobManager;
 
+    @Resource
+    JobEventBus jobEventBus;
+
+    @Resource
+    JobInfoCache jobInfoCache;
+
+    @Resource
+    JobNodeCodec jobNodeCodec;
+
     public List<JobInfo> getAllJobInfo() {
         List<JobInfo> jobInfoList = jobInfoDao.selectAllJobInfo();
 
@@ -44,18 +80,34 @@ public class JobInfoServiceImpl implements JobInfoService {
         return CollectionUtils.isEmpty(jobInfoList) ? Collections.<JobInfo>emptyList() : jobInfoList;
     }
 
-    public List<JobInfo> getLocalJobInfo() {
-        String hostname = Utils.getHostName();
-        List<JobInfo> jobInfoList = jobInfoDao.selectJobInfoByHostname(hostname);
+    public List<JobInfo> getJobInfoUpdatedSince(Date updateTime) {
+        Preconditions.checkNotNull(updateTime, "argument updateTime illegal");
+        List<JobInfo> jobInfoList = jobInfoDao.selectJobInfoUpdatedSince(updateTime);
 
         return CollectionUtils.isEmpty(jobInfoList) ? Collections.<JobInfo>emptyList() : jobInfoList;
     }
 
-    public List<JobInfo> getJobInfoContainHostname() {
-        String hostname = Utils.getHostName();
-        List<JobInfo> jobInfos = jobInfoDao.selectJobInfoContainHostname(hostname);
+    public List<JobInfoTombstone> getJobInfoTombstoneSince(Date deleteTime) {
+        Preconditions.checkNotNull(deleteTime, "argument deleteTime illegal");
+        List<JobInfoTombstone> tombstones = jobInfoDao.selectJobInfoTombstoneSince(deleteTime);
 
-        return CollectionUtils.isEmpty(jobInfos) ? Collections.<JobInfo>emptyList() : jobInfos;
+        return CollectionUtils.isEmpty(tombstones) ? Collections.<JobInfoTombstone>emptyList() : tombstones;
+    }
+
+    public void removeJobInfoTombstoneBefore(Date deleteTime) {
+        Preconditions.checkNotNull(deleteTime, "argument deleteTime illegal");
+        try {
+            jobInfoDao.deleteJobInfoTombstoneBefore(deleteTime);
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("清理任务删除记录失败", deleteTime, e);
+        }
+    }
+
+    public List<JobInfo> getSlowestJobInfo(int limit) {
+        Preconditions.checkArgument(limit > 0, "argument limit illegal");
+        List<JobInfo> jobInfoList = jobInfoDao.selectJobInfoOrderByDuration(limit);
+
+        return CollectionUtils.isEmpty(jobInfoList) ? Collections.<JobInfo>emptyList() : jobInfoList;
     }
 
     public List<JobInfo> getJobInfoForFailover(String executeHost) {
@@ -76,6 +128,14 @@ public class JobInfoServiceImpl implements JobInfoService {
         return jobInfo;
     }
 
+    public List<JobInfo> getJobInfoByIds(Collection<Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        List<JobInfo> jobInfos = jobInfoDao.selectJobInfoByIds(ids);
+        return CollectionUtils.isEmpty(jobInfos) ? Collections.<JobInfo>emptyList() : jobInfos;
+    }
+
     public JobInfo getJobInfoByJobName(String taskName) {
         Preconditions.checkArgument(StringUtils.isNotBlank(taskName), "argument taskName illegal");
         JobInfo jobInfo = null;
@@ -87,58 +147,29 @@ public class JobInfoServiceImpl implements JobInfoService {
         return jobInfo;
     }
 
-    public void modifyJobInfo(JobInfo jobInfo) {
+    @Transactional
+    public void modifyJobInfo(final JobInfo jobInfo) {
         Preconditions.checkNotNull(jobInfo, "argument jobInfo illegal.");
 
-        long id = jobInfo.getId();
+        final long id = jobInfo.getId();
         JobInfo oldSchedule = jobInfoDao.selectJobInfoById(id);
 
-        boolean isSubTask = false;
+        String jobName = StringUtils.isNotBlank(jobInfo.getJobName()) ? jobInfo.getJobName() : oldSchedule.getJobName();
         String parentName = jobInfo.getParentName();
-        //更新父task的sub_task字段
-        if (StringUtils.isNotBlank(parentName)) {
-            JobInfo parentSchedule = jobInfoDao.selectJobInfoByJobName(parentName);
-            //存在父任务,则更新父任务的sub_task,否则置本task的parentTask为空
-            if (parentSchedule != null) {
-                String idString = String.valueOf(id);
-                isSubTask = true;
-                JobInfo ts = new JobInfo();
-                ts.setId(parentSchedule.getId());
-
-                try {
-                    if (StringUtils.isBlank(parentSchedule.getSubJob())) {
-                        ts.setSubJob(idString);
-                        ts.setInitiateMode(parentSchedule.getInitiateMode());
-                        jobInfoDao.updateJobInfoById(ts);
-                    } else if (!parentSchedule.getSubJob().contains(idString)) {
-                        idString = parentSchedule.getSubJob() + ',' + idString;
-                        ts.setSubJob(idString);
-                        jobInfoDao.updateJobInfoById(ts);
-                    }
-                } catch (Exception e) {
-                    throw new SqlOperationException("更父任务的sub_task失败.", e);
-                }
-                logger.info("更新父任务:{}", parentName, idString);
-            } else {
-                //输入错误,不更新
-                jobInfo.setParentName("");
-            }
-        }
-
-        //check该子任务原来ParentName不为空的情况
-        if (StringUtils.isNotBlank(oldSchedule.getParentName()) && StringUtils.isBlank(parentName)) {
-            jobInfo.setParentName("");
+        //更新父task的sub_task字段,不存在的父任务忽略
+        if (parentName != null) {
+            checkJobDependency(jobName, parentName);
+            jobInfo.setParentName(linkParentJob(id, oldSchedule.getParentName(), parentName));
         }
+        boolean isSubTask = StringUtils.isNotBlank(jobInfo.getParentName());
 
         try {
             jobInfoDao.updateJobInfoById(jobInfo);
         } catch (RuntimeException e) {
             throw new SqlOperationException("更新定时任务JobInfo失败.", jobInfo, e);
         }
-
-        //如果是依赖任务,则直接返回.
-        if (isSubTask) {
-            return;
+        if (jobInfo.getHostList() != null && !StringUtils.equals(oldSchedule.getHostList(), jobInfo.getHostList())) {
+            modifyJobHost(id, jobInfo.getHostList());
         }
 
         boolean isParamChanged = !StringUtils.equals(oldSchedule.getConfigParameter(), jobInfo.getConfigParameter());
@@ -149,30 +180,175 @@ public class JobInfoServiceImpl implements JobInfoService {
         logger.info("JobInfo update,Param:{},Cron:{},ExeHost:{},InitMode:{}"
                 , isParamChanged, isCronChanged, isExeHostChanged, isInitModeChanged);
 
-        if (isParamChanged || isCronChanged || isExeHostChanged || isInitModeChanged) {
-            if (jobManager.getIsUsedZKListener()) {
-                logger.info("task changed update and notify zookeeper.name:{}", jobInfo.getJobName());
-                //FailExecuteHost参数不会被修改
-                jobInfo.setFailExecuteHost(oldSchedule.getFailExecuteHost());
-                notifyZooKeeper(jobInfo, JobManager.JobOperator.STOP_OR_START);
-            } else {
-                if (StringUtils.equals(jobInfo.getExecuteHost(), Utils.getHostName())
-                        && jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
-                    logger.info("local job restart job,name:{}", jobInfo.getJobName());
-                    jobManager.restartSchedule(id);
+        //依赖任务只失效缓存,不通知
+        final boolean isNotify = !isSubTask && (isParamChanged || isCronChanged || isExeHostChanged || isInitModeChanged);
+        //FailExecuteHost参数不会被修改
+        jobInfo.setFailExecuteHost(oldSchedule.getFailExecuteHost());
+        //提交后先失效缓存再通知,重启的任务和其他机器读到的都是修改后的配置
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                jobInfoCache.invalidate(id);
+                if (!isNotify) {
+                    return;
+                }
+                if (jobManager.getIsUsedZKListener()) {
+                    logger.info("task changed update and notify zookeeper.name:{}", jobInfo.getJobName());
+                    notifyZooKeeper(jobInfo, JobManager.JobOperator.STOP_OR_START);
+                } else {
+                    if (StringUtils.equals(jobInfo.getExecuteHost(), Utils.getHostName())
+                            && jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
+                        logger.info("local job restart job,name:{}", jobInfo.getJobName());
+                        jobManager.restartSchedule(id);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 检查修改后的依赖关系是否存在环
+     */
+    private void checkJobDependency(String jobName, String parentName) {
+        if (StringUtils.isBlank(parentName)) {
+            return;
+        }
+        JobDag jobDag = JobDag.build(getAllJobInfo());
+        jobDag.setParents(jobName, parentName);
+        Preconditions.checkArgument(!jobDag.hasCycle(), "依赖关系存在环,job:%s,parent:%s", jobName, parentName);
+    }
+
+    /**
+     * 根据parent_name更新父任务的sub_job:新增的父任务加入本任务id,移除的父任务删除本任务id
+     *
+     * @return 实际存在的父任务名, 逗号分隔
+     */
+    private String linkParentJob(long id, String oldParentName, String parentName) {
+        Set<String> parentNames = JobDag.splitParentName(parentName);
+        List<String> linkedParents = Lists.newArrayList();
+        String idString = String.valueOf(id);
+        try {
+            for (String name : parentNames) {
+                JobInfo parentSchedule = jobInfoDao.selectJobInfoByJobName(name);
+                if (null == parentSchedule) {
+                    //输入错误,不更新
+                    logger.warn("parent job not exist,name:{}", name);
+                    continue;
+                }
+                linkedParents.add(name);
+                Set<String> subJobs = splitSubJob(parentSchedule.getSubJob());
+                if (subJobs.add(idString)) {
+                    modifySubJob(parentSchedule, Joiner.on(',').join(subJobs));
+                }
+            }
+            for (String name : JobDag.splitParentName(oldParentName)) {
+                if (parentNames.contains(name)) {
+                    continue;
+                }
+                JobInfo parentSchedule = jobInfoDao.selectJobInfoByJobName(name);
+                if (null == parentSchedule) {
+                    continue;
+                }
+                Set<String> subJobs = splitSubJob(parentSchedule.getSubJob());
+                if (subJobs.remove(idString)) {
+                    modifySubJob(parentSchedule, Joiner.on(',').join(subJobs));
                 }
             }
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("更父任务的sub_task失败.", id, parentName, e);
         }
+        logger.info("更新父任务:{},子任务:{}", linkedParents, id);
+        return Joiner.on(',').join(linkedParents);
+    }
+
+    private Set<String> splitSubJob(String subJob) {
+        if (StringUtils.isBlank(subJob)) {
+            return Sets.newLinkedHashSet();
+        }
+        return Sets.newLinkedHashSet(Splitter.on(',').omitEmptyStrings().trimResults().split(subJob));
+    }
+
+    private void modifySubJob(final JobInfo parentSchedule, final String subJob) {
+        JobInfo ts = new JobInfo();
+        ts.setId(parentSchedule.getId());
+        ts.setSubJob(subJob);
+        ts.setInitiateMode(parentSchedule.getInitiateMode());
+        jobInfoDao.updateJobInfoById(ts);
+
+        //通知父任务的执行主机更新子任务列表
+        parentSchedule.setSubJob(subJob);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                jobInfoCache.invalidate(parentSchedule.getId());
+                if (jobManager.getIsUsedZKListener()) {
+                    notifyZooKeeper(parentSchedule, JobManager.JobOperator.NONE);
+                } else {
+                    jobManager.refreshSubJob(parentSchedule.getId(), subJob);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按host_list重建job_host中该任务的候选主机
+     */
+    private void modifyJobHost(long id, String hostList) {
+        List<String> hosts = Utils.splitHostList(hostList);
+        try {
+            jobHostDao.deleteJobHostsByJobId(id);
+            if (!hosts.isEmpty()) {
+                jobHostDao.insertJobHosts(id, hosts);
+            }
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("更新任务候选主机job_host失败.", id, hostList, e);
+        }
+    }
+
+    /**
+     * 在当前事务提交后执行,没有事务时立即执行.
+     * 缓存失效和zk/本机通知放在提交之后,收到通知的机器和线程读到的是已提交的数据
+     */
+    private void afterCommit(final Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+
+    public int backfillJobHost() {
+        List<JobInfo> jobInfos = jobInfoDao.selectJobInfoWithoutHost();
+        int count = 0;
+        for (JobInfo jobInfo : jobInfos) {
+            List<String> hosts = Utils.splitHostList(jobInfo.getHostList());
+            if (hosts.isEmpty()) {
+                continue;
+            }
+            try {
+                jobHostDao.insertJobHosts(jobInfo.getId(), hosts);
+                count++;
+            } catch (RuntimeException e) {
+                // 其他机器同时启动补全了同一个任务,主键冲突
+                logger.warn("backfill job_host failed,id:{},hostList:{}", jobInfo.getId(), jobInfo.getHostList(), e);
+            }
+        }
+        logger.info("backfill job_host,jobs:{},filled:{}", jobInfos.size(), count);
+        return count;
     }
 
     private void notifyZooKeeper(JobInfo jobInfo, JobManager.JobOperator operator) {
         if (jobInfo.getFailExecuteHost() == null) {
             jobInfo.setFailExecuteHost("");
         }
-        String jobJson = JobListener.createJobJson(jobInfo, operator);
         String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
 
-        zkHelper.getDefaultZKClient().setData(nodePath, jobJson.getBytes());
+        zkHelper.getDefaultZKClient().setData(nodePath, jobNodeCodec.encode(jobInfo, operator));
     }
 
     public void stopJobInfo(long id) {
@@ -207,81 +383,95 @@ public class JobInfoServiceImpl implements JobInfoService {
         }
     }
 
-    public void modifySubJobVersion(long id) {
-        Preconditions.checkNotNull(id > 0, "argument jobInfo illegal.");
-        logger.info("notify sub task:{}", id);
+    public void notifySubJob(JobTriggerEvent event) {
+        Preconditions.checkArgument(event.getId() > 0, "argument id illegal");
+        logger.info("notify sub job:{}", event);
         if (jobManager.getIsUsedZKListener()) {
-            //zk push通知
-        } else {
-            //db pull通知
-            try {
-                jobInfoDao.updateJobVersion(id);
-            } catch (RuntimeException e) {
-                throw new SqlOperationException("添加定时任务JobInfo失败.", id, e);
+            //zk push通知,子任务的执行主机监听到触发节点后执行并删除节点
+            JobInfo jobInfo = jobInfoDao.selectJobInfoById(event.getId());
+            if (null == jobInfo) {
+                logger.warn("sub job not exist,id:{}", event.getId());
+                return;
             }
+            String triggerJson = JobListener.createTriggerJson(jobInfo, event);
+            zkHelper.getDefaultZKClient().createNode(JobListener.JOB_TRIGGER_PATH + "/trigger-",
+                    CreateMode.PERSISTENT_SEQUENTIAL, triggerJson.getBytes());
+        } else {
+            //进程内通知
+            jobEventBus.post(event);
         }
     }
 
-    public void saveJobInfo(JobInfo jobInfo) {
+    @Transactional
+    public void saveJobInfo(final JobInfo jobInfo) {
         Preconditions.checkNotNull(jobInfo, "argument jobInfo illegal.");
+        checkJobDependency(jobInfo.getJobName(), jobInfo.getParentName());
         try {
             jobInfoDao.insertJobInfo(jobInfo);
         } catch (RuntimeException e) {
             throw new SqlOperationException("添加定时任务JobInfo失败.", jobInfo, e);
         }
+        modifyJobHost(jobInfo.getId(), jobInfo.getHostList());
 
-        //如果是子任务,直接返回
+        //如果是子任务,更新父任务的sub_job后返回
         if (StringUtils.isNotBlank(jobInfo.getParentName())) {
+            linkParentJob(jobInfo.getId(), "", jobInfo.getParentName());
             logger.info("保存JobInfo为子任务,不做任何工作,task:{}", jobInfo.toString());
             return;
         }
 
-        if (jobManager.getIsUsedZKListener()) {
-            //新增一个job,注册到zk上,如果是本地任务执行任务,添加监听
-            String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
-            logger.info("add job,update zk,jobSchedule:{},path:{}", jobInfo.toString(), nodePath);
-
-            String jobJson = JobListener.createJobJson(jobInfo, JobManager.JobOperator.START);
-            zkHelper.getDefaultZKClient().createNode(nodePath, CreateMode.PERSISTENT, jobJson.getBytes());
-        } else {
-            if (StringUtils.equals(jobInfo.getExecuteHost(), Utils.getHostName())
-                    && jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
-                logger.info("start local job,name:{}", jobInfo.getJobName());
-                jobManager.startSchedule(jobInfo.getId());
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                if (jobManager.getIsUsedZKListener()) {
+                    //新增一个job,注册到zk上,如果是本地任务执行任务,添加监听
+                    String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
+                    logger.info("add job,update zk,jobSchedule:{},path:{}", jobInfo.toString(), nodePath);
+
+                    zkHelper.getDefaultZKClient().createNode(nodePath, CreateMode.PERSISTENT,
+                            jobNodeCodec.encode(jobInfo, JobManager.JobOperator.START));
+                } else {
+                    if (StringUtils.equals(jobInfo.getExecuteHost(), Utils.getHostName())
+                            && jobInfo.getInitiateMode() == JobManager.AVAILABLE) {
+                        logger.info("start local job,name:{}", jobInfo.getJobName());
+                        jobManager.startSchedule(jobInfo.getId());
+                    }
+                }
             }
-        }
+        });
     }
 
-    public void removeJobInfo(long id) {
+    @Transactional
+    public void removeJobInfo(final long id) {
         Preconditions.checkArgument(id > 0, "argument id illegal");
         logger.info("select Task by id:{}", id);
-        JobInfo jobInfo = jobInfoDao.selectJobInfoById(id);
+        final JobInfo jobInfo = jobInfoDao.selectJobInfoById(id);
         try {
             jobInfoDao.deleteJobInfoById(id);
+            jobHostDao.deleteJobHostsByJobId(id);
+            jobInfoDao.insertJobInfoTombstone(id, jobInfo.getJobName());
         } catch (Exception e) {
             throw new SqlOperationException("删除定时任务数据失败.", id, e);
         }
 
-        if (jobManager.getIsUsedZKListener()) {
-            String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
-            logger.info("remove node,update zk,task:{},path:{}", jobInfo.toString(), nodePath);
-            //移除节点
-            zkHelper.getDefaultZKClient().deleteNode(nodePath);
-        } else {
-            if (StringUtils.equals(jobInfo.getExecuteHost(), Utils.getHostName())) {
-                logger.info("remove local job,name:{}", jobInfo.getJobName());
-                jobManager.killSchedule(jobInfo.getId());
+        //删除和删除记录一起提交后再通知,其他机器增量刷新时能读到删除记录
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                jobInfoCache.invalidate(id);
+                if (jobManager.getIsUsedZKListener()) {
+                    String nodePath = JobListener.SERVICE_UPDATE_PATH + "/" + jobInfo.getJobName();
+                    logger.info("remove node,update zk,task:{},path:{}", jobInfo.toString(), nodePath);
+                    //移除节点
+                    zkHelper.getDefaultZKClient().deleteNode(nodePath);
+                } else {
+                    if (StringUtils.equals(jobInfo.getExecuteHost(), Utils.getHostName())) {
+                        logger.info("remove local job,name:{}", jobInfo.getJobName());
+                        jobManager.killSchedule(jobInfo.getId());
+                    }
+                }
             }
-        }
-    }
-
-    public void modifyVersion(long id, long value) {
-        Preconditions.checkArgument(id > 0 && value > 0, "argument id illegal");
-        try {
-            jobInfoDao.updateVersion(id, value);
-        } catch (RuntimeException e) {
-            throw new SqlOperationException("version字段自增", id);
-        }
+        });
     }
 
     public void modifyFailExecuteHost(long id, String host) {
@@ -292,53 +482,83 @@ public class JobInfoServiceImpl implements JobInfoService {
         } catch (RuntimeException e) {
             throw new SqlOperationException("更新fail_execute_host失败.", id);
         }
+        jobInfoCache.invalidate(id);
     }
 
-    public void modifyExecuteStatus(long id, short executeStatus) {
-        Preconditions.checkArgument(id > 0, "argument id illegal");
-        Preconditions.checkArgument(executeStatus >= -1 && executeStatus <= 2, "executeStatus illegal.");
+    public void moveJob(JobInfo jobInfo, String executeHost) {
+        Preconditions.checkNotNull(jobInfo, "argument jobInfo illegal.");
+        Preconditions.checkArgument(StringUtils.isNotBlank(executeHost), "argument executeHost illegal");
+        long id = jobInfo.getId();
         try {
-            jobInfoDao.updateExecuteStatus(id, executeStatus);
+            jobInfoDao.updateExecuteHost(id, executeHost);
         } catch (RuntimeException e) {
-            throw new SqlOperationException("executeStatus(任务执行情况字段)失败", id, executeStatus);
+            throw new SqlOperationException("迁移任务执行主机失败.", id, executeHost, e);
+        }
+        jobInfoCache.invalidate(id);
+        jobInfo.setExecuteHost(executeHost);
+        jobInfo.setFailExecuteHost("");
+        if (jobManager.getIsUsedZKListener()) {
+            notifyZooKeeper(jobInfo, JobManager.JobOperator.STOP_OR_START);
         }
     }
 
-    public void modifyExecuteTime(long id, String executeTime) {
+    public boolean claimFailover(long id, long version, String host) {
         Preconditions.checkArgument(id > 0, "argument id illegal");
-        Preconditions.checkArgument(StringUtils.isNotBlank(executeTime), "executeTime illegal.");
-
+        Preconditions.checkArgument(StringUtils.isNotBlank(host), "argument host illegal");
+        Integer count;
         try {
-            jobInfoDao.updateExecuteTime(id, executeTime);
+            count = jobInfoDao.compareAndSetFailExecuteHost(id, version, host);
         } catch (RuntimeException e) {
-            logger.error("更新任务时间信息失败,executeTime:{}", executeTime);
-            throw new SqlOperationException("更新任务时间信息失败", id, e);
+            throw new SqlOperationException("认领failover任务失败.", id, host, e);
         }
+        jobInfoCache.invalidate(id);
+        return null != count && count > 0;
     }
 
-    @Override
-    public void modifyLastAndNextExecuteTime(long id, Date lastExecuteTime, Date nextExecuteTime) {
+    public void modifyExecuteStatus(long id, ExecuteStatus executeStatus) {
         Preconditions.checkArgument(id > 0, "argument id illegal");
-        Preconditions.checkArgument(lastExecuteTime != null, "lastExecuteTime illegal.");
-        Preconditions.checkArgument(nextExecuteTime != null, "nextExecuteTime illegal.");
+        Preconditions.checkNotNull(executeStatus, "executeStatus illegal.");
+        try {
+            jobInfoDao.updateExecuteStatus(id, executeStatus);
+        } catch (RuntimeException e) {
+            throw new SqlOperationException("executeStatus(任务执行情况字段)失败", id, executeStatus);
+        }
+    }
 
+    @Override
+    public void batchModifyExecuteState(List<JobExecuteState> executeStates) {
+        if (CollectionUtils.isEmpty(executeStates)) {
+            return;
+        }
+        // SqlSessionTemplate在事务外每条语句单独提交,这里手动开启BATCH类型的SqlSession
+        SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
         try {
-            jobInfoDao.updateLastAndNextExecuteTime(id, Utils.dateToString(lastExecuteTime),
-                    Utils.dateToString(nextExecuteTime));
+            JobInfoDao batchDao = sqlSession.getMapper(JobInfoDao.class);
+            for (JobExecuteState executeState : executeStates) {
+                batchDao.updateExecuteState(executeState);
+            }
+            sqlSession.flushStatements();
+            sqlSession.commit();
         } catch (RuntimeException e) {
-            logger.error("更新任务时间信息失败,lastExecuteTime:{},nextExecuteTime:{}", lastExecuteTime, nextExecuteTime);
-            throw new SqlOperationException("更新任务时间信息失败", id, e);
+            throw new SqlOperationException("批量更新任务执行状态失败", executeStates.size(), e);
+        } finally {
+            sqlSession.close();
         }
     }
 
     public void modifyInitiateMode(long id, short initiateMode) {
         Preconditions.checkArgument(id > 0, "argument id illegal");
         Preconditions.checkArgument(initiateMode >= 0 && initiateMode <= 1, "initiateMode illegal.");
+        Integer count;
         try {
-            jobInfoDao.updateInitiateMode(id, initiateMode);
+            count = jobInfoDao.updateInitiateMode(id, initiateMode);
         } catch (RuntimeException e) {
             throw new SqlOperationException("更新initiateMode(任务启用情况字段)失败", id, initiateMode);
         }
+        // 每次任务启动都会调用,值未变化时不失效缓存
+        if (null != count && count > 0) {
+            jobInfoCache.invalidate(id);
+        }
     }
 
     public JobInfo getJobInfoByClassName(String className) {
@@ -1,6 +1,8 @@
 package org.gscheduler.utils;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -9,7 +11,10 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 public class Utils {
     private static final Logger logger = LoggerFactory.getLogger(Utils.class);
@@ -95,6 +100,18 @@ public class Utils {
         return dateTime.toString(format);
     }
 
-
+    /**
+     * 拆分逗号分隔的主机列表,去除空白和重复
+     *
+     * @param hostList host1,host2
+     * @return 主机名列表,hostList为空时返回空列表
+     */
+    public static List<String> splitHostList(String hostList) {
+        if (StringUtils.isBlank(hostList)) {
+            return Collections.emptyList();
+        }
+        Iterable<String> hosts = Splitter.on(',').omitEmptyStrings().trimResults().split(hostList);
+        return Lists.newArrayList(new LinkedHashSet<>(Lists.newArrayList(hosts)));
+    }
 
 }
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -22,6 +23,7 @@ import java.util.List;
 @Controller
 public class JobInfoController {
     private static final Logger logger = LoggerFactory.getLogger(JobInfoController.class);
+    private static final String SORT_SLOWEST = "slowest";
 
     @Resource
     JobInfoService jobInfoService;
@@ -29,12 +31,19 @@ public class JobInfoController {
     @Resource
     JobManager jobManager;
 
-    // 列出所有任务
+    // 列出所有任务,sort=slowest时按最近一次执行时长倒序列出前limit个
     @RequestMapping(value = "/job/list")
-    public ModelAndView jobList() {
+    public ModelAndView jobList(@RequestParam(value = "sort", required = false) String sort,
+                                @RequestParam(value = "limit", required = false, defaultValue = "100") int limit) {
         ModelAndView model = new ModelAndView("job_list");
-        List<JobInfo> jobList = jobInfoService.getAllJobInfo();
+        List<JobInfo> jobList;
+        if (SORT_SLOWEST.equals(sort)) {
+            jobList = jobInfoService.getSlowestJobInfo(Math.max(1, limit));
+        } else {
+            jobList = jobInfoService.getAllJobInfo();
+        }
         model.addObject("jobList", jobList);
+        model.addObject("sort", sort);
         return model;
     }
 
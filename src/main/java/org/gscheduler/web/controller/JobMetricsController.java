@@ -0,0 +1,174 @@
+package org.gscheduler.web.controller;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringUtils;
+import org.gscheduler.service.metrics.JobMetrics;
+import org.gscheduler.service.metrics.LatencyHistogram;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本机任务执行指标,提供json和Prometheus文本两种格式
+ */
+@Controller
+public class JobMetricsController {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    @Resource
+    JobMetrics jobMetrics;
+
+    // 所有任务的指标
+    @ResponseBody
+    @RequestMapping(value = "/job/metrics", produces = "application/json;charset=UTF-8")
+    public String metrics() {
+        List<Map<String, Object>> result = Lists.newArrayList();
+        for (JobMetrics.JobStats jobStats : jobMetrics.getAllJobStats()) {
+            result.add(toJsonMap(jobStats));
+        }
+        return JSON.toJSONString(result);
+    }
+
+    // 单个任务的指标
+    @ResponseBody
+    @RequestMapping(value = "/job/metrics/{id}", produces = "application/json;charset=UTF-8")
+    public String metrics(@PathVariable("id") long id) {
+        JobMetrics.JobStats jobStats = jobMetrics.getJobStats(id);
+        if (null == jobStats) {
+            return "{}";
+        }
+        return JSON.toJSONString(toJsonMap(jobStats));
+    }
+
+    // 本次启动的耗时,单位ms,未发生时为-1
+    @ResponseBody
+    @RequestMapping(value = "/job/metrics/startup", produces = "application/json;charset=UTF-8")
+    public String startup() {
+        JobMetrics.StartupStats startupStats = jobMetrics.getStartupStats();
+        Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("started", startupStats.getStartedCount());
+        map.put("failed", startupStats.getFailedCount());
+        map.put("timeToAllScheduled", startupStats.getTimeToAllScheduled());
+        map.put("timeToFirstFire", startupStats.getTimeToFirstFire());
+        return JSON.toJSONString(map);
+    }
+
+    // 本机failover的统计,接管时长单位ms
+    @ResponseBody
+    @RequestMapping(value = "/job/metrics/failover", produces = "application/json;charset=UTF-8")
+    public String failover() {
+        JobMetrics.FailoverStats failoverStats = jobMetrics.getFailoverStats();
+        Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("scheduled", failoverStats.getScheduledCount());
+        map.put("cancelled", failoverStats.getCancelledCount());
+        map.put("takeoverLatency", toJsonMap(failoverStats.getTakeoverLatency()));
+        return JSON.toJSONString(map);
+    }
+
+    // Prometheus文本格式,执行时长,触发延迟和failover接管时长为summary,执行和failover次数为counter,启动耗时为gauge
+    @ResponseBody
+    @RequestMapping(value = "/job/metrics/prometheus", produces = "text/plain;version=0.0.4;charset=UTF-8")
+    public String prometheus() {
+        List<JobMetrics.JobStats> allJobStats = jobMetrics.getAllJobStats();
+        StringBuilder builder = new StringBuilder(256 + allJobStats.size() * 1024);
+        builder.append("# HELP gscheduler_job_duration_ms Job execution duration in milliseconds.\n");
+        builder.append("# TYPE gscheduler_job_duration_ms summary\n");
+        for (JobMetrics.JobStats jobStats : allJobStats) {
+            appendSummary(builder, "gscheduler_job_duration_ms", jobStats, jobStats.getDuration());
+        }
+        builder.append("# HELP gscheduler_job_trigger_lag_ms Actual start time minus planned fire time in milliseconds.\n");
+        builder.append("# TYPE gscheduler_job_trigger_lag_ms summary\n");
+        for (JobMetrics.JobStats jobStats : allJobStats) {
+            appendSummary(builder, "gscheduler_job_trigger_lag_ms", jobStats, jobStats.getTriggerLag());
+        }
+        builder.append("# HELP gscheduler_job_executions_total Job executions by outcome.\n");
+        builder.append("# TYPE gscheduler_job_executions_total counter\n");
+        for (JobMetrics.JobStats jobStats : allJobStats) {
+            appendSample(builder, "gscheduler_job_executions_total", jobStats, "outcome", "success",
+                    jobStats.getSuccessCount());
+            appendSample(builder, "gscheduler_job_executions_total", jobStats, "outcome", "failure",
+                    jobStats.getFailureCount());
+        }
+        JobMetrics.StartupStats startupStats = jobMetrics.getStartupStats();
+        builder.append("# HELP gscheduler_startup_scheduled_ms Time from startup to all jobs scheduled in milliseconds.\n");
+        builder.append("# TYPE gscheduler_startup_scheduled_ms gauge\n");
+        builder.append("gscheduler_startup_scheduled_ms ").append(startupStats.getTimeToAllScheduled()).append('\n');
+        builder.append("# HELP gscheduler_startup_first_fire_ms Time from startup to the first job fire in milliseconds.\n");
+        builder.append("# TYPE gscheduler_startup_first_fire_ms gauge\n");
+        builder.append("gscheduler_startup_first_fire_ms ").append(startupStats.getTimeToFirstFire()).append('\n');
+        JobMetrics.FailoverStats failoverStats = jobMetrics.getFailoverStats();
+        LatencyHistogram takeoverLatency = failoverStats.getTakeoverLatency();
+        builder.append("# HELP gscheduler_failover_takeover_ms Time from host down detected to job taken over in milliseconds.\n");
+        builder.append("# TYPE gscheduler_failover_takeover_ms summary\n");
+        for (double quantile : QUANTILES) {
+            builder.append("gscheduler_failover_takeover_ms{quantile=\"").append(quantile).append("\"} ")
+                    .append(takeoverLatency.getValueAtPercentile(quantile * 100)).append('\n');
+        }
+        builder.append("gscheduler_failover_takeover_ms_sum ").append(takeoverLatency.getSum()).append('\n');
+        builder.append("gscheduler_failover_takeover_ms_count ").append(takeoverLatency.getCount()).append('\n');
+        builder.append("# HELP gscheduler_failover_total Host down failovers by outcome.\n");
+        builder.append("# TYPE gscheduler_failover_total counter\n");
+        builder.append("gscheduler_failover_total{outcome=\"scheduled\"} ").append(failoverStats.getScheduledCount()).append('\n');
+        builder.append("gscheduler_failover_total{outcome=\"cancelled\"} ").append(failoverStats.getCancelledCount()).append('\n');
+        return builder.toString();
+    }
+
+    private static Map<String, Object> toJsonMap(JobMetrics.JobStats jobStats) {
+        Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("id", jobStats.getId());
+        map.put("jobName", jobStats.getJobName());
+        map.put("success", jobStats.getSuccessCount());
+        map.put("failure", jobStats.getFailureCount());
+        map.put("lastStartTime", jobStats.getLastStartTime());
+        map.put("lastDuration", jobStats.getLastDuration());
+        map.put("duration", toJsonMap(jobStats.getDuration()));
+        map.put("triggerLag", toJsonMap(jobStats.getTriggerLag()));
+        return map;
+    }
+
+    private static Map<String, Object> toJsonMap(LatencyHistogram histogram) {
+        Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("count", histogram.getCount());
+        map.put("mean", Math.round(histogram.getMean()));
+        map.put("p50", histogram.getValueAtPercentile(50));
+        map.put("p90", histogram.getValueAtPercentile(90));
+        map.put("p99", histogram.getValueAtPercentile(99));
+        map.put("p999", histogram.getValueAtPercentile(99.9));
+        map.put("max", histogram.getMax());
+        return map;
+    }
+
+    private static void appendSummary(StringBuilder builder, String name, JobMetrics.JobStats jobStats,
+                                      LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            appendSample(builder, name, jobStats, "quantile", Double.toString(quantile),
+                    histogram.getValueAtPercentile(quantile * 100));
+        }
+        appendSample(builder, name + "_sum", jobStats, null, null, histogram.getSum());
+        appendSample(builder, name + "_count", jobStats, null, null, histogram.getCount());
+    }
+
+    private static void appendSample(StringBuilder builder, String name, JobMetrics.JobStats jobStats,
+                                     String labelName, String labelValue, long value) {
+        builder.append(name).append("{job_id=\"").append(jobStats.getId())
+                .append("\",job_name=\"").append(escapeLabel(jobStats.getJobName())).append('"');
+        if (labelName != null) {
+            builder.append(',').append(labelName).append("=\"").append(labelValue).append('"');
+        }
+        builder.append("} ").append(value).append('\n');
+    }
+
+    private static String escapeLabel(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -12,9 +12,12 @@ CREATE TABLE job_info(
   host_list VARCHAR(255) NOT NULL DEFAULT '' COMMENT '主机列表',
   execute_host VARCHAR(255) NOT NULL DEFAULT '' COMMENT '指定执行的机器',
   fail_execute_host VARCHAR(255) NOT NULL DEFAULT '' COMMENT '指定执行的机器',
+  failover_tolerate_time INT UNSIGNED NOT NULL DEFAULT 0 COMMENT '执行机器down掉后等待多久failover,毫秒,0使用zookeeper.failover.tolerate.time',
   version BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '实时更新状态,保证在运行状态,乐观锁',
   execute_status TINYINT NOT NULL DEFAULT -1 COMMENT '任务执行情况,-1:未执行,0:执行失败,1:运行中,2:成功',
-  execute_time  VARCHAR(10) NOT NULL DEFAULT '0' COMMENT '最近任务执行时长,单位秒',
+  last_duration_ms BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最近一次执行时长,毫秒',
+  execute_start_time BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最近一次执行开始时间,毫秒',
+  execute_end_time BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最近一次执行结束时间,毫秒,执行中时小于开始时间',
   last_execute_time TIMESTAMP NOT NULL DEFAULT '1970-01-01 00:00:00' COMMENT '上一次执行时间',
   next_execute_time TIMESTAMP NOT NULL DEFAULT '1970-01-01 00:00:00' COMMENT '下一次执行时间',
   description VARCHAR(255) NOT NULL DEFAULT '' COMMENT '任务描述',
@@ -22,8 +25,67 @@ CREATE TABLE job_info(
   PRIMARY KEY (id),
   UNIQUE KEY uniq_job_name (job_name)
 );
+CREATE INDEX idx_execute_host ON job_info (execute_host);
+CREATE INDEX idx_last_duration_ms ON job_info (last_duration_ms);
+CREATE INDEX idx_update_time ON job_info (update_time);
+
+DROP TABLE IF EXISTS job_info_tombstone;
+CREATE TABLE job_info_tombstone(
+  job_id INT UNSIGNED NOT NULL COMMENT '已删除的任务id',
+  job_name VARCHAR(30) NOT NULL DEFAULT '' COMMENT '任务执行名称',
+  delete_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '删除时间',
+  PRIMARY KEY (job_id)
+);
+CREATE INDEX idx_delete_time ON job_info_tombstone (delete_time);
+
+DROP TABLE IF EXISTS job_host;
+CREATE TABLE job_host(
+  job_id INT UNSIGNED NOT NULL COMMENT '任务id',
+  host VARCHAR(255) NOT NULL COMMENT '主机名,对应job_info.host_list中的一个',
+  PRIMARY KEY (job_id, host)
+);
+CREATE INDEX idx_host_job_id ON job_host (host, job_id);
+
+DROP TABLE IF EXISTS host_heartbeat;
+CREATE TABLE host_heartbeat(
+  host VARCHAR(255) NOT NULL COMMENT '主机名',
+  heartbeat BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最近一次心跳时间,毫秒',
+  update_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最后更新时间',
+  PRIMARY KEY (host)
+);
+
+DROP TABLE IF EXISTS job_execution;
+CREATE TABLE job_execution(
+  id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键id',
+  job_id INT UNSIGNED NOT NULL COMMENT '任务id',
+  host VARCHAR(255) NOT NULL DEFAULT '' COMMENT '执行主机',
+  start_time BIGINT UNSIGNED NOT NULL COMMENT '开始时间,毫秒',
+  end_time BIGINT UNSIGNED NOT NULL COMMENT '结束时间,毫秒',
+  duration_ms BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '执行时长,毫秒',
+  outcome TINYINT NOT NULL COMMENT '执行结果,0:执行失败,2:成功',
+  error_summary VARCHAR(255) NOT NULL DEFAULT '' COMMENT '失败时的异常摘要',
+  PRIMARY KEY (id)
+);
+CREATE INDEX idx_job_id_start_time ON job_execution (job_id, start_time);
+CREATE INDEX idx_host_start_time ON job_execution (host, start_time);
+
+DROP TABLE IF EXISTS job_execution_hourly;
+CREATE TABLE job_execution_hourly(
+  job_id INT UNSIGNED NOT NULL COMMENT '任务id',
+  hour_time BIGINT UNSIGNED NOT NULL COMMENT '小时开始时间,毫秒',
+  host VARCHAR(255) NOT NULL COMMENT '执行主机',
+  run_count INT UNSIGNED NOT NULL DEFAULT 0 COMMENT '执行次数',
+  success_count INT UNSIGNED NOT NULL DEFAULT 0 COMMENT '成功次数',
+  failure_count INT UNSIGNED NOT NULL DEFAULT 0 COMMENT '失败次数',
+  total_duration_ms BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '执行时长之和,毫秒',
+  max_duration_ms BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最大执行时长,毫秒',
+  PRIMARY KEY (job_id, hour_time, host)
+);
+CREATE INDEX idx_hour_time ON job_execution_hourly (hour_time);
 
 -- 将localhost名改为本机名,让任务在本地运行
  INSERT INTO job_info (job_name, job_class, crontab, initiate_mode, host_list, execute_host, execute_status , description)
      VALUES ('demo_job','demoJob','30 */5 * * * *',1,'localhost','localhost','1','测试任务'),
-       ('test job','testJob','1/min 3/min',1,'localhost','localhost',1,'my_test_job');
\ No newline at end of file
+       ('test job','testJob','1/min 3/min',1,'localhost','localhost',1,'my_test_job');
+ INSERT INTO job_host (job_id, host)
+     VALUES (1,'localhost'),(2,'localhost');
\ No newline at end of file
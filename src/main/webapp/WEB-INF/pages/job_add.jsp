@@ -64,6 +64,10 @@
                         <label for="executeHost">当前执行主机:<code>eg:l-sms.monitor1.wap.cn1</code></label>
                         <input type="text" class="form-control" name="executeHost" id="executeHost" >
                     </div>
+                    <div class="form-group">
+                        <label for="failoverTolerateTime">failover等待时间:<code>毫秒,0使用默认配置</code></label>
+                        <input type="text" class="form-control" name="failoverTolerateTime" id="failoverTolerateTime" >
+                    </div>
                     <div class="form-group">
                         &nbsp;&nbsp;&nbsp;&nbsp;
                         <button type="submit" class="btn btn-success">提 交</button>
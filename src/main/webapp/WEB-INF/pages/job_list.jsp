@@ -41,7 +41,7 @@
                         <th>执行机器</th>
                         <th>启用</th>
                         <th>状态</th>
-                        <th>时长</th>
+                        <th><a href="${ctx}/job/list?sort=slowest">时长(ms)</a></th>
                         <th>上次执行时间</th>
                         <th>下次执行时间</th>
                         <th>操作</th>
@@ -62,14 +62,11 @@
                             </th>
                             <th>
                                 <c:choose>
-                                    <c:when test="${job.executeStatus == -1}">未执行</c:when>
-                                    <c:when test="${job.executeStatus == 0}">执行失败</c:when>
-                                    <c:when test="${job.executeStatus == 1}">运行中</c:when>
-                                    <c:when test="${job.executeStatus == 2}">成功</c:when>
+                                    <c:when test="${not empty job.executeStatus}">${job.executeStatus.description}</c:when>
                                     <c:otherwise>未知</c:otherwise>
                                 </c:choose>
                             </th>
-                            <th>${job.executeTime}</th>
+                            <th>${job.lastDurationMs}</th>
                             <th><fmt:formatDate value="${job.lastExecuteTime}" pattern="yyyy-MM-dd HH:mm:ss"/></th>
                             <th><fmt:formatDate value="${job.nextExecuteTime}" pattern="yyyy-MM-dd HH:mm:ss"/></th>
                             <th>
@@ -72,6 +72,11 @@
                         <input type="text" class="form-control" name="executeHost" id="executeHost"
                                value="${job.executeHost}" required>
                     </div>
+                    <div class="form-group">
+                        <label for="failoverTolerateTime">failover等待时间:<code>毫秒,0使用默认配置</code></label>
+                        <input type="text" class="form-control" name="failoverTolerateTime" id="failoverTolerateTime"
+                               value="${job.failoverTolerateTime}">
+                    </div>
                     <div class="form-group">
                         &nbsp;&nbsp;&nbsp;&nbsp;
                         <button type="submit" class="btn btn-success">提 交</button>
@@ -0,0 +1,43 @@
+package org.gscheduler.dao;
+
+import org.gscheduler.entity.HostHeartbeat;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:application-context.xml")
+@Transactional
+public class HostHeartbeatDaoTest {
+    private static final Logger logger = LoggerFactory.getLogger(HostHeartbeatDaoTest.class);
+
+    @Resource
+    HostHeartbeatDao hostHeartbeatDao;
+
+    @Test
+    public void selectAllHostHeartbeat() throws Exception {
+        List<HostHeartbeat> heartbeats = hostHeartbeatDao.selectAllHostHeartbeat();
+        for (HostHeartbeat heartbeat : heartbeats) {
+            logger.info("{}", heartbeat.toString());
+        }
+    }
+
+    @Test
+    public void updateHeartbeat() throws Exception {
+        String host = "test_heartbeat_host";
+        Assert.assertEquals(0, hostHeartbeatDao.updateHeartbeat(host, 1000L).intValue());
+        Assert.assertEquals(1, hostHeartbeatDao.insertHostHeartbeat(host, 1000L).intValue());
+        Assert.assertEquals(1, hostHeartbeatDao.updateHeartbeat(host, 2000L).intValue());
+
+        HostHeartbeat heartbeat = hostHeartbeatDao.selectHostHeartbeat(host);
+        Assert.assertEquals(2000L, heartbeat.getHeartbeat());
+    }
+}
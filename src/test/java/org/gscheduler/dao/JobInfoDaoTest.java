@@ -1,5 +1,7 @@
 package org.gscheduler.dao;
 
+import com.google.common.collect.Lists;
+import org.gscheduler.entity.ExecuteStatus;
 import org.gscheduler.entity.JobInfo;
 import org.gscheduler.utils.Utils;
 import org.junit.Assert;
@@ -12,6 +14,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
 import java.util.List;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -23,6 +26,9 @@ public class JobInfoDaoTest {
     @Resource
     JobInfoDao jobInfoDao;
 
+    @Resource
+    JobHostDao jobHostDao;
+
     @Test
     public void selectAllJobInfo() throws Exception {
         List<JobInfo> jobInfoList = jobInfoDao.selectAllJobInfo();
@@ -62,6 +68,51 @@ public class JobInfoDaoTest {
         Assert.assertEquals(jobInfo.getId(), 1);
     }
 
+    @Test
+    public void selectJobInfoByIds() throws Exception {
+        List<JobInfo> jobInfoList = jobInfoDao.selectJobInfoByIds(Arrays.asList(1L, 2L, (long) Integer.MAX_VALUE));
+        Assert.assertEquals(2, jobInfoList.size());
+    }
+
+    @Test
+    public void compareAndSetFailExecuteHost() throws Exception {
+        jobInfoDao.updateFailExecuteHost(1, "");
+        long version = jobInfoDao.selectJobInfoById(1).getVersion();
+        // 同一个version只有第一次认领成功
+        Assert.assertEquals(1, jobInfoDao.compareAndSetFailExecuteHost(1, version, "host-a").intValue());
+        Assert.assertEquals(0, jobInfoDao.compareAndSetFailExecuteHost(1, version, "host-b").intValue());
+        JobInfo jobInfo = jobInfoDao.selectJobInfoById(1);
+        Assert.assertEquals("host-a", jobInfo.getFailExecuteHost());
+        Assert.assertEquals(version + 1, jobInfo.getVersion());
+        // 已有failover机器时不能认领
+        Assert.assertEquals(0, jobInfoDao.compareAndSetFailExecuteHost(1, version + 1, "host-b").intValue());
+    }
+
+    @Test
+    public void updateExecuteHost() throws Exception {
+        jobInfoDao.updateFailExecuteHost(1, "host-a");
+        long version = jobInfoDao.selectJobInfoById(1).getVersion();
+        jobInfoDao.updateExecuteHost(1, "host-b");
+        JobInfo jobInfo = jobInfoDao.selectJobInfoById(1);
+        Assert.assertEquals("host-b", jobInfo.getExecuteHost());
+        Assert.assertEquals("", jobInfo.getFailExecuteHost());
+        Assert.assertEquals(version + 1, jobInfo.getVersion());
+    }
+
+    @Test
+    public void updateFailoverTolerateTime() throws Exception {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(1);
+        jobInfo.setInitiateMode((short) -1);
+        jobInfo.setFailoverTolerateTime(30000);
+        jobInfoDao.updateJobInfoById(jobInfo);
+        Assert.assertEquals(30000, jobInfoDao.selectJobInfoById(1).getFailoverTolerateTime().intValue());
+        // 为null时不修改
+        jobInfo.setFailoverTolerateTime(null);
+        jobInfoDao.updateJobInfoById(jobInfo);
+        Assert.assertEquals(30000, jobInfoDao.selectJobInfoById(1).getFailoverTolerateTime().intValue());
+    }
+
     @Test
     public void insertJobInfo() throws Exception {
         JobInfo jobInfo = createTestJobInfo();
@@ -76,7 +127,7 @@ public class JobInfoDaoTest {
         jobInfo.setConfigParameter("no");
         jobInfo.setCrontab("1/min 2/min");
         jobInfo.setExecuteHost("localhost");
-        jobInfo.setExecuteStatus((short) 1);
+        jobInfo.setExecuteStatus(ExecuteStatus.RUNNING);
         jobInfo.setHostList("localhost");
         jobInfo.setInitiateMode((short) 0);
         jobInfo.setJobClass("testJob");
@@ -95,4 +146,41 @@ public class JobInfoDaoTest {
         Assert.assertEquals(null, info2);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void selectJobInfoContainHostname() throws Exception {
+        JobInfo jobInfo = createTestJobInfo();
+        jobInfo.setExecuteHost("other_host");
+        jobInfo.setHostList("other_host,test_host2");
+        jobInfoDao.insertJobInfo(jobInfo);
+        jobHostDao.insertJobHosts(jobInfo.getId(), Lists.newArrayList("other_host", "test_host2"));
+
+        // 主机名是其他主机名的子串时不匹配
+        Assert.assertTrue(jobInfoDao.selectJobInfoContainHostname("test_host").isEmpty());
+        List<JobInfo> jobInfoList = jobInfoDao.selectJobInfoContainHostname("test_host2");
+        Assert.assertEquals(1, jobInfoList.size());
+        Assert.assertEquals(jobInfo.getId(), jobInfoList.get(0).getId());
+        Assert.assertEquals(1, jobInfoDao.selectJobInfoForFailover("test_host2", "other_host").size());
+    }
+
+    @Test
+    public void selectJobInfoWithoutHost() throws Exception {
+        JobInfo jobInfo = createTestJobInfo();
+        jobInfo.setHostList("other_host,test_host2");
+        jobInfoDao.insertJobInfo(jobInfo);
+
+        // 升级前的任务只有host_list
+        Assert.assertTrue(containsId(jobInfoDao.selectJobInfoWithoutHost(), jobInfo.getId()));
+        jobHostDao.insertJobHosts(jobInfo.getId(), Lists.newArrayList("other_host", "test_host2"));
+        Assert.assertFalse(containsId(jobInfoDao.selectJobInfoWithoutHost(), jobInfo.getId()));
+    }
+
+    private boolean containsId(List<JobInfo> jobInfoList, long id) {
+        for (JobInfo jobInfo : jobInfoList) {
+            if (jobInfo.getId() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.gscheduler.service.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class CronExpressionTest {
+    private static final String[] EXPRESSIONS = {
+            "30 */5 * * * *", "0 0 * * * *", "*/10 * * * * *", "0 0 8-10 * * *", "0 0/30 8-10 * * *",
+            "0 0 9-17 * * MON-FRI", "0 0 0 25 12 ?", "0 15 10 ? * 5", "0 0 12 1 JAN,JUL ?",
+            "5/15 * * * * *", "0 0 0 29 2 *", "0 0 0 * * 0", "0 0 0 * * 7", "0 0 0 13 * FRI",
+            "0 30 2 * * *", "0 0 1-3 * * SUN", "0 0 0 31 * *", "1,2,3 4-6 7/3 1-15/2 */2 ?"};
+
+    @Test
+    public void sameAsCronSequenceGenerator() throws Exception {
+        // 包含夏令时的时区
+        for (String timeZoneId : new String[]{"Asia/Shanghai", "America/New_York", "UTC"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+            Random random = new Random(timeZoneId.hashCode());
+            for (String expression : EXPRESSIONS) {
+                CronSequenceGenerator generator = new CronSequenceGenerator(expression, timeZone);
+                CronExpression cronExpression = new CronExpression(expression, timeZone);
+                for (int i = 0; i < 200; i++) {
+                    // 2000年-2033年之间的随机时间
+                    long time = 946684800000L + (long) (random.nextDouble() * 1000L * 86400 * 365 * 33);
+                    long expected;
+                    try {
+                        expected = generator.next(new Date(time)).getTime();
+                    } catch (IllegalArgumentException e) {
+                        // CronSequenceGenerator最多向后查找366天,如13号且周五,这里不受此限制
+                        continue;
+                    }
+                    Assert.assertEquals(expression + "," + timeZoneId + "," + time, expected, cronExpression.next(time));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nextBatch() throws Exception {
+        CronExpression cronExpression = new CronExpression("0 */15 * * * *", TimeZone.getTimeZone("UTC"));
+        long[] times = cronExpression.next(0, new long[4]);
+        Assert.assertArrayEquals(new long[]{900000, 1800000, 2700000, 3600000}, times);
+    }
+
+    @Test
+    public void illegalExpression() throws Exception {
+        Assert.assertTrue(JobTrigger.checkExpression("0 0 0 * *"));
+        Assert.assertTrue(JobTrigger.checkExpression("0 0 25 * * *"));
+        Assert.assertTrue(JobTrigger.checkExpression("0 0 0 * FOO *"));
+        Assert.assertFalse(JobTrigger.checkExpression("30 */5 * * * *"));
+        Assert.assertFalse(JobTrigger.checkExpression("1/min 3/min"));
+    }
+}
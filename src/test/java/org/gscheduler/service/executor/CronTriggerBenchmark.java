@@ -0,0 +1,72 @@
+package org.gscheduler.service.executor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CronSequenceGenerator与CronExpression计算下一次触发时间的对比.
+ * 运行:java -cp target/test-classes:target/classes:依赖 org.openjdk.jmh.Main CronTriggerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CronTriggerBenchmark {
+    private static final int BATCH_SIZE = 16;
+
+    @Param({"0 */5 * * * *", "0 0 9-17 * * MON-FRI", "0 0 0 25 12 ?"})
+    String expression;
+
+    private CronSequenceGenerator generator;
+    private CronExpression cronExpression;
+    private long time;
+    private final long[] batch = new long[BATCH_SIZE];
+
+    @Setup
+    public void setup() {
+        TimeZone timeZone = TimeZone.getTimeZone("Asia/Shanghai");
+        generator = new CronSequenceGenerator(expression, timeZone);
+        cronExpression = new CronExpression(expression, timeZone);
+        time = 1500000000000L;
+    }
+
+    @Benchmark
+    public Date cronSequenceGenerator() {
+        return generator.next(new Date(time));
+    }
+
+    @Benchmark
+    public long cronExpression() {
+        return cronExpression.next(time);
+    }
+
+    @Benchmark
+    public Date cronSequenceGeneratorBatch() {
+        Date date = new Date(time);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            date = generator.next(date);
+        }
+        return date;
+    }
+
+    @Benchmark
+    public long[] cronExpressionBatch() {
+        return cronExpression.next(time, batch);
+    }
+}
@@ -0,0 +1,197 @@
+package org.gscheduler.service.executor;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比较三种执行模型在DemoJob式(sleep模拟阻塞IO)任务下的线程数,RSS和触发延迟:
+ * legacy-每个任务一个单线程ScheduledExecutorService(原AbstractScheduledService模型);
+ * platform-时间轮+固定大小线程池;virtual-时间轮+虚拟线程(需JDK21+运行).
+ * 每种模式单独起一个JVM运行,保证RSS互不影响:
+ * java -cp target/classes:target/test-classes:[依赖] org.gscheduler.service.executor.ExecutorModeBenchmark
+ * [mode] [jobs] [sleepMs] [periodMs] [durationSec] [workerSize]
+ */
+public class ExecutorModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "legacy";
+        int jobs = args.length > 1 ? NumberUtils.toInt(args[1]) : 2000;
+        long sleepMillis = args.length > 2 ? NumberUtils.toLong(args[2]) : 1000;
+        long periodMillis = args.length > 3 ? NumberUtils.toLong(args[3]) : 5000;
+        int durationSec = args.length > 4 ? NumberUtils.toInt(args[4]) : 30;
+        int workerSize = args.length > 5 ? NumberUtils.toInt(args[5]) : 50;
+
+        LagRecorder recorder = new LagRecorder(jobs * (int) (durationSec * 1000L / periodMillis + 2));
+        long start = System.currentTimeMillis();
+        List<ScheduledExecutorService> legacyServices = new ArrayList<>();
+        ExecutorService workerPool = null;
+        JobTimingWheel timingWheel = null;
+
+        if ("legacy".equals(mode)) {
+            for (int i = 0; i < jobs; i++) {
+                ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+                final long firstFire = start + (i % periodMillis);
+                service.scheduleAtFixedRate(new LegacyJob(firstFire, periodMillis, sleepMillis, recorder),
+                        firstFire - System.currentTimeMillis(), periodMillis, TimeUnit.MILLISECONDS);
+                legacyServices.add(service);
+            }
+        } else {
+            workerPool = JobDispatcher.newWorkerPool(mode, workerSize);
+            timingWheel = new JobTimingWheel(10, 9, 4, workerPool, "benchmark-tick");
+            timingWheel.start();
+            for (int i = 0; i < jobs; i++) {
+                new WheelJob(timingWheel, start + (i % periodMillis), periodMillis, sleepMillis, recorder).schedule();
+            }
+        }
+        long scheduledCost = System.currentTimeMillis() - start;
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long maxRss = 0;
+        for (int i = 0; i < durationSec; i++) {
+            TimeUnit.SECONDS.sleep(1);
+            maxRss = Math.max(maxRss, readRssKb());
+        }
+
+        long[] lags = recorder.snapshot();
+        Arrays.sort(lags);
+        System.out.println(String.format("mode:%s,jdk:%s,jobs:%d,sleep:%dms,period:%dms,duration:%ds,workerSize:%d",
+                mode, System.getProperty("java.version"), jobs, sleepMillis, periodMillis, durationSec,
+                "legacy".equals(mode) ? jobs : workerSize));
+        System.out.println(String.format("schedule all jobs cost:%dms", scheduledCost));
+        System.out.println(String.format("platform threads:%d,peak platform threads:%d,max rss:%dMB",
+                threadMXBean.getThreadCount(), threadMXBean.getPeakThreadCount(), maxRss / 1024));
+        System.out.println(String.format("fires:%d,lag p50:%dms,p99:%dms,max:%dms", lags.length,
+                percentile(lags, 0.5), percentile(lags, 0.99), lags.length == 0 ? 0 : lags[lags.length - 1]));
+
+        for (ScheduledExecutorService service : legacyServices) {
+            service.shutdownNow();
+        }
+        if (timingWheel != null) {
+            timingWheel.stop();
+            workerPool.shutdownNow();
+        }
+        System.exit(0);
+    }
+
+    private static long percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * percent) - 1)];
+    }
+
+    // 读取/proc/self/status中的VmRSS,单位KB,非linux返回0
+    private static long readRssKb() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return NumberUtils.toLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return 0;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 触发延迟记录,实际开始时间减去计划触发时间
+     */
+    private static class LagRecorder {
+        private final long[] lags;
+        private final AtomicInteger index = new AtomicInteger(0);
+
+        LagRecorder(int capacity) {
+            lags = new long[capacity];
+        }
+
+        void record(long lag) {
+            int i = index.getAndIncrement();
+            if (i < lags.length) {
+                lags[i] = lag;
+            }
+        }
+
+        long[] snapshot() {
+            return Arrays.copyOf(lags, Math.min(index.get(), lags.length));
+        }
+    }
+
+    private static class LegacyJob implements Runnable {
+        private final long periodMillis;
+        private final long sleepMillis;
+        private final LagRecorder recorder;
+        private long scheduledTime;
+
+        LegacyJob(long firstFire, long periodMillis, long sleepMillis, LagRecorder recorder) {
+            this.scheduledTime = firstFire;
+            this.periodMillis = periodMillis;
+            this.sleepMillis = sleepMillis;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void run() {
+            recorder.record(System.currentTimeMillis() - scheduledTime);
+            scheduledTime += periodMillis;
+            sleep(sleepMillis);
+        }
+    }
+
+    private static class WheelJob implements Runnable {
+        private final JobTimingWheel timingWheel;
+        private final long periodMillis;
+        private final long sleepMillis;
+        private final LagRecorder recorder;
+        private long scheduledTime;
+
+        WheelJob(JobTimingWheel timingWheel, long firstFire, long periodMillis, long sleepMillis,
+                 LagRecorder recorder) {
+            this.timingWheel = timingWheel;
+            this.scheduledTime = firstFire;
+            this.periodMillis = periodMillis;
+            this.sleepMillis = sleepMillis;
+            this.recorder = recorder;
+        }
+
+        void schedule() {
+            try {
+                timingWheel.newTimeout(this, scheduledTime);
+            } catch (RejectedExecutionException e) {
+                // 压测结束,时间轮已停止
+            }
+        }
+
+        @Override
+        public void run() {
+            recorder.record(System.currentTimeMillis() - scheduledTime);
+            sleep(sleepMillis);
+            // 与JobScheduler一致:执行完成后按固定频率计算下一次触发
+            scheduledTime += periodMillis;
+            schedule();
+        }
+    }
+}
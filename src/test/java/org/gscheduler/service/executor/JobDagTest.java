@@ -0,0 +1,47 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.collect.Lists;
+import org.gscheduler.entity.JobInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class JobDagTest {
+
+    private JobInfo createJobInfo(String jobName, String parentName) {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setJobName(jobName);
+        jobInfo.setParentName(parentName);
+        return jobInfo;
+    }
+
+    @Test
+    public void diamond() throws Exception {
+        // extract -> (clean,enrich) -> load
+        JobDag jobDag = JobDag.build(Lists.newArrayList(createJobInfo("extract", ""),
+                createJobInfo("clean", "extract"), createJobInfo("enrich", "extract"),
+                createJobInfo("load", "clean, enrich")));
+
+        Assert.assertFalse(jobDag.hasCycle());
+        Assert.assertEquals(2, jobDag.getParents("load").size());
+        Assert.assertEquals(2, jobDag.getChildren("extract").size());
+        List<String> order = jobDag.topologicalOrder();
+        Assert.assertEquals("extract", order.get(0));
+        Assert.assertEquals("load", order.get(order.size() - 1));
+    }
+
+    @Test
+    public void cycle() throws Exception {
+        JobDag jobDag = JobDag.build(Lists.newArrayList(createJobInfo("a", ""),
+                createJobInfo("b", "a"), createJobInfo("c", "b")));
+        Assert.assertFalse(jobDag.hasCycle());
+
+        jobDag.setParents("a", "c");
+        Assert.assertTrue(jobDag.hasCycle());
+
+        jobDag.setParents("a", "");
+        Assert.assertFalse(jobDag.hasCycle());
+        Assert.assertTrue(jobDag.getChildren("c").isEmpty());
+    }
+}
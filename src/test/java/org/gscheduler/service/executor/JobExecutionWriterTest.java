@@ -0,0 +1,72 @@
+package org.gscheduler.service.executor;
+
+import org.gscheduler.entity.JobExecution;
+import org.gscheduler.service.task.JobExecutionService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class JobExecutionWriterTest {
+    private JobExecutionWriter writer;
+    private JobExecutionService jobExecutionService;
+
+    @Before
+    public void setUp() {
+        jobExecutionService = Mockito.mock(JobExecutionService.class);
+        writer = new JobExecutionWriter();
+        writer.jobExecutionService = jobExecutionService;
+        // 只手动flush
+        writer.executionFlushInterval = "3600000";
+        writer.init();
+    }
+
+    @After
+    public void tearDown() {
+        Mockito.reset(jobExecutionService);
+        writer.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void dropBatchAfterMaxRetries() {
+        Mockito.doThrow(new RuntimeException("bad row")).when(jobExecutionService)
+                .batchSaveJobExecution(Mockito.anyListOf(JobExecution.class));
+        writer.submit(1, 1000, 2000, null);
+        writer.submit(1, 3000, 4000, new IllegalStateException("failed"));
+
+        // 第一次写入和前两次重试失败时保留
+        for (int i = 0; i < 3; i++) {
+            writer.flush();
+            Assert.assertEquals(0, writer.getDroppedCount());
+        }
+        writer.submit(2, 5000, 6000, null);
+        // 第三次重试失败后丢弃,继续写入后面的记录,失败的记录作为新的重试批次
+        writer.flush();
+        Assert.assertEquals(2, writer.getDroppedCount());
+        Assert.assertEquals(0, writer.getPendingSize());
+        Mockito.verify(jobExecutionService, Mockito.times(5)).batchSaveJobExecution(Mockito.anyList());
+
+        Mockito.doNothing().when(jobExecutionService).batchSaveJobExecution(Mockito.anyListOf(JobExecution.class));
+        writer.flush();
+        Assert.assertEquals(2, writer.getDroppedCount());
+        Mockito.verify(jobExecutionService, Mockito.times(6)).batchSaveJobExecution(Mockito.anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void retrySucceeded() {
+        Mockito.doThrow(new RuntimeException("db down")).doNothing().when(jobExecutionService)
+                .batchSaveJobExecution(Mockito.anyListOf(JobExecution.class));
+        writer.submit(1, 1000, 2000, null);
+        writer.flush();
+        writer.submit(1, 3000, 4000, null);
+        writer.flush();
+
+        Assert.assertEquals(0, writer.getDroppedCount());
+        Assert.assertEquals(0, writer.getPendingSize());
+        // 第二次flush先重试失败的批次,再写入新的记录
+        Mockito.verify(jobExecutionService, Mockito.times(3)).batchSaveJobExecution(Mockito.anyList());
+    }
+}
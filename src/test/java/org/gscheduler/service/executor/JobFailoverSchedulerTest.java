@@ -0,0 +1,149 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.gscheduler.entity.JobInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JobFailoverSchedulerTest {
+    private static final String HOST_A = "/monitor/task/service_available/host-a";
+    private static final String HOST_B = "/monitor/task/service_available/host-b";
+
+    private JobFailoverScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new JobFailoverScheduler(2);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.close();
+    }
+
+    private JobInfo createJobInfo(Integer failoverTolerateTime) {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setFailoverTolerateTime(failoverTolerateTime);
+        return jobInfo;
+    }
+
+    @Test
+    public void groupByOwnTolerateTime() {
+        // 没有单独配置或配置为0的任务使用默认等待时间
+        List<JobInfo> jobInfos = Lists.newArrayList(createJobInfo(null), createJobInfo(0), createJobInfo(5000),
+                createJobInfo(500), createJobInfo(5000));
+        Assert.assertEquals(Lists.newArrayList(500, 5000, 60000),
+                Lists.newArrayList(JobListener.groupTolerateTime(jobInfos, 60000)));
+    }
+
+    @Test
+    public void runEachTolerateGroupAndRemoveWhenFinished() throws Exception {
+        final List<Integer> executed = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        scheduler.schedule(HOST_A, Sets.newTreeSet(Lists.newArrayList(20, 100)), new JobFailoverScheduler.FailoverTask() {
+            @Override
+            public void run(int tolerate) {
+                executed.add(tolerate);
+                latch.countDown();
+            }
+        });
+        Assert.assertTrue(scheduler.isPending(HOST_A));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Lists.newArrayList(20, 100), executed);
+        waitNotPending(HOST_A);
+        Assert.assertEquals(0, scheduler.getPendingSize());
+    }
+
+    @Test
+    public void cancelOnRecover() throws Exception {
+        final List<Integer> executed = new CopyOnWriteArrayList<>();
+        scheduler.schedule(HOST_A, Collections.singleton(200), new JobFailoverScheduler.FailoverTask() {
+            @Override
+            public void run(int tolerate) {
+                executed.add(tolerate);
+            }
+        });
+        // 节点在等待时间内恢复
+        Assert.assertTrue(scheduler.cancel(HOST_A));
+        Assert.assertFalse(scheduler.isPending(HOST_A));
+        Assert.assertFalse(scheduler.cancel(HOST_A));
+        Thread.sleep(400);
+        Assert.assertTrue(executed.isEmpty());
+    }
+
+    @Test
+    public void followUpKeepsPendingUntilFinished() throws Exception {
+        final CountDownLatch followUpStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.schedule(HOST_A, Collections.singleton(10), new JobFailoverScheduler.FailoverTask() {
+            @Override
+            public void run(int tolerate) {
+                scheduler.scheduleFollowUp(HOST_A, 10, new Runnable() {
+                    @Override
+                    public void run() {
+                        followUpStarted.countDown();
+                        awaitQuietly(release);
+                    }
+                });
+            }
+        });
+        Assert.assertTrue(followUpStarted.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(scheduler.isPending(HOST_A));
+        release.countDown();
+        waitNotPending(HOST_A);
+        Assert.assertFalse(scheduler.scheduleFollowUp(HOST_A, 10, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+
+    @Test
+    public void longFailoverDoesNotDelayOtherHost() throws Exception {
+        // host-a的接管阻塞时,host-b的定时照常到期并执行
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch hostBExecuted = new CountDownLatch(1);
+        scheduler.schedule(HOST_A, Collections.singleton(10), new JobFailoverScheduler.FailoverTask() {
+            @Override
+            public void run(int tolerate) {
+                awaitQuietly(release);
+            }
+        });
+        scheduler.schedule(HOST_B, Collections.singleton(50), new JobFailoverScheduler.FailoverTask() {
+            @Override
+            public void run(int tolerate) {
+                hostBExecuted.countDown();
+            }
+        });
+        Assert.assertTrue(hostBExecuted.await(5, TimeUnit.SECONDS));
+        // 执行中的failover也可以立即取消
+        scheduler.cancel(HOST_A);
+        Assert.assertFalse(scheduler.isPending(HOST_A));
+        release.countDown();
+    }
+
+    private void waitNotPending(String path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.isPending(path) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(scheduler.isPending(path));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
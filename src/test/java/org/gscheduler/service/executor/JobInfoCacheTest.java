@@ -0,0 +1,101 @@
+package org.gscheduler.service.executor;
+
+import org.gscheduler.dao.JobInfoDao;
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.task.JobInfoService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+
+/**
+ * 修改在测试事务中回滚,事务结束后重新加载缓存
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:application-context.xml")
+@Transactional
+public class JobInfoCacheTest {
+
+    @Resource
+    JobInfoCache jobInfoCache;
+
+    @Resource
+    JobInfoService jobInfoService;
+
+    @Resource
+    JobInfoDao jobInfoDao;
+
+    @Before
+    public void setUp() throws Exception {
+        jobInfoCache.reload();
+    }
+
+    @AfterTransaction
+    public void reload() throws Exception {
+        jobInfoCache.reload();
+    }
+
+    @Test
+    public void index() throws Exception {
+        Assert.assertEquals(2, jobInfoCache.getByExecuteHost("localhost").size());
+        Assert.assertTrue(jobInfoCache.getByCandidateHost("localhost").isEmpty());
+        Assert.assertEquals(1, jobInfoCache.getByJobName("demo_job").getId());
+
+        // 返回拷贝,修改不影响缓存
+        JobInfo jobInfo = jobInfoCache.get(1);
+        jobInfo.setExecuteHost("other-host");
+        Assert.assertEquals("localhost", jobInfoCache.get(1).getExecuteHost());
+        Assert.assertNull(jobInfoCache.get(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void deltaRefresh() throws Exception {
+        // 模拟其他主机修改任务,本机没有收到失效通知
+        jobInfoDao.updateFailExecuteHost(2, "other-host");
+        Assert.assertEquals("", jobInfoCache.get(2).getFailExecuteHost());
+
+        JobInfoCache.Delta delta = jobInfoCache.refresh();
+        Assert.assertFalse(delta.isFull());
+        Assert.assertEquals(1, delta.getUpdated().size());
+        Assert.assertEquals("other-host", jobInfoCache.get(2).getFailExecuteHost());
+
+        // 已应用的变更不会重复返回
+        Assert.assertTrue(jobInfoCache.refresh().getUpdated().isEmpty());
+    }
+
+    @Test
+    public void tombstone() throws Exception {
+        // 模拟其他主机删除任务
+        jobInfoDao.deleteJobInfoById(2);
+        jobInfoDao.insertJobInfoTombstone(2, "test job");
+
+        JobInfoCache.Delta delta = jobInfoCache.refresh();
+        Assert.assertTrue(delta.getRemoved().contains(2L));
+        Assert.assertNull(jobInfoCache.get(2));
+        Assert.assertEquals(1, jobInfoCache.getByExecuteHost("localhost").size());
+        Assert.assertTrue(jobInfoCache.refresh().isEmpty());
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        jobInfoService.modifyInitiateMode(1, JobManager.DISABLE);
+        Assert.assertEquals(JobManager.DISABLE, jobInfoCache.get(1).getInitiateMode());
+
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(2);
+        jobInfo.setInitiateMode(JobManager.AVAILABLE);
+        jobInfo.setHostList("localhost,other-host");
+        jobInfo.setExecuteHost("other-host");
+        jobInfoDao.updateJobInfoById(jobInfo);
+        jobInfoCache.invalidate(2);
+        Assert.assertEquals(1, jobInfoCache.getByExecuteHost("localhost").size());
+        Assert.assertEquals(2, jobInfoCache.get(2).getId());
+        Assert.assertEquals(2, jobInfoCache.getByCandidateHost("localhost").get(0).getId());
+    }
+}
@@ -0,0 +1,86 @@
+package org.gscheduler.service.executor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JobSchedulerRegistry与原来的ConcurrentHashMap<Long, JobScheduler>对比:按id查找全部任务,以及watcher对账时的一次遍历
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobManagerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int jobs;
+
+    private JobSchedulerRegistry registry;
+    private Map<Long, JobScheduler> map;
+
+    @Setup
+    public void setup() throws Exception {
+        registry = new JobSchedulerRegistry();
+        map = new ConcurrentHashMap<>(50);
+        for (long id = 1; id <= jobs; id++) {
+            JobScheduler jobScheduler = new JobScheduler();
+            registry.put(id, jobScheduler);
+            map.put(id, jobScheduler);
+        }
+    }
+
+    @Benchmark
+    public int registryGet() {
+        int found = 0;
+        for (long id = 1; id <= jobs; id++) {
+            if (null != registry.get(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int mapGet() {
+        int found = 0;
+        for (long id = 1; id <= jobs; id++) {
+            if (null != map.get(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int registryIterate() {
+        int count = 0;
+        for (JobScheduler jobScheduler : registry) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int mapIterate() {
+        int count = 0;
+        for (JobScheduler jobScheduler : map.values()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,80 @@
+package org.gscheduler.service.executor;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.gscheduler.entity.JobInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * service_update节点数据的编码和解码:json(createJobJson/fastjson)与二进制(JobNodeCodec)对比,
+ * setup时输出两种格式的数据大小
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobNodeCodecBenchmark {
+    private JobInfo jobInfo;
+    private String jobJson;
+    private byte[] jobBytes;
+
+    @Setup
+    public void setup() {
+        jobInfo = new JobInfo();
+        jobInfo.setId(1024L);
+        jobInfo.setJobName("demoJob");
+        jobInfo.setConfigParameter("{\"limit\":100}");
+        jobInfo.setCrontab("0 */5 * * * *");
+        jobInfo.setExecuteHost("host-01.example.com");
+        jobInfo.setInitiateMode((short) 1);
+        jobInfo.setFailExecuteHost("host-02.example.com");
+        jobInfo.setSubJob("1025,1026");
+        jobJson = JobListener.createJobJson(jobInfo, JobManager.JobOperator.RESTART);
+        jobBytes = JobNodeCodec.encodeBinary(jobInfo, JobManager.JobOperator.RESTART);
+        System.out.println("json size:" + jobJson.getBytes().length + ",binary size:" + jobBytes.length);
+    }
+
+    @Benchmark
+    public String createJobJson() {
+        return JobListener.createJobJson(jobInfo, JobManager.JobOperator.RESTART);
+    }
+
+    @Benchmark
+    public void parseJobJson(Blackhole blackhole) {
+        JSONObject jsonObject = JSON.parseObject(jobJson);
+        blackhole.consume(jsonObject.getString("operator"));
+        blackhole.consume(jsonObject.getString("executeHost"));
+        blackhole.consume(jsonObject.getString("failExecuteHost"));
+        blackhole.consume(jsonObject.getString("initiateMode"));
+        blackhole.consume(jsonObject.getString("subJob"));
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return JobNodeCodec.encodeBinary(jobInfo, JobManager.JobOperator.RESTART);
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole blackhole) {
+        JobNodeCodec.JobNode node = JobNodeCodec.decode(jobBytes);
+        blackhole.consume(node.getOperator());
+        blackhole.consume(node.getExecuteHost());
+        blackhole.consume(node.getFailExecuteHost());
+        blackhole.consume(node.getInitiateMode());
+        blackhole.consume(node.getSubJob());
+    }
+}
@@ -0,0 +1,80 @@
+package org.gscheduler.service.executor;
+
+import org.gscheduler.entity.JobInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobNodeCodecTest {
+
+    private static JobInfo newJobInfo() {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(1024L);
+        jobInfo.setJobName("demoJob");
+        jobInfo.setConfigParameter("{\"limit\":100}");
+        jobInfo.setCrontab("0 */5 * * * *");
+        jobInfo.setExecuteHost("host-01.example.com");
+        jobInfo.setInitiateMode((short) 1);
+        jobInfo.setFailExecuteHost("");
+        jobInfo.setSubJob("1025,1026");
+        return jobInfo;
+    }
+
+    private static void assertNode(JobInfo jobInfo, JobManager.JobOperator operator, JobNodeCodec.JobNode node) {
+        Assert.assertEquals(jobInfo.getId(), node.getId());
+        Assert.assertEquals(jobInfo.getInitiateMode(), node.getInitiateMode());
+        Assert.assertEquals(operator, node.getOperator());
+        Assert.assertEquals(jobInfo.getConfigParameter(), node.getConfigParameter());
+        Assert.assertEquals(jobInfo.getCrontab(), node.getCrontab());
+        Assert.assertEquals(jobInfo.getExecuteHost(), node.getExecuteHost());
+        Assert.assertEquals(jobInfo.getFailExecuteHost(), node.getFailExecuteHost());
+        Assert.assertEquals(jobInfo.getSubJob(), node.getSubJob());
+    }
+
+    @Test
+    public void binaryRoundTrip() {
+        JobInfo jobInfo = newJobInfo();
+        // 二进制固定使用UTF-8,与平台编码无关
+        jobInfo.setConfigParameter("{\"limit\":100,\"name\":\"测试\"}");
+        for (JobManager.JobOperator operator : JobManager.JobOperator.values()) {
+            byte[] data = JobNodeCodec.encodeBinary(jobInfo, operator);
+            assertNode(jobInfo, operator, JobNodeCodec.decode(data));
+        }
+        byte[] data = JobNodeCodec.encodeBinary(jobInfo, JobManager.JobOperator.RESTART);
+        Assert.assertTrue(data.length < JobListener.createJobJson(jobInfo, JobManager.JobOperator.RESTART).getBytes().length);
+    }
+
+    @Test
+    public void decodeJson() {
+        JobInfo jobInfo = newJobInfo();
+        byte[] data = JobListener.createJobJson(jobInfo, JobManager.JobOperator.STOP_OR_START).getBytes();
+        assertNode(jobInfo, JobManager.JobOperator.STOP_OR_START, JobNodeCodec.decode(data));
+        Assert.assertNull(JobNodeCodec.decode(new byte[0]));
+    }
+
+    @Test
+    public void encodeJsonByDefault() {
+        // 滚动升级期间旧版本只能解析json,只有显式配置binary时使用二进制
+        JobInfo jobInfo = newJobInfo();
+        JobNodeCodec codec = new JobNodeCodec();
+        Assert.assertEquals('{', codec.encode(jobInfo, JobManager.JobOperator.START)[0]);
+        codec.nodeCodec = JobNodeCodec.CODEC_JSON;
+        Assert.assertEquals('{', codec.encode(jobInfo, JobManager.JobOperator.START)[0]);
+        codec.nodeCodec = JobNodeCodec.CODEC_BINARY;
+        Assert.assertArrayEquals(JobNodeCodec.encodeBinary(jobInfo, JobManager.JobOperator.START),
+                codec.encode(jobInfo, JobManager.JobOperator.START));
+    }
+
+    @Test
+    public void nullSubJob() {
+        // 没有子任务字段时不刷新子任务,两种格式一致
+        JobInfo jobInfo = newJobInfo();
+        jobInfo.setSubJob(null);
+        jobInfo.setFailExecuteHost(null);
+        Assert.assertNull(JobNodeCodec.decode(JobNodeCodec.encodeBinary(jobInfo, JobManager.JobOperator.NONE)).getSubJob());
+        byte[] json = JobListener.createJobJson(jobInfo, JobManager.JobOperator.NONE).getBytes();
+        Assert.assertNull(JobNodeCodec.decode(json).getSubJob());
+
+        jobInfo.setSubJob("");
+        Assert.assertEquals("", JobNodeCodec.decode(JobNodeCodec.encodeBinary(jobInfo, JobManager.JobOperator.NONE)).getSubJob());
+    }
+}
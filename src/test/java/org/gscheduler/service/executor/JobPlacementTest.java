@@ -0,0 +1,44 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JobPlacementTest {
+
+    @Test
+    public void rendezvous() {
+        List<String> hosts = Lists.newArrayList("host-1", "host-2", "host-3", "host-4");
+        List<String> reversed = Lists.reverse(hosts);
+        Map<String, Integer> counts = new HashMap<>();
+        int jobs = 4000;
+        for (long id = 1; id <= jobs; id++) {
+            String host = JobPlacement.rendezvous(id, hosts);
+            // 与候选顺序无关
+            Assert.assertEquals(host, JobPlacement.rendezvous(id, reversed));
+            Integer count = counts.get(host);
+            counts.put(host, null == count ? 1 : count + 1);
+        }
+        for (String host : hosts) {
+            Assert.assertTrue(host + ":" + counts.get(host), counts.get(host) > jobs / hosts.size() * 0.8);
+        }
+        Assert.assertNull(JobPlacement.rendezvous(1, Lists.<String>newArrayList()));
+    }
+
+    @Test
+    public void removeHost() {
+        List<String> hosts = Lists.newArrayList("host-1", "host-2", "host-3", "host-4");
+        List<String> survivors = Lists.newArrayList("host-1", "host-2", "host-4");
+        for (long id = 1; id <= 1000; id++) {
+            String host = JobPlacement.rendezvous(id, hosts);
+            // 只有下线机器的任务被重新分配
+            if (!"host-3".equals(host)) {
+                Assert.assertEquals(host, JobPlacement.rendezvous(id, survivors));
+            }
+        }
+    }
+}
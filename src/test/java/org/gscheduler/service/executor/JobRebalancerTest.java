@@ -0,0 +1,87 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.collect.Lists;
+import org.gscheduler.entity.JobInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JobRebalancerTest {
+    private static final String HOST_LIST = "host-1,host-2,host-3,host-4";
+
+    private static List<JobInfo> createJobs(int count, String executeHost) {
+        List<JobInfo> jobInfos = Lists.newArrayList();
+        for (long id = 1; id <= count; id++) {
+            JobInfo jobInfo = new JobInfo();
+            jobInfo.setId(id);
+            jobInfo.setHostList(HOST_LIST);
+            jobInfo.setExecuteHost(executeHost);
+            jobInfos.add(jobInfo);
+        }
+        return jobInfos;
+    }
+
+    private static void apply(List<JobInfo> jobInfos, Map<Long, String> moves) {
+        for (JobInfo jobInfo : jobInfos) {
+            if (moves.containsKey(jobInfo.getId())) {
+                jobInfo.setExecuteHost(moves.get(jobInfo.getId()));
+            }
+        }
+    }
+
+    @Test
+    public void balance() {
+        int jobs = 4000;
+        List<JobInfo> jobInfos = createJobs(jobs, "host-1");
+        List<String> liveHosts = Lists.newArrayList("host-1", "host-2", "host-3", "host-4", "host-5");
+        apply(jobInfos, JobRebalancer.plan(jobInfos, liveHosts));
+        Map<String, Integer> counts = new HashMap<>();
+        for (JobInfo jobInfo : jobInfos) {
+            Integer count = counts.get(jobInfo.getExecuteHost());
+            counts.put(jobInfo.getExecuteHost(), null == count ? 1 : count + 1);
+        }
+        // 不在host_list中的机器不分配
+        Assert.assertNull(counts.get("host-5"));
+        Assert.assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            Assert.assertTrue(String.valueOf(count), count > jobs / 4 * 0.8);
+        }
+        // 分配稳定,再次计算不迁移
+        Assert.assertTrue(JobRebalancer.plan(jobInfos, liveHosts).isEmpty());
+    }
+
+    @Test
+    public void hostLeaveAndJoin() {
+        List<JobInfo> jobInfos = createJobs(1000, "");
+        List<String> allHosts = Lists.newArrayList("host-1", "host-2", "host-3", "host-4");
+        apply(jobInfos, JobRebalancer.plan(jobInfos, allHosts));
+        Map<Long, String> before = new HashMap<>();
+        for (JobInfo jobInfo : jobInfos) {
+            before.put(jobInfo.getId(), jobInfo.getExecuteHost());
+        }
+
+        // 机器离开,只迁移该机器的任务
+        Map<Long, String> moves = JobRebalancer.plan(jobInfos, Lists.newArrayList("host-1", "host-2", "host-4"));
+        Assert.assertFalse(moves.isEmpty());
+        for (Long id : moves.keySet()) {
+            Assert.assertEquals("host-3", before.get(id));
+        }
+        apply(jobInfos, moves);
+
+        // 机器恢复,只迁回原来的任务
+        moves = JobRebalancer.plan(jobInfos, allHosts);
+        for (Map.Entry<Long, String> move : moves.entrySet()) {
+            Assert.assertEquals("host-3", move.getValue());
+        }
+        apply(jobInfos, moves);
+        for (JobInfo jobInfo : jobInfos) {
+            Assert.assertEquals(before.get(jobInfo.getId()), jobInfo.getExecuteHost());
+        }
+
+        // 没有存活机器的任务不迁移
+        Assert.assertTrue(JobRebalancer.plan(jobInfos, Lists.newArrayList("host-9")).isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package org.gscheduler.service.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobSchedulerRegistryTest {
+
+    @Test
+    public void putAndRemove() {
+        JobSchedulerRegistry registry = new JobSchedulerRegistry();
+        JobScheduler first = new JobScheduler();
+        JobScheduler second = new JobScheduler();
+        Assert.assertNull(registry.put(1, first));
+        Assert.assertSame(first, registry.put(1, second));
+        Assert.assertEquals(1, registry.size());
+        Assert.assertSame(second, registry.get(1));
+        Assert.assertNull(registry.get(2));
+
+        // 已经被替换的调度器不能删除新的调度器
+        Assert.assertFalse(registry.remove(1, first));
+        Assert.assertTrue(registry.remove(1, second));
+        Assert.assertNull(registry.get(1));
+        Assert.assertNull(registry.remove(1));
+        Assert.assertEquals(0, registry.size());
+
+        // 删除后可以再放入
+        Assert.assertNull(registry.put(1, first));
+        Assert.assertSame(first, registry.get(1));
+    }
+
+    @Test
+    public void growAndShrink() {
+        JobSchedulerRegistry registry = new JobSchedulerRegistry();
+        int jobs = 10000;
+        for (long id = 1; id <= jobs; id++) {
+            registry.put(id, new JobScheduler());
+        }
+        Assert.assertEquals(jobs, registry.size());
+        for (long id = 1; id <= jobs; id++) {
+            Assert.assertTrue(registry.contains(id));
+        }
+        int count = 0;
+        for (JobScheduler jobScheduler : registry) {
+            count++;
+        }
+        Assert.assertEquals(jobs, count);
+
+        long version = registry.version();
+        for (long id = 1; id < jobs; id++) {
+            Assert.assertNotNull(registry.remove(id));
+        }
+        Assert.assertTrue(registry.version() > version);
+        Assert.assertEquals(1, registry.size());
+        Assert.assertTrue(registry.contains(jobs));
+        Assert.assertFalse(registry.contains(1));
+        Assert.assertTrue(registry.iterator().hasNext());
+    }
+}
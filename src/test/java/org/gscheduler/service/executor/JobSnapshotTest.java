@@ -0,0 +1,89 @@
+package org.gscheduler.service.executor;
+
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class JobSnapshotTest {
+    private File dir;
+    private JobSnapshot jobSnapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("job-snapshot").toFile();
+        jobSnapshot = new JobSnapshot();
+        jobSnapshot.snapshotDir = dir.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(1);
+        jobInfo.setJobName("测试任务");
+        jobInfo.setJobClass("demoJob");
+        jobInfo.setCrontab("1/min 5/min");
+        jobInfo.setConfigParameter("{}");
+        JobInfo other = new JobInfo();
+        other.setId(2);
+        other.setJobClass("testJob");
+        other.setCrontab("30 */5 * * * *");
+        jobSnapshot.write(Arrays.asList(new JobSnapshot.Entry(jobInfo, 1000L, 500L, ExecuteStatus.SUCCESS),
+                new JobSnapshot.Entry(other, 2000L, 0L, ExecuteStatus.UN_EXECUTE)));
+
+        Map<Long, JobSnapshot.Entry> entries = jobSnapshot.load();
+        Assert.assertEquals(2, entries.size());
+        JobSnapshot.Entry entry = entries.get(1L);
+        Assert.assertEquals(1000L, entry.getNextFireTime());
+        Assert.assertEquals(ExecuteStatus.SUCCESS, entry.getLastStatus());
+        JobInfo restored = entry.toJobInfo();
+        Assert.assertEquals("测试任务", restored.getJobName());
+        Assert.assertEquals("{}", restored.getConfigParameter());
+        Assert.assertEquals(JobManager.AVAILABLE, restored.getInitiateMode());
+        Assert.assertNull(entries.get(2L).toJobInfo().getSubJob());
+    }
+
+    @Test
+    public void corrupted() throws Exception {
+        Assert.assertTrue(jobSnapshot.load().isEmpty());
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(1);
+        jobSnapshot.write(Arrays.asList(new JobSnapshot.Entry(jobInfo, 1000L, 0L, ExecuteStatus.FAILED)));
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "job-snapshot.bin"), "rw")) {
+            file.seek(30);
+            file.write(0x7f);
+        }
+        // 校验失败时忽略快照
+        Assert.assertTrue(jobSnapshot.load().isEmpty());
+    }
+
+    @Test
+    public void resumeFireTime() throws Exception {
+        JobTrigger jobTrigger = new JobTrigger("1/min 5/min");
+        long period = TimeUnit.MINUTES.toMillis(5);
+        long now = 10000000L;
+        // 未到期的保持原计划时间
+        Assert.assertEquals(now + 1000, jobTrigger.getResumeFireTime(now + 1000, now));
+        // 错过的周期不补执行,保持相位
+        long snapshotFireTime = now - 2 * period - 1000;
+        Assert.assertEquals(now + period - 1000, jobTrigger.getResumeFireTime(snapshotFireTime, now));
+        Assert.assertEquals(now, jobTrigger.getResumeFireTime(now - period, now));
+    }
+}
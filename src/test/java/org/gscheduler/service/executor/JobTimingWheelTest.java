@@ -0,0 +1,87 @@
+package org.gscheduler.service.executor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JobTimingWheelTest {
+    private static final Logger logger = LoggerFactory.getLogger(JobTimingWheelTest.class);
+
+    private ExecutorService executor;
+    private JobTimingWheel timingWheel;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        // 10ms一个tick,每层4个槽位,3层,便于覆盖cascade逻辑
+        timingWheel = new JobTimingWheel(10, 2, 3, executor, "test-wheel");
+        timingWheel.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        timingWheel.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void expireNotBeforeDeadline() throws Exception {
+        int count = 20;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger early = new AtomicInteger(0);
+        final AtomicLong maxLag = new AtomicLong(0);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            // 覆盖第0层,第1层,第2层以及超出最高层范围的延迟
+            final long deadline = now + i * 57;
+            timingWheel.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    long lag = System.currentTimeMillis() - deadline;
+                    if (lag < 0) {
+                        early.incrementAndGet();
+                    }
+                    if (lag > maxLag.get()) {
+                        maxLag.set(lag);
+                    }
+                    latch.countDown();
+                }
+            }, deadline);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        logger.info("max lag:{}ms", maxLag.get());
+        Assert.assertEquals(0, early.get());
+        Assert.assertEquals(0, timingWheel.pendingTimeouts());
+    }
+
+    @Test
+    public void cancelledTimeoutNotExpire() throws Exception {
+        final AtomicInteger fired = new AtomicInteger(0);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        long now = System.currentTimeMillis();
+        JobTimingWheel.Timeout cancelled = timingWheel.newTimeout(task, now + 100);
+        timingWheel.newTimeout(task, now + 150);
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+
+        TimeUnit.MILLISECONDS.sleep(400);
+        Assert.assertEquals(1, fired.get());
+        Assert.assertTrue(cancelled.isCancelled());
+        Assert.assertEquals(0, timingWheel.pendingTimeouts());
+    }
+}
@@ -0,0 +1,60 @@
+package org.gscheduler.service.executor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JobTrigger的构造,下一次触发时间计算和表达式校验,分别覆盖cron表达式和自定义周期表达式
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobTriggerBenchmark {
+
+    @Param({"0 */5 * * * *", "0 0 9-17 * * MON-FRI", "1/min 5/min", "5/min 1/day"})
+    String expression;
+
+    private JobTrigger jobTrigger;
+    private long previousFireTime;
+
+    @Setup
+    public void setup() {
+        jobTrigger = new JobTrigger(expression);
+        previousFireTime = jobTrigger.getNextFireTime(0, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public JobTrigger construct() {
+        return new JobTrigger(expression);
+    }
+
+    @Benchmark
+    public long nextFireTime() {
+        return jobTrigger.getNextFireTime(previousFireTime, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public Date nextExecutionDate() {
+        return jobTrigger.getNextExecutionDate();
+    }
+
+    @Benchmark
+    public boolean checkExpression() {
+        return JobTrigger.checkExpression(expression);
+    }
+}
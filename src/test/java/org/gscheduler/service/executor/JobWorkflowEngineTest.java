@@ -0,0 +1,110 @@
+package org.gscheduler.service.executor;
+
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.task.JobInfoService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class JobWorkflowEngineTest {
+    private JobWorkflowEngine engine;
+    private JobManager jobManager;
+    private JobInfoService jobInfoService;
+    private JobInfoCache jobInfoCache;
+    private long nextId = 1;
+
+    @Before
+    public void setUp() {
+        jobManager = Mockito.mock(JobManager.class);
+        jobInfoService = Mockito.mock(JobInfoService.class);
+        jobInfoCache = Mockito.mock(JobInfoCache.class);
+        Mockito.when(jobManager.triggerSchedule(Mockito.any(JobInfo.class), Mockito.anyString())).thenReturn(true);
+        engine = new JobWorkflowEngine();
+        engine.jobManager = jobManager;
+        engine.jobInfoService = jobInfoService;
+        engine.jobInfoCache = jobInfoCache;
+    }
+
+    private JobInfo createJobInfo(String jobName, String parentName) {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(nextId++);
+        jobInfo.setJobName(jobName);
+        jobInfo.setParentName(parentName);
+        jobInfo.setInitiateMode(JobManager.AVAILABLE);
+        Mockito.when(jobInfoService.getJobInfoById(jobInfo.getId())).thenReturn(jobInfo);
+        Mockito.when(jobInfoCache.getByJobName(jobName)).thenReturn(jobInfo);
+        return jobInfo;
+    }
+
+    private boolean complete(JobInfo child, JobInfo upstream, String runId) {
+        return engine.onUpstreamCompleted(new JobTriggerEvent(child.getId(), upstream.getId(), upstream.getJobName(), runId));
+    }
+
+    @Test
+    public void fanOut() {
+        // extract -> (clean,enrich),每个子任务只有一个父任务,立即执行
+        JobInfo extract = createJobInfo("extract", "");
+        JobInfo clean = createJobInfo("clean", "extract");
+        JobInfo enrich = createJobInfo("enrich", "extract");
+
+        Assert.assertTrue(complete(clean, extract, "extract@1"));
+        Assert.assertTrue(complete(enrich, extract, "extract@1"));
+        Mockito.verify(jobManager).triggerSchedule(clean, "extract@1");
+        Mockito.verify(jobManager).triggerSchedule(enrich, "extract@1");
+        Assert.assertEquals(0, engine.getPendingJoinSize());
+    }
+
+    @Test
+    public void diamondJoin() {
+        // extract -> (clean,enrich) -> load,同一根任务按runId汇合
+        JobInfo extract = createJobInfo("extract", "");
+        JobInfo clean = createJobInfo("clean", "extract");
+        JobInfo enrich = createJobInfo("enrich", "extract");
+        JobInfo load = createJobInfo("load", "clean,enrich");
+
+        Assert.assertFalse(complete(load, clean, "extract@1"));
+        // 另一次工作流执行的父任务不计入
+        Assert.assertFalse(complete(load, enrich, "extract@2"));
+        Assert.assertEquals(2, engine.getPendingJoinSize());
+        Assert.assertTrue(complete(load, enrich, "extract@1"));
+        Mockito.verify(jobManager).triggerSchedule(load, "extract@1");
+        Mockito.verify(jobManager, Mockito.never()).triggerSchedule(load, "extract@2");
+        Assert.assertEquals(1, engine.getPendingJoinSize());
+    }
+
+    @Test
+    public void crossRootJoin() {
+        // orders,users分别按crontab调度,report在两者上次执行之后都完成时执行
+        JobInfo orders = createJobInfo("orders", "");
+        JobInfo users = createJobInfo("users", "");
+        JobInfo report = createJobInfo("report", "orders,users");
+
+        Assert.assertFalse(complete(report, orders, "orders@1"));
+        Assert.assertFalse(complete(report, orders, "orders@2"));
+        Assert.assertTrue(complete(report, users, "users@1"));
+        Mockito.verify(jobManager).triggerSchedule(report, "users@1");
+        Assert.assertEquals(0, engine.getPendingJoinSize());
+
+        // 执行之后重新等待所有父任务
+        Assert.assertFalse(complete(report, users, "users@2"));
+        Assert.assertTrue(complete(report, orders, "orders@3"));
+        Mockito.verify(jobManager).triggerSchedule(report, "orders@3");
+        Mockito.verify(jobManager, Mockito.times(2)).triggerSchedule(Mockito.eq(report), Mockito.anyString());
+    }
+
+    @Test
+    public void sameRoot() {
+        createJobInfo("extract", "");
+        createJobInfo("clean", "extract");
+        createJobInfo("enrich", "extract");
+        createJobInfo("audit", "clean,enrich");
+        createJobInfo("users", "");
+        createJobInfo("merge", "enrich,users");
+
+        Assert.assertTrue(engine.isSameRoot(JobDag.splitParentName("clean,enrich")));
+        Assert.assertTrue(engine.isSameRoot(JobDag.splitParentName("audit,extract")));
+        Assert.assertFalse(engine.isSameRoot(JobDag.splitParentName("clean,users")));
+        Assert.assertFalse(engine.isSameRoot(JobDag.splitParentName("audit,merge")));
+    }
+}
@@ -0,0 +1,334 @@
+package org.gscheduler.service.executor;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.curator.test.TestingServer;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.gscheduler.utils.Utils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DataSourceInitializer;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单机端到端压测:内存H2(db.h2) + 内嵌zk(curator TestingServer)启动完整的Spring上下文,
+ * 生成N个JobProcess bean和对应的job_info记录,全部由本机执行,统计触发延迟分位数,
+ * 数据库语句数/秒,zk请求数/秒,线程数和堆内存.不依赖外部服务,可离线运行.
+ * 每个规模单独起一个JVM运行:
+ * java -Xmx4g -Dlogback.configurationFile=logback-load.xml -cp target/classes:target/test-classes:[依赖]
+ * org.gscheduler.service.executor.SchedulerLoadHarness [jobs] [periodSec] [durationSec] [sleepMs] [reportSec]
+ * 或 mvn -Pload test -Dload.jobs=10000
+ */
+public class SchedulerLoadHarness {
+    private static final String JOB_BEAN_PREFIX = "loadJob";
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? NumberUtils.toInt(args[0]) : 1000;
+        int periodSec = args.length > 1 ? NumberUtils.toInt(args[1]) : 10;
+        int durationSec = args.length > 2 ? NumberUtils.toInt(args[2]) : 60;
+        long sleepMillis = args.length > 3 ? NumberUtils.toLong(args[3]) : 0;
+        int reportSec = args.length > 4 ? NumberUtils.toInt(args[4]) : 10;
+        Preconditions.checkArgument(jobs > 0 && jobs <= 100000, "jobs must in (0,100000]");
+        // 秒字段使用offset/period,period需整除60才能保证固定间隔
+        Preconditions.checkArgument(periodSec > 0 && 60 % periodSec == 0, "periodSec must divide 60");
+
+        TestingServer zkServer = new TestingServer(true);
+        System.setProperty("zookeeper.address", zkServer.getConnectString());
+        System.setProperty("zookeeper.url", zkServer.getConnectString());
+
+        final LagRecorder recorder = new LagRecorder(jobs * (durationSec / periodSec + 2));
+        final StatementCounter statementCounter = new StatementCounter();
+        ClassPathXmlApplicationContext context =
+                new ClassPathXmlApplicationContext(new String[]{"classpath:application-context.xml"}, false);
+        context.addBeanFactoryPostProcessor(
+                new LoadJobRegistrar(jobs, periodSec, sleepMillis, recorder, statementCounter));
+
+        long bootStart = System.currentTimeMillis();
+        context.refresh();
+        long bootCost = System.currentTimeMillis() - bootStart;
+        JobManager jobManager = context.getBean(JobManager.class);
+        System.out.println(String.format("jdk:%s,jobs:%d,period:%ds,duration:%ds,sleep:%dms,zk:%s",
+                System.getProperty("java.version"), jobs, periodSec, durationSec, sleepMillis,
+                zkServer.getConnectString()));
+        System.out.println(String.format("context refresh(include JobManager.init) cost:%dms,running schedulers:%d,"
+                        + "startup db statements:%d,startup zk requests:%d", bootCost,
+                jobManager.getJobSchedulers().size(), statementCounter.get(), readZkReceived(zkServer.getPort())));
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        // 启动期间的触发和请求不计入
+        recorder.start();
+        int lagIndex = 0;
+        long statements = statementCounter.get();
+        long zkRequests = readZkReceived(zkServer.getPort());
+        long maxHeapUsed = 0;
+        for (int elapsed = reportSec; elapsed <= durationSec; elapsed += reportSec) {
+            TimeUnit.SECONDS.sleep(reportSec);
+            long[] lags = recorder.snapshot(lagIndex);
+            lagIndex += lags.length;
+            long currentStatements = statementCounter.get();
+            long currentZkRequests = readZkReceived(zkServer.getPort());
+            long heapUsed = memoryMXBean.getHeapMemoryUsage().getUsed();
+            maxHeapUsed = Math.max(maxHeapUsed, heapUsed);
+            System.out.println(String.format("[%3ds] fires/s:%d,lag p50:%dms,p99:%dms,p999:%dms,max:%dms,"
+                            + "db stmt/s:%d,zk ops/s:%d,threads:%d,heap used:%dMB",
+                    elapsed, lags.length / reportSec, percentile(lags, 0.5), percentile(lags, 0.99),
+                    percentile(lags, 0.999), percentile(lags, 1), (currentStatements - statements) / reportSec,
+                    (currentZkRequests - zkRequests) / reportSec, threadMXBean.getThreadCount(), heapUsed >> 20));
+            statements = currentStatements;
+            zkRequests = currentZkRequests;
+        }
+
+        long[] lags = recorder.snapshot(0);
+        System.out.println(String.format("total fires:%d,lag p50:%dms,p99:%dms,p999:%dms,max:%dms,"
+                        + "peak threads:%d,max heap used:%dMB,scheduler threads:%d",
+                lags.length, percentile(lags, 0.5), percentile(lags, 0.99), percentile(lags, 0.999),
+                percentile(lags, 1), threadMXBean.getPeakThreadCount(), maxHeapUsed >> 20,
+                JobScheduler.threadCount.get()));
+
+        context.close();
+        zkServer.close();
+        System.exit(0);
+    }
+
+    // 四字命令srvr中的Received,即zk服务端收到的请求数
+    private static long readZkReceived(int port) {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write("srvr".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Received:")) {
+                    return NumberUtils.toLong(line.substring("Received:".length()).trim());
+                }
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return 0;
+    }
+
+    private static long percentile(long[] values, double percent) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.max(0, Math.min(sorted.length - 1, Math.ceil(sorted.length * percent) - 1))];
+    }
+
+    /**
+     * 刷新上下文前注册N个任务bean,并在init.sql执行后写入对应的job_info和job_host记录,
+     * 保证JobManager.init(ContextRefreshedEvent)能加载到全部任务
+     */
+    private static class LoadJobRegistrar implements BeanFactoryPostProcessor {
+        private final int jobs;
+        private final int periodSec;
+        private final long sleepMillis;
+        private final LagRecorder recorder;
+        private final StatementCounter statementCounter;
+
+        LoadJobRegistrar(int jobs, int periodSec, long sleepMillis, LagRecorder recorder,
+                         StatementCounter statementCounter) {
+            this.jobs = jobs;
+            this.periodSec = periodSec;
+            this.sleepMillis = sleepMillis;
+            this.recorder = recorder;
+            this.statementCounter = statementCounter;
+        }
+
+        @Override
+        public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) throws BeansException {
+            for (int i = 0; i < jobs; i++) {
+                beanFactory.registerSingleton(JOB_BEAN_PREFIX + i, new LoadJob(i % periodSec, periodSec,
+                        sleepMillis, recorder));
+            }
+            beanFactory.addBeanPostProcessor(new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSourceInitializer) {
+                        insertJobs(beanFactory.getBean("h2DataSource", DataSource.class));
+                    } else if (bean instanceof SqlSessionFactory) {
+                        ((SqlSessionFactory) bean).getConfiguration().addInterceptor(statementCounter);
+                    }
+                    return bean;
+                }
+            });
+        }
+
+        private void insertJobs(DataSource dataSource) {
+            final String host = Utils.getHostName();
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            // 清除init.sql中的示例任务
+            jdbcTemplate.update("DELETE FROM job_host");
+            jdbcTemplate.update("DELETE FROM job_info");
+            jdbcTemplate.batchUpdate("INSERT INTO job_info (id, job_name, job_class, crontab, initiate_mode, "
+                    + "host_list, execute_host, description) VALUES (?, ?, ?, ?, 1, ?, ?, 'load test')",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, i + 1);
+                            ps.setString(2, "load_job_" + i);
+                            ps.setString(3, JOB_BEAN_PREFIX + i);
+                            ps.setString(4, (i % periodSec) + "/" + periodSec + " * * * * *");
+                            ps.setString(5, host);
+                            ps.setString(6, host);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return jobs;
+                        }
+                    });
+            jdbcTemplate.batchUpdate("INSERT INTO job_host (job_id, host) VALUES (?, ?)",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, i + 1);
+                            ps.setString(2, host);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return jobs;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * 压测任务,记录实际开始时间与计划触发时间(秒字段offset/period)之差
+     */
+    private static class LoadJob implements JobProcess {
+        private final int offsetSec;
+        private final int periodSec;
+        private final long sleepMillis;
+        private final LagRecorder recorder;
+
+        LoadJob(int offsetSec, int periodSec, long sleepMillis, LagRecorder recorder) {
+            this.offsetSec = offsetSec;
+            this.periodSec = periodSec;
+            this.sleepMillis = sleepMillis;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void execute() {
+            long now = System.currentTimeMillis();
+            long second = now / 1000;
+            long scheduledSecond = second - ((second - offsetSec) % periodSec + periodSec) % periodSec;
+            recorder.record(now - scheduledSecond * 1000);
+            if (sleepMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * 统计mybatis执行的语句数,批量写入时每条语句单独计数
+     */
+    @Intercepts({
+            @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+            @Signature(type = Executor.class, method = "query",
+                    args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class})})
+    private static class StatementCounter implements Interceptor {
+        private final AtomicLong count = new AtomicLong(0);
+
+        @Override
+        public Object intercept(Invocation invocation) throws Throwable {
+            count.incrementAndGet();
+            return invocation.proceed();
+        }
+
+        @Override
+        public Object plugin(Object target) {
+            return Plugin.wrap(target, this);
+        }
+
+        @Override
+        public void setProperties(Properties properties) {
+        }
+
+        long get() {
+            return count.get();
+        }
+    }
+
+    /**
+     * 触发延迟记录
+     */
+    private static class LagRecorder {
+        private final long[] lags;
+        private final AtomicInteger index = new AtomicInteger(0);
+        private volatile boolean started;
+
+        LagRecorder(int capacity) {
+            lags = new long[capacity];
+        }
+
+        void start() {
+            started = true;
+        }
+
+        void record(long lag) {
+            if (!started) {
+                return;
+            }
+            int i = index.getAndIncrement();
+            if (i < lags.length) {
+                lags[i] = lag;
+            }
+        }
+
+        int size() {
+            return Math.min(index.get(), lags.length);
+        }
+
+        long[] snapshot(int from) {
+            return Arrays.copyOfRange(lags, Math.min(from, size()), size());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.gscheduler.service.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundary() {
+        long previousUpperBound = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            Assert.assertTrue(value <= upperBound);
+            // 相对误差不超过1/8
+            Assert.assertTrue(upperBound - value <= value / 8);
+            Assert.assertTrue(upperBound >= previousUpperBound);
+            previousUpperBound = upperBound;
+        }
+        Assert.assertEquals(239, LatencyHistogram.bucketIndex((1L << 32) - 1));
+    }
+
+    @Test
+    public void percentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(1002, histogram.getCount());
+        Assert.assertEquals((1L << 32) - 1, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        Assert.assertTrue("p50:" + p50, p50 >= 500 && p50 <= 500 * 9 / 8);
+        long p99 = histogram.getValueAtPercentile(99);
+        Assert.assertTrue("p99:" + p99, p99 >= 990 && p99 <= 990 * 9 / 8);
+        Assert.assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+    }
+}
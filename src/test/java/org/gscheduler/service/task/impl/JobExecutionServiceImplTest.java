@@ -0,0 +1,78 @@
+package org.gscheduler.service.task.impl;
+
+import com.google.common.collect.Lists;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecution;
+import org.gscheduler.entity.JobExecutionHourly;
+import org.gscheduler.service.task.JobExecutionService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量写入使用单独的SqlSession提交,不能在测试事务中回滚,使用单独的主机名隔离数据
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:application-context.xml")
+public class JobExecutionServiceImplTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Resource
+    JobExecutionService jobExecutionService;
+
+    @Test
+    public void compactJobExecution() throws Exception {
+        String host = "compact-test-host";
+        long jobId = 1001;
+        long hourTime = 1500000000000L - 1500000000000L % HOUR;
+        List<JobExecution> jobExecutions = Lists.newArrayList(
+                execution(jobId, host, hourTime + 1000, 100, ExecuteStatus.SUCCESS),
+                execution(jobId, host, hourTime + 2000, 300, ExecuteStatus.FAILED),
+                execution(jobId, host, hourTime + HOUR - 1, 200, ExecuteStatus.SUCCESS),
+                execution(jobId, host, hourTime + HOUR, 50, ExecuteStatus.SUCCESS));
+        jobExecutionService.batchSaveJobExecution(jobExecutions);
+        Assert.assertEquals(hourTime + 1000, jobExecutionService.getMinStartTime(host).longValue());
+
+        Assert.assertEquals(3, jobExecutionService.compactJobExecution(host, hourTime));
+        // 延迟写入的记录再次压缩时累加
+        jobExecutionService.batchSaveJobExecution(Lists.newArrayList(
+                execution(jobId, host, hourTime + 3000, 400, ExecuteStatus.SUCCESS)));
+        Assert.assertEquals(1, jobExecutionService.compactJobExecution(host, hourTime));
+
+        List<JobExecutionHourly> hourlies = jobExecutionService.getJobExecutionHourly(jobId, hourTime);
+        Assert.assertEquals(1, hourlies.size());
+        JobExecutionHourly hourly = hourlies.get(0);
+        Assert.assertEquals(4, hourly.getRunCount());
+        Assert.assertEquals(3, hourly.getSuccessCount());
+        Assert.assertEquals(1, hourly.getFailureCount());
+        Assert.assertEquals(1000, hourly.getTotalDurationMs());
+        Assert.assertEquals(400, hourly.getMaxDurationMs());
+
+        // 下一个小时的明细不受影响
+        Assert.assertEquals(hourTime + HOUR, jobExecutionService.getMinStartTime(host).longValue());
+        List<JobExecution> recent = jobExecutionService.getRecentJobExecution(jobId, 10);
+        Assert.assertEquals(1, recent.size());
+        Assert.assertEquals(50, recent.get(0).getDurationMs());
+
+        Assert.assertEquals(1, jobExecutionService.removeJobExecutionHourly(hourTime + HOUR));
+        Assert.assertTrue(jobExecutionService.getJobExecutionHourly(jobId, hourTime).isEmpty());
+    }
+
+    private static JobExecution execution(long jobId, String host, long startTime, long duration, ExecuteStatus outcome) {
+        JobExecution jobExecution = new JobExecution();
+        jobExecution.setJobId(jobId);
+        jobExecution.setHost(host);
+        jobExecution.setStartTime(startTime);
+        jobExecution.setEndTime(startTime + duration);
+        jobExecution.setDurationMs(duration);
+        jobExecution.setOutcome(outcome);
+        jobExecution.setErrorSummary(outcome == ExecuteStatus.SUCCESS ? "" : "RuntimeException: test");
+        return jobExecution;
+    }
+}
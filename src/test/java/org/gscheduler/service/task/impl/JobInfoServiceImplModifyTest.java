@@ -0,0 +1,102 @@
+package org.gscheduler.service.task.impl;
+
+import org.gscheduler.dao.JobHostDao;
+import org.gscheduler.dao.JobInfoDao;
+import org.gscheduler.entity.JobInfo;
+import org.gscheduler.service.executor.JobInfoCache;
+import org.gscheduler.service.executor.JobManager;
+import org.gscheduler.utils.Utils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JobInfoServiceImplModifyTest {
+    private static final long JOB_ID = 1;
+    private static final String OLD_CRONTAB = "0 0/5 * * * ?";
+    private static final String NEW_CRONTAB = "0 0/10 * * * ?";
+
+    private JobInfoServiceImpl jobInfoService;
+    private JobManager jobManager;
+    private JobInfoCache jobInfoCache;
+    // 缓存是否已失效,失效后读到修改后的配置
+    private final AtomicBoolean invalidated = new AtomicBoolean(false);
+
+    @Before
+    public void setUp() {
+        JobInfoDao jobInfoDao = Mockito.mock(JobInfoDao.class);
+        jobManager = Mockito.mock(JobManager.class);
+        jobInfoCache = Mockito.mock(JobInfoCache.class);
+        Mockito.when(jobInfoDao.selectJobInfoById(JOB_ID)).thenReturn(createJobInfo(OLD_CRONTAB));
+        Mockito.when(jobManager.getIsUsedZKListener()).thenReturn(false);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                invalidated.set(true);
+                return null;
+            }
+        }).when(jobInfoCache).invalidate(JOB_ID);
+        Mockito.when(jobInfoCache.get(JOB_ID)).thenAnswer(new Answer<JobInfo>() {
+            @Override
+            public JobInfo answer(InvocationOnMock invocation) {
+                return createJobInfo(invalidated.get() ? NEW_CRONTAB : OLD_CRONTAB);
+            }
+        });
+
+        jobInfoService = new JobInfoServiceImpl();
+        jobInfoService.jobInfoDao = jobInfoDao;
+        jobInfoService.jobHostDao = Mockito.mock(JobHostDao.class);
+        jobInfoService.jobManager = jobManager;
+        jobInfoService.jobInfoCache = jobInfoCache;
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private JobInfo createJobInfo(String crontab) {
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(JOB_ID);
+        jobInfo.setJobName("modifyJob");
+        jobInfo.setCrontab(crontab);
+        jobInfo.setExecuteHost(Utils.getHostName());
+        jobInfo.setInitiateMode(JobManager.AVAILABLE);
+        return jobInfo;
+    }
+
+    @Test
+    public void restartWithNewCrontabAfterCommit() {
+        // 重启时从缓存读取任务配置
+        final AtomicReference<String> restartCrontab = new AtomicReference<>();
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                restartCrontab.set(jobInfoCache.get(JOB_ID).getCrontab());
+                return null;
+            }
+        }).when(jobManager).restartSchedule(JOB_ID);
+
+        jobInfoService.modifyJobInfo(createJobInfo(NEW_CRONTAB));
+        // 提交前不失效缓存,也不重启
+        Mockito.verify(jobInfoCache, Mockito.never()).invalidate(JOB_ID);
+        Mockito.verify(jobManager, Mockito.never()).restartSchedule(JOB_ID);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCommit();
+        }
+        Mockito.verify(jobManager).restartSchedule(JOB_ID);
+        Assert.assertEquals(NEW_CRONTAB, restartCrontab.get());
+    }
+}
@@ -1,7 +1,11 @@
 package org.gscheduler.service.task.impl;
 
+import com.google.common.collect.Lists;
+import org.gscheduler.entity.ExecuteStatus;
+import org.gscheduler.entity.JobExecuteState;
 import org.gscheduler.entity.JobInfo;
 import org.gscheduler.service.task.JobInfoService;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
@@ -11,6 +15,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.Date;
 import java.util.List;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -30,4 +35,31 @@ public class JobInfoServiceImplTest {
         }
     }
 
+    @Test
+    public void batchModifyExecuteState() throws Exception {
+        JobExecuteState running = new JobExecuteState(1);
+        running.setExecuteStatus(ExecuteStatus.RUNNING);
+        running.setExecuteStartTime(1500000000000L);
+        running.setNextExecuteTime(new Date());
+        // 只更新执行状态和时长,其他字段保持不变
+        JobExecuteState failed = new JobExecuteState(2);
+        failed.setExecuteStatus(ExecuteStatus.FAILED);
+        failed.setLastDurationMs(123456789L);
+        jobInfoService.batchModifyExecuteState(Lists.newArrayList(running, failed));
+
+        JobInfo runningJob = jobInfoService.getJobInfoById(1);
+        Assert.assertEquals(ExecuteStatus.RUNNING, runningJob.getExecuteStatus());
+        Assert.assertEquals(1500000000000L, runningJob.getExecuteStartTime());
+        Assert.assertNotNull(runningJob.getNextExecuteTime());
+        JobInfo failedJob = jobInfoService.getJobInfoById(2);
+        Assert.assertEquals(ExecuteStatus.FAILED, failedJob.getExecuteStatus());
+        Assert.assertEquals(123456789L, failedJob.getLastDurationMs());
+        Assert.assertNotEquals(running.getNextExecuteTime(), failedJob.getNextExecuteTime());
+
+        // 最慢的任务在前
+        List<JobInfo> slowest = jobInfoService.getSlowestJobInfo(1);
+        Assert.assertEquals(1, slowest.size());
+        Assert.assertEquals(2, slowest.get(0).getId());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package org.gscheduler.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间与字符串的相互转换,任务执行状态和页面展示都会调用
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+    private final Date date = new Date(1500000000000L);
+    private final String dateString = "2017-07-14 10:40:00";
+    private final String dateStringWithMillis = "2017-07-14 10:40:00.0";
+
+    @Benchmark
+    public String dateToString() {
+        return Utils.dateToString(date);
+    }
+
+    @Benchmark
+    public Date stringToDate() {
+        return Utils.stringToDate(dateString);
+    }
+
+    @Benchmark
+    public Date stringToDateWithMillis() {
+        return Utils.stringToDate(dateStringWithMillis);
+    }
+}